@@ -0,0 +1,93 @@
+package com.metabroadcast.nonametv.ingest.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.io.Files;
+import com.metabroadcast.nonametv.ingest.process.parse.DirectXmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.StreamingXmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvHandler;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvParsingContext;
+import com.metabroadcast.nonametv.ingest.process.translate.BrandUriGenerator;
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeFields;
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeToItemTranslator;
+import com.metabroadcast.nonametv.ingest.process.translate.SymbolTable;
+import com.metabroadcast.nonametv.xml.Channel;
+import com.metabroadcast.nonametv.xml.Programme;
+
+/**
+ * Measures parsing a feed held in memory and translating every programme in it,
+ * with each parser. Scores and, with {@code -prof gc}, bytes allocated are per
+ * programme.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseAndTranslateBenchmark {
+
+    private static final int PROGRAMMES = 1000;
+
+    @Param({ "streaming", "direct" })
+    public String parser;
+
+    private byte[] feed;
+    private XmlTvParser xmlTvParser;
+    private ProgrammeToItemTranslator translator;
+    private SymbolTable symbols;
+
+    @Setup
+    public void setUp() throws Exception {
+        File file = File.createTempFile("parse-benchmark", ".xml");
+        file.deleteOnExit();
+        new XmlTvFeedGenerator(42L, 500).generate(file, 10, PROGRAMMES / 10);
+        feed = Files.toByteArray(file);
+
+        XmlTvParsingContext parsingContext = new XmlTvParsingContext();
+        xmlTvParser = "direct".equals(parser)
+            ? new DirectXmlTvParser(parsingContext)
+            : new StreamingXmlTvParser(parsingContext);
+        translator = new ProgrammeToItemTranslator(new BrandUriGenerator());
+        symbols = new SymbolTable(20000);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROGRAMMES)
+    public void parseAndTranslate(Blackhole blackhole) throws Exception {
+        xmlTvParser.parse(new ByteArrayInputStream(feed), new XmlTvHandler() {
+
+            @Override
+            public void handleChannel(Channel channel) {
+            }
+
+            @Override
+            public void handleProgramme(Programme programme) {
+                blackhole.consume(translator.translate(programme, symbols));
+            }
+
+            @Override
+            public void handleProgrammeFields(ProgrammeFields programme) {
+                blackhole.consume(translator.translate(programme, symbols));
+            }
+        });
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.metabroadcast.nonametv.ingest.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.metabroadcast.nonametv.ingest.process.parse.StreamingXmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvHandler;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvParsingContext;
+import com.metabroadcast.nonametv.ingest.process.translate.BrandUriGenerator;
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeFields;
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeToItemTranslator;
+import com.metabroadcast.nonametv.ingest.process.translate.SymbolTable;
+import com.metabroadcast.nonametv.xml.Channel;
+import com.metabroadcast.nonametv.xml.Programme;
+
+/**
+ * Measures translation alone, over programmes unmarshalled up front. Run with
+ * {@code -prof gc} to see bytes allocated per programme.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgrammeToItemTranslatorBenchmark {
+
+    private static final int PROGRAMMES = 1000;
+
+    private List<Programme> programmes;
+    private ProgrammeToItemTranslator translator;
+    private SymbolTable symbols;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        File feed = File.createTempFile("translator-benchmark", ".xml");
+        feed.deleteOnExit();
+        new XmlTvFeedGenerator(42L, 500).generate(feed, 10, PROGRAMMES / 10);
+
+        programmes = new ArrayList<>(PROGRAMMES);
+        new StreamingXmlTvParser(new XmlTvParsingContext()).parse(feed, new XmlTvHandler() {
+
+            @Override
+            public void handleChannel(Channel channel) {
+            }
+
+            @Override
+            public void handleProgramme(Programme programme) {
+                programmes.add(programme);
+            }
+
+            @Override
+            public void handleProgrammeFields(ProgrammeFields programme) {
+                throw new IllegalStateException("The streaming parser unmarshals every programme");
+            }
+        });
+
+        translator = new ProgrammeToItemTranslator(new BrandUriGenerator());
+        symbols = new SymbolTable(20000);
+    }
+
+    @Benchmark
+    public void translate(Blackhole blackhole) {
+        blackhole.consume(translator.translate(programmes.get(next)));
+        next = (next + 1) % programmes.size();
+    }
+
+    @Benchmark
+    public void translateSharingSymbols(Blackhole blackhole) {
+        blackhole.consume(translator.translate(programmes.get(next), symbols));
+        next = (next + 1) % programmes.size();
+    }
+
+}
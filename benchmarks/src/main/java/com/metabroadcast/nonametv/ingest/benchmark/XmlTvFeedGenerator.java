@@ -0,0 +1,169 @@
+package com.metabroadcast.nonametv.ingest.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * Generates synthetic XMLTV feeds shaped like NonameTV's: back-to-back half-hour
+ * programmes per channel with titles drawn from a bounded pool, so that brands
+ * repeat as they do in real feeds, and with credits, categories, episode-nums,
+ * star-ratings, descriptions, countries and urls. Output is deterministic for a
+ * given seed.
+ * <p>
+ * Usage: {@code XmlTvFeedGenerator <output file> <channels> <programmes per channel>}
+ */
+public class XmlTvFeedGenerator {
+
+    private static final DateTimeFormatter XMLTV_DATE_FORMAT = DateTimeFormat.forPattern("yyyyMMddHHmmss Z");
+    private static final DateTime SCHEDULE_START = new DateTime(2015, 1, 6, 6, 0, 0, DateTimeZone.forOffsetHours(1));
+
+    private static final String[] CATEGORIES = { "series", "movie", "Drama", "Comedy", "Documentary", "News",
+            "Sports", "Children", "Crime", "Reality", "Music", "Nature" };
+    private static final String[] COUNTRIES = { "NO", "SE", "DK", "GB", "US", "FR", "DE" };
+    private static final String[] FIRST_NAMES = { "Anna", "Lars", "Ingrid", "Ole", "Kari", "Per", "Madison",
+            "Leon", "Joe", "Allison", "Marie", "Henrik", "Sofie", "Erik" };
+    private static final String[] LAST_NAMES = { "Hansen", "Johansen", "Olsen", "Larsen", "Andersen", "Carabello",
+            "Ichaso", "DuBois", "Nilsen", "Berg", "Haugen", "Bakken" };
+
+    private final Random random;
+    private final int titlePoolSize;
+
+    public XmlTvFeedGenerator(long seed, int titlePoolSize) {
+        this.random = new Random(seed);
+        this.titlePoolSize = titlePoolSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("Usage: XmlTvFeedGenerator <output file> <channels> <programmes per channel>");
+            System.exit(1);
+        }
+        new XmlTvFeedGenerator(42L, 500).generate(new File(args[0]),
+                Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+    }
+
+    public void generate(File file, int channels, int programmesPerChannel) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            generate(output, channels, programmesPerChannel);
+        }
+    }
+
+    public void generate(OutputStream output, int channels, int programmesPerChannel) throws IOException {
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("tv");
+            writer.writeAttribute("generator-info-name", "nonametv");
+
+            for (int channel = 0; channel < channels; channel++) {
+                writeChannel(writer, channel);
+            }
+            for (int channel = 0; channel < channels; channel++) {
+                DateTime start = SCHEDULE_START;
+                for (int programme = 0; programme < programmesPerChannel; programme++) {
+                    DateTime stop = start.plusMinutes(30);
+                    writeProgramme(writer, channelId(channel), start, stop);
+                    start = stop;
+                }
+            }
+
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeChannel(XMLStreamWriter writer, int channel) throws XMLStreamException {
+        writer.writeStartElement("channel");
+        writer.writeAttribute("id", channelId(channel));
+        writeText(writer, "display-name", "no", "Kanal " + channel);
+        writer.writeEmptyElement("icon");
+        writer.writeAttribute("src", "http://nonametv.org/logos/" + channelId(channel) + ".png");
+        writeText(writer, "url", null, "http://" + channelId(channel) + "/");
+        writer.writeEndElement();
+    }
+
+    private void writeProgramme(XMLStreamWriter writer, String channelId, DateTime start, DateTime stop)
+            throws XMLStreamException {
+        int title = random.nextInt(titlePoolSize);
+
+        writer.writeStartElement("programme");
+        writer.writeAttribute("channel", channelId);
+        writer.writeAttribute("start", XMLTV_DATE_FORMAT.print(start));
+        writer.writeAttribute("stop", XMLTV_DATE_FORMAT.print(stop));
+
+        writeText(writer, "title", "no", "Programme " + title);
+        writeText(writer, "sub-title", "no", "Episode " + random.nextInt(1000));
+        writeText(writer, "desc", "en", "Description of programme " + title + " with some words & punctuation.");
+        writeText(writer, "desc", "no", "Beskrivelse av programmet " + title + ", på norsk.");
+
+        writer.writeStartElement("credits");
+        writeText(writer, "director", null, person());
+        int actors = 1 + random.nextInt(6);
+        for (int actor = 0; actor < actors; actor++) {
+            writer.writeStartElement("actor");
+            writer.writeAttribute("role", person());
+            writer.writeCharacters(person());
+            writer.writeEndElement();
+        }
+        if (random.nextBoolean()) {
+            writeText(writer, "writer", null, person());
+        }
+        if (random.nextInt(4) == 0) {
+            writeText(writer, "presenter", null, person());
+        }
+        writer.writeEndElement();
+
+        writeText(writer, "date", null, String.valueOf(1980 + random.nextInt(35)));
+        int categories = 1 + random.nextInt(3);
+        for (int category = 0; category < categories; category++) {
+            writeText(writer, "category", "en", CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        }
+        writeText(writer, "url", null, "http://thetvdb.com/?tab=episode&seriesid=" + title + "&id=" + random.nextInt(1000000));
+        writeText(writer, "country", null, COUNTRIES[random.nextInt(COUNTRIES.length)]);
+        writer.writeStartElement("episode-num");
+        writer.writeAttribute("system", "xmltv_ns");
+        writer.writeCharacters(random.nextInt(10) + " . " + random.nextInt(24) + " .");
+        writer.writeEndElement();
+
+        writer.writeStartElement("star-rating");
+        writeText(writer, "value", null, (random.nextInt(90) / 10.0) + " / 9");
+        writer.writeEndElement();
+
+        writer.writeEndElement();
+    }
+
+    private void writeText(XMLStreamWriter writer, String element, String lang, String text)
+            throws XMLStreamException {
+        writer.writeStartElement(element);
+        if (lang != null) {
+            writer.writeAttribute("lang", lang);
+        }
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    private String person() {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+
+    private static String channelId(int channel) {
+        return "channel" + channel + ".nonametv.org";
+    }
+
+}
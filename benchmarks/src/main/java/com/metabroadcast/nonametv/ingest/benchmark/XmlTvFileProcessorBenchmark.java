@@ -0,0 +1,101 @@
+package com.metabroadcast.nonametv.ingest.benchmark;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+import com.metabroadcast.common.ingest.s3.process.ProcessingResult;
+import com.metabroadcast.nonametv.ingest.process.XmlTvFileProcessor;
+import com.metabroadcast.nonametv.ingest.process.dedup.ItemFingerprintStore;
+import com.metabroadcast.nonametv.ingest.process.parse.DirectXmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.StreamingXmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvParsingContext;
+import com.metabroadcast.nonametv.ingest.process.spill.WritePriority;
+import com.metabroadcast.nonametv.ingest.process.write.ItemWriter;
+
+/**
+ * Measures {@link XmlTvFileProcessor#process} end to end, from parsing a generated
+ * feed file to handing items to a writer that completes immediately, so the score
+ * excludes Atlas latency. Each invocation starts with empty brand and fingerprint
+ * caches so that every programme is written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class XmlTvFileProcessorBenchmark {
+
+    private static final ItemWriter NO_OP_WRITER = item -> CompletableFuture.completedFuture(null);
+
+    @Param({ "20" })
+    public int channels;
+
+    @Param({ "1000" })
+    public int programmesPerChannel;
+
+    @Param({ "2" })
+    public int translateConcurrency;
+
+    @Param({ "streaming", "direct" })
+    public String parser;
+
+    private File directory;
+    private File feed;
+    private XmlTvParsingContext parsingContext;
+    private XmlTvFileProcessor processor;
+
+    @Setup(Level.Trial)
+    public void generateFeed() throws Exception {
+        directory = Files.createTempDir();
+        feed = new File(directory, "feed.xml");
+        new XmlTvFeedGenerator(42L, 500).generate(feed, channels, programmesPerChannel);
+
+        parsingContext = new XmlTvParsingContext();
+    }
+
+    @Setup(Level.Invocation)
+    public void createProcessor() throws Exception {
+        File fingerprints = new File(directory, "item-fingerprints.tsv");
+        fingerprints.delete();
+
+        if (processor != null) {
+            processor.shutdown();
+        }
+        processor = XmlTvFileProcessor.builder(NO_OP_WRITER,
+                "direct".equals(parser) ? new DirectXmlTvParser(parsingContext) : new StreamingXmlTvParser(parsingContext),
+                directory)
+            .itemFingerprintStore(new ItemFingerprintStore(fingerprints, 36500, TimeUnit.DAYS))
+            .translateConcurrency(translateConcurrency, 256)
+            .writePriority(new WritePriority(new long[] { 24, 48 }, TimeUnit.HOURS))
+            .fileParallelism(1)
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processor.shutdown();
+    }
+
+    @Benchmark
+    public ProcessingResult process() {
+        return processor.process(feed.getName(), feed);
+    }
+
+}
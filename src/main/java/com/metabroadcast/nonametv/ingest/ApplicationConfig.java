@@ -4,6 +4,8 @@ import org.glassfish.jersey.server.ResourceConfig;
 
 public class ApplicationConfig extends ResourceConfig {
 
-    public ApplicationConfig() {}
+    public ApplicationConfig(FeedPushResource feedPushResource) {
+        register(feedPushResource);
+    }
 
 }
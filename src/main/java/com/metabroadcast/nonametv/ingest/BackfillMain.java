@@ -0,0 +1,195 @@
+package com.metabroadcast.nonametv.ingest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.metabroadcast.common.properties.Configurer;
+import com.metabroadcast.nonametv.ingest.process.XmlTvFileProcessor;
+import com.metabroadcast.nonametv.ingest.process.metrics.IngestMetrics;
+import com.metabroadcast.nonametv.ingest.process.metrics.LatencyHistogram;
+import com.metabroadcast.nonametv.ingest.process.write.ItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.NullItemWriter;
+
+/**
+ * Ingests archived feed files from the local disk, without waiting for S3 events.
+ * Takes a directory, every file in which is processed, or a glob such as
+ * {@code /archive/2015/**.xml.gz}. Files are processed in name order, as many at
+ * once as there are cores unless {@code --parallelism} says otherwise, by a
+ * single {@link XmlTvFileProcessor}, so the brand cache and the item fingerprints
+ * are shared between them. A throughput summary is printed once every file has
+ * been processed, and the exit status is non-zero if any file failed.
+ * <p>
+ * With {@code --dry-run}, items are discarded rather than written to Atlas, and
+ * the processor keeps its state in a temporary directory, so the fingerprints and
+ * checkpoints of the configured {@code ingest.temporaryFileDirectory} are left
+ * untouched. Otherwise the backfill shares that directory's state, so it should
+ * not run alongside the service.
+ */
+public class BackfillMain {
+
+    private static final String USAGE = "Usage: BackfillMain [--dry-run] [--parallelism <files>]"
+        + " <directory or glob>";
+    private static final CharMatcher GLOB_CHARACTERS = CharMatcher.anyOf("*?[{");
+
+    public static void main(String[] args) throws Exception {
+        boolean dryRun = false;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String source = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--dry-run".equals(args[i])) {
+                dryRun = true;
+            } else if ("--parallelism".equals(args[i]) && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else if (source == null && !args[i].startsWith("--")) {
+                source = args[i];
+            } else {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+        }
+        if (source == null) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        List<File> files = feedFiles(source);
+        if (files.isEmpty()) {
+            System.err.println("No feed files match " + source);
+            System.exit(2);
+        }
+
+        File stateDirectory = dryRun
+            ? Files.createTempDirectory("xmltv-backfill").toFile()
+            : new File(Configurer.get("ingest.temporaryFileDirectory").get());
+        ProcessingModule processingModule = new ProcessingModule(stateDirectory);
+        ItemWriter itemWriter = dryRun ? new NullItemWriter() : processingModule.itemWriter();
+        XmlTvFileProcessor processor = processingModule.xmlTvFileProcessor(itemWriter, parallelism, parallelism);
+
+        ExecutorService fileExecutor = Executors.newFixedThreadPool(parallelism,
+            new ThreadFactoryBuilder().setNameFormat("xmltv-backfill-%d").setDaemon(true).build());
+        long startedNanos = System.nanoTime();
+        processAll(processor, files, fileExecutor);
+        long elapsedNanos = System.nanoTime() - startedNanos;
+        fileExecutor.shutdown();
+
+        IngestMetrics.Snapshot snapshot = processingModule.metrics().snapshot();
+        printSummary(System.out, snapshot, elapsedNanos, dryRun);
+        if (dryRun) {
+            deleteRecursively(stateDirectory.toPath());
+        }
+        System.exit(snapshot.getFailedFiles() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Processes the files on the executor and waits for them all. Each file's
+     * sequence is reserved here, in the order given, rather than by whichever
+     * thread starts it first, so that an older file never overwrites a newer
+     * one's slots.
+     */
+    static void processAll(XmlTvFileProcessor processor, List<File> files, ExecutorService fileExecutor)
+            throws InterruptedException, ExecutionException {
+        List<Future<?>> processed = new ArrayList<>(files.size());
+        for (File file : files) {
+            long sequence = processor.reserveSequence();
+            processed.add(fileExecutor.submit(() -> processor.process(file.getPath(), file, sequence)));
+        }
+        for (Future<?> file : processed) {
+            file.get();
+        }
+    }
+
+    /**
+     * The files named by a directory, a single file or a glob, in name order.
+     */
+    static List<File> feedFiles(String source) throws IOException {
+        File file = new File(source);
+        if (file.isFile()) {
+            List<File> files = new ArrayList<>();
+            files.add(file);
+            return files;
+        }
+        Path pattern = Paths.get(source).toAbsolutePath().normalize();
+        Path base = pattern.getRoot();
+        int depth;
+        if (file.isDirectory()) {
+            base = pattern;
+            pattern = pattern.resolve("*");
+            depth = 1;
+        } else {
+            for (Path name : pattern) {
+                if (GLOB_CHARACTERS.matchesAnyOf(name.toString())) {
+                    break;
+                }
+                base = base.resolve(name);
+            }
+            depth = Integer.MAX_VALUE;
+        }
+        if (!Files.isDirectory(base)) {
+            return new ArrayList<>();
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            return paths.filter(Files::isRegularFile)
+                .filter(matcher::matches)
+                .sorted()
+                .map(Path::toFile)
+                .collect(Collectors.toList());
+        }
+    }
+
+    static void printSummary(PrintStream out, IngestMetrics.Snapshot snapshot, long elapsedNanos, boolean dryRun) {
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        out.printf("Processed %d files (%d failed) in %.1fs%s%n", snapshot.getFiles(), snapshot.getFailedFiles(),
+            seconds, dryRun ? ", dry run" : "");
+        out.printf("  %d programmes, %.0f programmes/s%n", snapshot.getProgrammes(),
+            snapshot.getProgrammes() / seconds);
+        out.printf("  %.1f MB read at %.1f MB/s, %.1f MB uncompressed at %.1f MB/s%n",
+            megabytes(snapshot.getBytesRead()), megabytes(snapshot.getBytesRead()) / seconds,
+            megabytes(snapshot.getUncompressedBytes()), megabytes(snapshot.getUncompressedBytes()) / seconds);
+        for (Map.Entry<String, IngestMetrics.WriteSummary> writes : snapshot.getAtlasWrites().entrySet()) {
+            out.printf("  %s: %d attempted, %d failed%n", writes.getKey(), writes.getValue().getAttempted(),
+                writes.getValue().getFailed());
+        }
+        for (Map.Entry<String, LatencyHistogram.Snapshot> stage : snapshot.getStageLatencies().entrySet()) {
+            LatencyHistogram.Snapshot latency = stage.getValue();
+            if (latency.getCount() > 0) {
+                out.printf("  %s latency: p50 %.2fms, p99 %.2fms, max %.2fms%n", stage.getKey(),
+                    latency.getP50Millis(), latency.getP99Millis(), latency.getMaxMillis());
+            }
+        }
+        out.printf("  heap peak %.1f MB of %.1f MB%n", megabytes(snapshot.getHeapPeakBytes()),
+            megabytes(snapshot.getHeapMaxBytes()));
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.metabroadcast.nonametv.ingest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Semaphore;
+
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.metabroadcast.common.ingest.s3.process.ProcessingResult;
+import com.metabroadcast.nonametv.ingest.process.XmlTvFileProcessor;
+import com.metabroadcast.nonametv.ingest.process.parse.FeedInput;
+
+/**
+ * Accepts XMLTV feeds pushed over HTTP, for urgent schedule changes that cannot
+ * wait for an upload to S3 to be picked up. The body, which may be chunked and
+ * may be gzip-compressed, is parsed as it arrives and never stored, and the
+ * response is the {@link ProcessingResult} of processing it, as JSON.
+ * <p>
+ * Pushes are admitted only while fewer than {@code maximumConcurrentPushes}
+ * are in progress, and are otherwise turned away with 503 Service Unavailable,
+ * so that they never take more than that many of the processor's turns from
+ * files arriving through S3. A body whose declared length is larger than
+ * {@code maximumBytes} is refused with 413 Request Entity Too Large. A body
+ * that is only found to be larger than {@code maximumBytes}, or than
+ * {@code maximumUncompressedBytes} once decompressed, as it is read is stopped
+ * at the limit: no more of it is written, but programmes written before the
+ * limit was reached stay written, so the feed has been applied partially. The
+ * response is then also 413, with the result saying how many programmes were
+ * abandoned, and the feed must be cut down and pushed again.
+ */
+@Path("/feeds")
+public class FeedPushResource {
+
+    private static final Logger log = LoggerFactory.getLogger(FeedPushResource.class);
+
+    private static final String DEFAULT_FILENAME = "pushed.xml";
+    private static final String RETRY_AFTER_SECONDS = "30";
+
+    private final XmlTvFileProcessor processor;
+    private final int maximumConcurrentPushes;
+    private final Semaphore pushPermits;
+    private final long maximumBytes;
+    private final long maximumUncompressedBytes;
+    private final Gson gson = new GsonBuilder()
+            .serializeNulls()
+            .create();
+
+    public FeedPushResource(XmlTvFileProcessor processor, int maximumConcurrentPushes, long maximumBytes,
+            long maximumUncompressedBytes) {
+        checkArgument(maximumConcurrentPushes > 0, "at least one push must be allowed at once");
+        this.processor = checkNotNull(processor);
+        this.maximumConcurrentPushes = maximumConcurrentPushes;
+        this.pushPermits = new Semaphore(maximumConcurrentPushes);
+        this.maximumBytes = maximumBytes;
+        this.maximumUncompressedBytes = maximumUncompressedBytes;
+    }
+
+    /**
+     * Processes a pushed feed. The {@code filename} names it in the result and
+     * logs, and its extension is used to detect its compression should its
+     * first bytes not. A 413 returned after processing has begun means the feed
+     * was applied partially.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response push(@QueryParam("filename") String filename, @Context HttpHeaders headers,
+            InputStream body) {
+        String name = Strings.isNullOrEmpty(filename) ? DEFAULT_FILENAME : filename;
+        String encoding = headers.getHeaderString(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && !"gzip".equalsIgnoreCase(encoding) && !"x-gzip".equalsIgnoreCase(encoding)
+                && !"identity".equalsIgnoreCase(encoding)) {
+            return refusal(Status.UNSUPPORTED_MEDIA_TYPE,
+                String.format("Content encoding %s is not supported; send the feed plain or gzipped", encoding))
+                .build();
+        }
+        if (headers.getLength() > maximumBytes) {
+            return refusal(Status.REQUEST_ENTITY_TOO_LARGE,
+                String.format("Feed of %d bytes is larger than the limit of %d", headers.getLength(), maximumBytes))
+                .build();
+        }
+        if (!pushPermits.tryAcquire()) {
+            log.info("Turned away a push of {} as too many pushes are in progress", name);
+            return refusal(Status.SERVICE_UNAVAILABLE, "Too many feeds are being pushed; try again later")
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .build();
+        }
+        try {
+            FeedInput input;
+            try {
+                input = FeedInput.open(body, name, maximumBytes, maximumUncompressedBytes);
+            } catch (IOException e) {
+                log.warn("Unable to read pushed feed {}", name, e);
+                return refusal(Status.BAD_REQUEST, String.format("Unable to read the feed: %s", e.getMessage()))
+                    .build();
+            }
+            log.info("Processing pushed feed {}", name);
+            ProcessingResult result = processor.process(name, input);
+            return Response.status(input.exceededLimit() ? Status.REQUEST_ENTITY_TOO_LARGE : Status.OK)
+                .entity(gson.toJson(result))
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .build();
+        } finally {
+            pushPermits.release();
+        }
+    }
+
+    /**
+     * The pushes being processed.
+     */
+    public int inProgress() {
+        return maximumConcurrentPushes - pushPermits.availablePermits();
+    }
+
+    private Response.ResponseBuilder refusal(Status status, String error) {
+        return Response.status(status)
+            .entity(gson.toJson(ImmutableMap.of("error", error)))
+            .type(MediaType.APPLICATION_JSON_TYPE);
+    }
+
+}
@@ -1,16 +1,22 @@
 package com.metabroadcast.nonametv.ingest;
 
+import java.util.Map;
+import java.util.Set;
+
 import com.google.common.collect.ImmutableList;
 import com.metabroadcast.common.health.HealthProbe;
 import com.metabroadcast.common.health.ProbeResult;
 import com.metabroadcast.common.webapp.health.HealthController;
 import com.metabroadcast.common.webapp.health.probes.CpuProbe;
 import com.metabroadcast.nonametv.ingest.process.XmlTvFileProcessor;
+import com.metabroadcast.nonametv.ingest.process.metrics.IngestMetrics;
+import com.metabroadcast.nonametv.ingest.process.metrics.LatencyHistogram;
 
 public class HealthModule {
 
-    public HealthController healthController(XmlTvFileProcessor xmlTvFileProcessor) {
-        return new HealthController(ImmutableList.of(new CpuProbe(), new StatusProbe(xmlTvFileProcessor)));
+    public HealthController healthController(XmlTvFileProcessor xmlTvFileProcessor, IngestMetrics metrics) {
+        return new HealthController(ImmutableList.of(new CpuProbe(), new StatusProbe(xmlTvFileProcessor),
+            new ThroughputProbe(metrics), new StageLatencyProbe(metrics)));
     }
 
     private static class StatusProbe implements HealthProbe {
@@ -24,10 +30,15 @@ public class HealthModule {
         @Override
         public ProbeResult probe() throws Exception {
             ProbeResult probeResult = new ProbeResult(title());
-            if (xmlTvFileProcessor.wasLastRunSuccessful()) {
-                probeResult.addInfo("last file processing", "success");
+            Set<String> failedFiles = xmlTvFileProcessor.failedFiles();
+            if (failedFiles.isEmpty()) {
+                probeResult.addInfo("file processing", "success");
             } else {
-                probeResult.addInfo("last file processing", "failure");
+                probeResult.addInfo("file processing", "failure");
+                probeResult.addInfo("failed files", String.join(", ", failedFiles));
+            }
+            if (!xmlTvFileProcessor.filesAwaitingRetry().isEmpty()) {
+                probeResult.addInfo("files awaiting retry", String.join(", ", xmlTvFileProcessor.filesAwaitingRetry()));
             }
 
             return probeResult;
@@ -35,7 +46,7 @@ public class HealthModule {
 
         @Override
         public String title() {
-            return "Last file processing status";
+            return "File processing status";
         }
 
         @Override
@@ -45,4 +56,95 @@ public class HealthModule {
 
     }
 
+    private static class ThroughputProbe implements HealthProbe {
+
+        private IngestMetrics metrics;
+
+        public ThroughputProbe(IngestMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public ProbeResult probe() throws Exception {
+            ProbeResult probeResult = new ProbeResult(title());
+            IngestMetrics.Snapshot snapshot = metrics.snapshot();
+            probeResult.addInfo("files processed", String.format("%d (%d failed)",
+                snapshot.getFiles(), snapshot.getFailedFiles()));
+            probeResult.addInfo("programmes processed", String.valueOf(snapshot.getProgrammes()));
+            probeResult.addInfo("programmes per second", String.format("%.1f", snapshot.getProgrammesPerSecond()));
+            probeResult.addInfo("bytes read", String.format("%d (%d uncompressed)",
+                snapshot.getBytesRead(), snapshot.getUncompressedBytes()));
+            for (Map.Entry<String, IngestMetrics.WriteSummary> writes : snapshot.getAtlasWrites().entrySet()) {
+                IngestMetrics.WriteSummary summary = writes.getValue();
+                probeResult.addInfo(writes.getKey() + " errors", String.format("%d of %d (%.2f%%)",
+                    summary.getFailed(), summary.getAttempted(), summary.getErrorRate() * 100));
+            }
+            for (Map.Entry<String, Long> gauge : snapshot.getGauges().entrySet()) {
+                probeResult.addInfo(gauge.getKey(), String.valueOf(gauge.getValue()));
+            }
+            for (Map.Entry<String, IngestMetrics.SymbolSummary> symbol : snapshot.getSymbols().entrySet()) {
+                IngestMetrics.SymbolSummary summary = symbol.getValue();
+                probeResult.addInfo("shared " + symbol.getKey(), String.format("%d of %d hits (%.1f%%), %d KB saved",
+                    summary.getHits(), summary.getLookups(), summary.getHitRate() * 100, summary.getBytesSaved() >> 10));
+            }
+            for (Map.Entry<String, Long> anomaly : snapshot.getScheduleAnomalies().entrySet()) {
+                probeResult.addInfo(anomaly.getKey(), String.valueOf(anomaly.getValue()));
+            }
+            probeResult.addInfo("heap high-water mark", String.format("%d MB of %d MB",
+                snapshot.getHeapPeakBytes() >> 20, snapshot.getHeapMaxBytes() >> 20));
+
+            IngestMetrics.FileSummary lastFile = snapshot.getLastFile();
+            if (lastFile != null) {
+                probeResult.addInfo("last file", String.format("%s: %d programmes in %d ms (%.1f/s), heap peak %d MB",
+                    lastFile.getFilename(), lastFile.getProgrammes(), lastFile.getElapsedMillis(),
+                    lastFile.getProgrammesPerSecond(), lastFile.getHeapPeakBytes() >> 20));
+            }
+            return probeResult;
+        }
+
+        @Override
+        public String title() {
+            return "Ingest throughput";
+        }
+
+        @Override
+        public String slug() {
+            return "throughput";
+        }
+
+    }
+
+    private static class StageLatencyProbe implements HealthProbe {
+
+        private IngestMetrics metrics;
+
+        public StageLatencyProbe(IngestMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public ProbeResult probe() throws Exception {
+            ProbeResult probeResult = new ProbeResult(title());
+            for (Map.Entry<String, LatencyHistogram.Snapshot> stage : metrics.snapshot().getStageLatencies().entrySet()) {
+                LatencyHistogram.Snapshot latency = stage.getValue();
+                probeResult.addInfo(stage.getKey(), String.format(
+                    "count %d, mean %.2f ms, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    latency.getCount(), latency.getMeanMillis(), latency.getP50Millis(),
+                    latency.getP90Millis(), latency.getP99Millis(), latency.getMaxMillis()));
+            }
+            return probeResult;
+        }
+
+        @Override
+        public String title() {
+            return "Ingest stage latencies";
+        }
+
+        @Override
+        public String slug() {
+            return "latency";
+        }
+
+    }
+
 }
@@ -0,0 +1,42 @@
+package com.metabroadcast.nonametv.ingest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.metabroadcast.nonametv.ingest.process.metrics.IngestMetrics;
+
+/**
+ * Serves a snapshot of {@link IngestMetrics} as JSON, for dashboards and alerting
+ * that need more than the health page's formatted values.
+ */
+public class IngestMetricsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient IngestMetrics metrics;
+    private final transient Gson gson = new GsonBuilder()
+            .serializeNulls()
+            .serializeSpecialFloatingPointValues()
+            .setPrettyPrinting()
+            .create();
+
+    public IngestMetricsServlet(IngestMetrics metrics) {
+        this.metrics = checkNotNull(metrics);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        gson.toJson(metrics.snapshot(), response.getWriter());
+    }
+
+}
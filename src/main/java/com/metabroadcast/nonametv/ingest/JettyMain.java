@@ -3,20 +3,13 @@ package com.metabroadcast.nonametv.ingest;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.auth.BasicSessionCredentials;
-import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.net.HostSpecifier;
 import com.metabroadcast.common.ingest.IngestService;
 import com.metabroadcast.common.properties.Configurer;
 import com.metabroadcast.nonametv.ingest.process.XmlTvFileProcessor;
-import com.metabroadcast.nonametv.ingest.process.translate.BrandFactory;
-import com.metabroadcast.nonametv.ingest.process.translate.BrandUriGenerator;
-import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeToItemTranslator;
 import java.io.File;
 import java.util.concurrent.Executor;
-import org.atlasapi.client.AtlasWriteClient;
-import org.atlasapi.client.GsonAtlasClient;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.HttpConfiguration;
@@ -29,7 +22,7 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.util.thread.ThreadPool;
 import org.glassfish.jersey.server.ServerProperties;
-import org.glassfish.jersey.servlet.ServletProperties;
+import org.glassfish.jersey.servlet.ServletContainer;
 
 public class JettyMain {
 
@@ -41,14 +34,6 @@ public class JettyMain {
         Server server = createServer();
         ServletContextHandler ctx = new ServletContextHandler(server, "/");
 
-        ServletHolder jerseyServlet = ctx.addServlet(org.glassfish.jersey.servlet.ServletContainer.class, "/*");
-        jerseyServlet.setInitOrder(1);
-        jerseyServlet.setInitParameters(ImmutableMap.of(
-            ServletProperties.JAXRS_APPLICATION_CLASS, ApplicationConfig.class.getCanonicalName(),
-            "com.sun.jersey.api.json.POJOMappingFeature", "true",
-            ServerProperties.MEDIA_TYPE_MAPPINGS, "json : application/json"
-        ));
-
         /*
          * Configure and start message streamer
          */
@@ -56,29 +41,42 @@ public class JettyMain {
         server.setHandler(ctx);
         server.start();
 
-        HostSpecifier host = HostSpecifier.fromValid(Configurer.get("atlas.host").get());
-        Optional apiKey = Optional.of(Configurer.get("atlas.apiKey").get());
+        File temporaryFileDirectory = new File(Configurer.get("ingest.temporaryFileDirectory").get());
+        IngestService messageStreamer = new IngestService(buildAwsCredentials(), temporaryFileDirectory);
 
-        AtlasWriteClient atlasClient = new GsonAtlasClient(host, apiKey);
-
-        IngestService messageStreamer = new IngestService(
-            buildAwsCredentials(),
-            new File(Configurer.get("ingest.temporaryFileDirectory").get()));
-
-        BrandUriGenerator brandUriGenerator = new BrandUriGenerator();
-        XmlTvFileProcessor xmlTvFileProcessor = new XmlTvFileProcessor(atlasClient,
-            new ProgrammeToItemTranslator(brandUriGenerator), new BrandFactory(brandUriGenerator));
+        ProcessingModule processingModule = new ProcessingModule(temporaryFileDirectory);
+        XmlTvFileProcessor xmlTvFileProcessor = processingModule.xmlTvFileProcessor(processingModule.itemWriter());
 
         messageStreamer.registerFileProcessor(Configurer.get("aws.s3BucketName").get(), xmlTvFileProcessor);
         messageStreamer.start();
 
+        /*
+         * Accept feeds pushed over HTTP
+         */
+
+        ServletHolder jerseyServlet = new ServletHolder(new ServletContainer(
+            new ApplicationConfig(processingModule.feedPushResource(xmlTvFileProcessor))));
+        jerseyServlet.setInitOrder(1);
+        jerseyServlet.setInitParameters(ImmutableMap.of(
+            "com.sun.jersey.api.json.POJOMappingFeature", "true",
+            ServerProperties.MEDIA_TYPE_MAPPINGS, "json : application/json"
+        ));
+        ctx.addServlet(jerseyServlet, "/*");
+
         /*
          * Add health web page
          */
 
         HealthModule healthModule = new HealthModule();
-        ServletHolder healthHolder = new ServletHolder(healthModule.healthController(xmlTvFileProcessor));
+        ServletHolder healthHolder = new ServletHolder(
+            healthModule.healthController(xmlTvFileProcessor, processingModule.metrics()));
         ctx.addServlet(healthHolder, "/system/health");
+
+        /*
+         * Add machine-readable ingest metrics
+         */
+
+        ctx.addServlet(new ServletHolder(new IngestMetricsServlet(processingModule.metrics())), "/system/metrics");
     }
 
     private static Server createServer() {
@@ -0,0 +1,257 @@
+package com.metabroadcast.nonametv.ingest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.atlasapi.client.AtlasWriteClient;
+import org.atlasapi.client.GsonAtlasClient;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.net.HostSpecifier;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.metabroadcast.common.properties.Configurer;
+import com.metabroadcast.nonametv.ingest.process.XmlTvFileProcessor;
+import com.metabroadcast.nonametv.ingest.process.channel.ChannelRegistry;
+import com.metabroadcast.nonametv.ingest.process.dedup.BrandWriteCache;
+import com.metabroadcast.nonametv.ingest.process.dedup.ItemFingerprintStore;
+import com.metabroadcast.nonametv.ingest.process.dedup.ItemFingerprinter;
+import com.metabroadcast.nonametv.ingest.process.delta.ScheduleIndex;
+import com.metabroadcast.nonametv.ingest.process.metrics.IngestMetrics;
+import com.metabroadcast.nonametv.ingest.process.parse.DirectXmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.DocumentXmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.StreamingXmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvParsingContext;
+import com.metabroadcast.nonametv.ingest.process.spill.WritePriority;
+import com.metabroadcast.nonametv.ingest.process.write.AsyncAtlasItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.AtlasItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.BatchingItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.CircuitBreakingItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.ItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.LoggingItemRemover;
+import com.metabroadcast.nonametv.ingest.process.write.RateLimitedItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.RetryingItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.StubItemWriter;
+
+/**
+ * Builds the feed processing pipeline from configuration.
+ */
+public class ProcessingModule {
+
+    private final File temporaryFileDirectory;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("xmltv-write-scheduler-%d").setDaemon(true).build());
+    private final IngestMetrics metrics = new IngestMetrics();
+
+    public ProcessingModule(File temporaryFileDirectory) {
+        this.temporaryFileDirectory = checkNotNull(temporaryFileDirectory);
+    }
+
+    public XmlTvFileProcessor xmlTvFileProcessor(ItemWriter itemWriter) throws Exception {
+        return xmlTvFileProcessor(itemWriter, intParameter("ingest.fileParallelism"),
+            intParameter("ingest.translateConcurrency"));
+    }
+
+    /**
+     * Builds a processor that works on up to {@code fileParallelism} files at
+     * once, translating with {@code translateConcurrency} threads shared between
+     * them.
+     */
+    public XmlTvFileProcessor xmlTvFileProcessor(ItemWriter itemWriter, int fileParallelism,
+            int translateConcurrency) throws Exception {
+        XmlTvParsingContext parsingContext = new XmlTvParsingContext();
+        parsingContext.warmUp();
+
+        ItemFingerprinter itemFingerprinter = new ItemFingerprinter();
+        BrandWriteCache brandWriteCache = new BrandWriteCache(itemFingerprinter,
+            intParameter("ingest.brandCache.maximumSize"),
+            intParameter("ingest.brandCache.ttlMinutes"), TimeUnit.MINUTES);
+        ItemFingerprintStore itemFingerprintStore = new ItemFingerprintStore(
+            new File(temporaryFileDirectory, "item-fingerprints.tsv"),
+            intParameter("ingest.incremental.retentionDays"), TimeUnit.DAYS);
+        ScheduleIndex scheduleIndex = scheduleIndex();
+        ChannelRegistry channelRegistry = new ChannelRegistry(new File(temporaryFileDirectory, "channels.tsv"));
+
+        int queueCapacity = intParameter("ingest.queueCapacity");
+        WritePriority writePriority = writePriority();
+        XmlTvFileProcessor processor = XmlTvFileProcessor.builder(itemWriter, createXmlTvParser(parsingContext),
+                temporaryFileDirectory)
+            .channelRegistry(channelRegistry)
+            .itemFingerprinter(itemFingerprinter)
+            .brandWriteCache(brandWriteCache)
+            .itemFingerprintStore(itemFingerprintStore)
+            .scheduleIndex(scheduleIndex)
+            .itemRemover(new LoggingItemRemover())
+            .checkpointCommitInterval(intParameter("ingest.checkpoint.commitInterval"))
+            .translateConcurrency(translateConcurrency, queueCapacity)
+            .maxPendingWrites(queueCapacity)
+            .writeBufferBytes(Long.parseLong(Configurer.get("ingest.writeBuffer.memoryBytes").get()))
+            .writePriority(writePriority)
+            .maximumSymbols(intParameter("ingest.symbolTable.maximumSize"))
+            .errorBudget(intParameter("ingest.errorBudget"))
+            .minimumGap(intParameter("ingest.scheduleGap.minimumMinutes"), TimeUnit.MINUTES)
+            .fileParallelism(fileParallelism)
+            .metrics(metrics)
+            .build();
+
+        metrics.registerGauge("translate in flight", processor::translateInFlight);
+        metrics.registerGauge("writes pending", processor::pendingWrites);
+        metrics.registerGauge("writes buffered", processor::bufferedWrites);
+        metrics.registerGauge("write buffer spilled bytes", processor::spilledWriteBytes);
+        if (writePriority.bandCount() > 1) {
+            for (int band = 0; band < writePriority.bandCount(); band++) {
+                int bufferedBand = band;
+                metrics.registerGauge("writes buffered " + writePriority.bandName(band),
+                    () -> processor.bufferedWrites(bufferedBand));
+            }
+        }
+        metrics.registerGauge("brand cache size", brandWriteCache::size);
+        metrics.registerGauge("item fingerprints", itemFingerprintStore::size);
+        metrics.registerGauge("indexed slots", scheduleIndex::size);
+        metrics.registerGauge("registered channels", channelRegistry::size);
+        metrics.registerGauge("undeclared channels", () -> channelRegistry.unknownChannels().size());
+        return processor;
+    }
+
+    /**
+     * Builds the resource accepting feeds pushed over HTTP into a processor.
+     */
+    public FeedPushResource feedPushResource(XmlTvFileProcessor processor) {
+        FeedPushResource resource = new FeedPushResource(processor,
+            intParameter("ingest.push.maximumConcurrent"),
+            Long.parseLong(Configurer.get("ingest.push.maximumBytes").get()),
+            Long.parseLong(Configurer.get("ingest.push.maximumUncompressedBytes").get()));
+        metrics.registerGauge("pushes in progress", resource::inProgress);
+        return resource;
+    }
+
+    public IngestMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Buffered writes are given out in bands bounded by
+     * {@code ingest.writePriority.bandHours}, a comma-separated list of hours from
+     * now, so that programmes broadcast soonest are written first. With no bounds,
+     * they are written in the order they were read.
+     */
+    private static WritePriority writePriority() {
+        List<String> bounds = Splitter.on(',').trimResults().omitEmptyStrings()
+            .splitToList(Strings.nullToEmpty(Configurer.get("ingest.writePriority.bandHours").get()));
+        long[] bandHours = new long[bounds.size()];
+        for (int i = 0; i < bandHours.length; i++) {
+            bandHours[i] = Long.parseLong(bounds.get(i));
+        }
+        return new WritePriority(bandHours, TimeUnit.HOURS);
+    }
+
+    /**
+     * With {@code ingest.incremental} set, slots are indexed so that those which
+     * disappear from the schedule can be removed, and forgotten once they ended
+     * {@code ingest.incremental.retentionDays} ago. It is off by default: the only
+     * remover, {@link LoggingItemRemover}, cannot delete items from Atlas, so every
+     * slot that disappears would count as a failed write.
+     */
+    private ScheduleIndex scheduleIndex() throws IOException {
+        if (!Boolean.parseBoolean(Configurer.get("ingest.incremental").get())) {
+            return ScheduleIndex.disabled();
+        }
+        return new ScheduleIndex(new File(temporaryFileDirectory, "schedule-index.tsv"),
+            intParameter("ingest.incremental.retentionDays"), TimeUnit.DAYS);
+    }
+
+    /**
+     * Writes go through a batcher that coalesces duplicate URIs, then are retried
+     * with backoff, refused while the Atlas circuit breaker is open, rate limited
+     * and finally sent to Atlas from a pool of {@code ingest.writeConcurrency}
+     * threads. Setting {@code ingest.writer=async} sends them from an
+     * {@link AsyncAtlasItemWriter} instead, without a thread per request, and
+     * {@code ingest.writer=stub} replaces Atlas with a {@link StubItemWriter} for
+     * load testing.
+     */
+    public ItemWriter itemWriter() {
+        ItemWriter writer;
+        if ("stub".equals(Configurer.get("ingest.writer").get())) {
+            writer = new StubItemWriter(scheduler,
+                intParameter("ingest.stubWriter.latencyMillis"),
+                Double.parseDouble(Configurer.get("ingest.stubWriter.failureRate").get()));
+        } else if ("async".equals(Configurer.get("ingest.writer").get())) {
+            writer = asyncAtlasItemWriter();
+        } else {
+            writer = new AtlasItemWriter(atlasWriteClient(), writeExecutor());
+        }
+        RateLimitedItemWriter rateLimitedWriter = new RateLimitedItemWriter(writer,
+            Double.parseDouble(Configurer.get("ingest.write.ratePerSecond").get()), scheduler);
+        metrics.registerGauge("writes awaiting rate limit", rateLimitedWriter::waitingCount);
+        writer = rateLimitedWriter;
+        CircuitBreakingItemWriter circuitBreaker = new CircuitBreakingItemWriter(writer,
+            intParameter("ingest.circuitBreaker.failureThreshold"),
+            intParameter("ingest.circuitBreaker.openSeconds"), TimeUnit.SECONDS);
+        metrics.registerGauge("atlas circuit breaker trips", circuitBreaker::trips);
+        writer = new RetryingItemWriter(circuitBreaker, scheduler,
+            intParameter("ingest.write.maxAttempts"),
+            intParameter("ingest.write.initialBackoffMillis"),
+            intParameter("ingest.write.maxBackoffMillis"));
+        BatchingItemWriter batchingWriter = new BatchingItemWriter(writer,
+            intParameter("ingest.write.batchSize"),
+            intParameter("ingest.write.batchDelayMillis"), TimeUnit.MILLISECONDS);
+        metrics.registerGauge("write batch queue", batchingWriter::pendingCount);
+        return batchingWriter;
+    }
+
+    /**
+     * Writes to the same content endpoint as {@link GsonAtlasClient}, with
+     * {@code ingest.writeConcurrency} keep-alive connections carrying up to
+     * {@code ingest.asyncWriter.maxInFlight} requests.
+     */
+    private ItemWriter asyncAtlasItemWriter() {
+        String contentUri = String.format("http://%s/3.0/content.json?apiKey=%s",
+            HostSpecifier.fromValid(Configurer.get("atlas.host").get()), Configurer.get("atlas.apiKey").get());
+        try {
+            AsyncAtlasItemWriter writer = new AsyncAtlasItemWriter(contentUri,
+                intParameter("ingest.writeConcurrency"), intParameter("ingest.asyncWriter.maxInFlight"),
+                intParameter("ingest.asyncWriter.timeoutSeconds"), TimeUnit.SECONDS);
+            metrics.registerGauge("atlas requests in flight", writer::inFlightCount);
+            return writer;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to start the Atlas HTTP client", e);
+        }
+    }
+
+    private AtlasWriteClient atlasWriteClient() {
+        HostSpecifier host = HostSpecifier.fromValid(Configurer.get("atlas.host").get());
+        Optional apiKey = Optional.of(Configurer.get("atlas.apiKey").get());
+
+        return new GsonAtlasClient(host, apiKey);
+    }
+
+    private ExecutorService writeExecutor() {
+        return Executors.newFixedThreadPool(intParameter("ingest.writeConcurrency"),
+            new ThreadFactoryBuilder().setNameFormat("xmltv-write-%d").setDaemon(true).build());
+    }
+
+    private static XmlTvParser createXmlTvParser(XmlTvParsingContext parsingContext) {
+        String parser = Configurer.get("ingest.parser").get();
+        if ("document".equals(parser)) {
+            return new DocumentXmlTvParser(parsingContext);
+        }
+        if ("direct".equals(parser)) {
+            return new DirectXmlTvParser(parsingContext);
+        }
+        return new StreamingXmlTvParser(parsingContext);
+    }
+
+    private static int intParameter(String name) {
+        return Integer.parseInt(Configurer.get(name).get());
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.metabroadcast.nonametv.ingest.process;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * An executor that accepts at most {@code bound} tasks at a time, counting both
+ * running and queued tasks. Submitting beyond that blocks the caller until a task
+ * completes, which pushes back on whichever stage is producing work faster than
+ * this one can consume it.
+ */
+class BoundedExecutor {
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int bound;
+
+    public BoundedExecutor(ExecutorService executor, int bound) {
+        checkArgument(bound > 0, "bound must be positive");
+        this.executor = checkNotNull(executor);
+        this.permits = new Semaphore(bound);
+        this.bound = bound;
+    }
+
+    /**
+     * Creates an executor with a fixed pool of daemon threads and room for
+     * {@code queueCapacity} tasks waiting behind them.
+     */
+    public static BoundedExecutor fixedThreadPool(String name, int threads, int queueCapacity) {
+        checkArgument(threads > 0, "threads must be positive");
+        checkArgument(queueCapacity >= 0, "queueCapacity must not be negative");
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat(name + "-%d")
+                .setDaemon(true)
+                .build());
+        return new BoundedExecutor(executor, threads + queueCapacity);
+    }
+
+    public void submit(final Runnable task) throws InterruptedException {
+        permits.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of tasks currently running or waiting to run.
+     */
+    public int inFlight() {
+        return bound - permits.availablePermits();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+}
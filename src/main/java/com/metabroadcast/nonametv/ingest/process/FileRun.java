@@ -0,0 +1,255 @@
+package com.metabroadcast.nonametv.ingest.process;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Throwables;
+
+import com.metabroadcast.common.ingest.monitorclient.model.Entity;
+import com.metabroadcast.common.ingest.s3.process.ProcessingResult;
+import com.metabroadcast.nonametv.ingest.process.checkpoint.FileCheckpoint;
+import com.metabroadcast.nonametv.ingest.process.translate.SymbolTable;
+
+/**
+ * Per-file processing state. Programmes from one file are translated and written
+ * on several threads, so the result builder is guarded here and in-flight
+ * programmes are tracked so that the file is only reported once all of them have
+ * finished. Files are numbered in the order they arrive so that writes from
+ * concurrently processed files can be ordered, and each file's progress is
+ * recorded in its {@link FileCheckpoint}. Values repeated throughout the file are
+ * shared through its {@link SymbolTable}.
+ * <p>
+ * Write failures are reported once per distinct error, with the number of
+ * programmes it affected, rather than once per programme. A run can be stopped
+ * early, after which its remaining programmes are abandoned.
+ */
+class FileRun {
+
+    private static final int MAX_MESSAGE_LENGTH = 200;
+
+    private final long sequence;
+    private final FileCheckpoint checkpoint;
+    private final SymbolTable symbols;
+    private final long arrivedNanos;
+
+    private final ProcessingResult.Builder resultBuilder = ProcessingResult.builder();
+    private final Object inFlightLock = new Object();
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger resumed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger duplicated = new AtomicInteger();
+    private final AtomicInteger superseded = new AtomicInteger();
+    private final AtomicInteger failedWrites = new AtomicInteger();
+    private final AtomicInteger removed = new AtomicInteger();
+    private final AtomicInteger abandoned = new AtomicInteger();
+    private final Map<String, FailureTally> failures = new LinkedHashMap<>();
+
+    private long inFlight;
+    private volatile String stopReason;
+
+    FileRun(long sequence, FileCheckpoint checkpoint, SymbolTable symbols, long arrivedNanos) {
+        this.sequence = sequence;
+        this.checkpoint = checkpoint;
+        this.symbols = symbols;
+        this.arrivedNanos = arrivedNanos;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    FileCheckpoint checkpoint() {
+        return checkpoint;
+    }
+
+    SymbolTable symbols() {
+        return symbols;
+    }
+
+    /**
+     * When the file was handed over for processing, by {@link System#nanoTime()},
+     * including any time spent waiting for other files to finish.
+     */
+    long arrivedNanos() {
+        return arrivedNanos;
+    }
+
+    void programmeStarted() {
+        started.incrementAndGet();
+        synchronized (inFlightLock) {
+            inFlight++;
+        }
+    }
+
+    int startedCount() {
+        return started.get();
+    }
+
+    void programmeFinished() {
+        synchronized (inFlightLock) {
+            if (--inFlight == 0) {
+                inFlightLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Records a programme processed by an earlier attempt at the file.
+     */
+    void programmeResumed() {
+        resumed.incrementAndGet();
+    }
+
+    int resumedCount() {
+        return resumed.get();
+    }
+
+    /**
+     * Records a programme left out because its channel already had a slot with
+     * the same times earlier in the file.
+     */
+    void programmeDuplicated() {
+        duplicated.incrementAndGet();
+    }
+
+    int duplicatedCount() {
+        return duplicated.get();
+    }
+
+    void programmeSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    int skippedCount() {
+        return skipped.get();
+    }
+
+    void programmeSuperseded() {
+        superseded.incrementAndGet();
+    }
+
+    int supersededCount() {
+        return superseded.get();
+    }
+
+    /**
+     * Records a failed write or removal, returning the number failed so far.
+     */
+    int writeFailed(String action, String id, Throwable cause) {
+        String error = action + ": " + describe(cause);
+        synchronized (this) {
+            FailureTally tally = failures.get(error);
+            if (tally == null) {
+                failures.put(error, new FailureTally(id));
+            } else {
+                tally.count++;
+            }
+        }
+        return failedWrites.incrementAndGet();
+    }
+
+    int failedWriteCount() {
+        return failedWrites.get();
+    }
+
+    void slotRemoved() {
+        removed.incrementAndGet();
+    }
+
+    int removedCount() {
+        return removed.get();
+    }
+
+    void programmeAbandoned() {
+        abandoned.incrementAndGet();
+    }
+
+    int abandonedCount() {
+        return abandoned.get();
+    }
+
+    /**
+     * Stops the run: no further programmes are submitted, and those not yet
+     * written are abandoned. Only the first reason given is kept.
+     */
+    synchronized void stop(String reason) {
+        if (stopReason == null) {
+            stopReason = reason;
+        }
+    }
+
+    boolean isStopped() {
+        return stopReason != null;
+    }
+
+    String stopReason() {
+        return stopReason;
+    }
+
+    synchronized void error(String error) {
+        resultBuilder.error(error);
+    }
+
+    synchronized void addEntity(Entity entity) {
+        resultBuilder.addEntity(entity);
+    }
+
+    /**
+     * Blocks until every programme started on this run has finished, however
+     * many are buffered awaiting their writes. Interruption does not cut the wait
+     * short, as the run's results are incomplete until then, but is preserved.
+     */
+    void awaitCompletion() {
+        boolean interrupted = false;
+        synchronized (inFlightLock) {
+            while (inFlight > 0) {
+                try {
+                    inFlightLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized ProcessingResult result() {
+        for (Map.Entry<String, FailureTally> failure : failures.entrySet()) {
+            FailureTally tally = failure.getValue();
+            resultBuilder.error(tally.count == 1
+                ? String.format("%s %s", tally.firstId, failure.getKey())
+                : String.format("%s (%d programmes, first %s)", failure.getKey(), tally.count, tally.firstId));
+        }
+        failures.clear();
+        return resultBuilder.build();
+    }
+
+    /**
+     * A one-line description of the root cause of a failure, without its stack
+     * trace, so that the same failure of many writes is recognisably the same.
+     */
+    private static String describe(Throwable cause) {
+        Throwable root = Throwables.getRootCause(cause);
+        String message = root.getMessage();
+        if (message != null && message.length() > MAX_MESSAGE_LENGTH) {
+            message = message.substring(0, MAX_MESSAGE_LENGTH) + "...";
+        }
+        return message == null
+            ? root.getClass().getSimpleName()
+            : root.getClass().getSimpleName() + ": " + message;
+    }
+
+    private static final class FailureTally {
+
+        private final String firstId;
+        private int count = 1;
+
+        private FailureTally(String firstId) {
+            this.firstId = firstId;
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.metabroadcast.nonametv.ingest.process;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Orders writes to the same item URI across files processed concurrently. Each
+ * file is given a sequence number as it arrives; writes to a URI run one after
+ * another, and a write from a file older than the newest file to have written
+ * that URI is dropped, so an older file can never overwrite newer schedule data
+ * for the same slot, however the files' writes interleave.
+ * <p>
+ * A URI's entry is only kept while an older file is still being processed and
+ * could yet try to write it, so memory is bounded by the files in flight.
+ */
+class SlotWriteSequencer {
+
+    private final Map<String, Slot> slots = new HashMap<>();
+    private final NavigableSet<Long> filesInFlight = new TreeSet<>();
+    private long nextSequence;
+
+    /**
+     * Registers a file as it arrives and returns its sequence number.
+     */
+    synchronized long fileStarted() {
+        long sequence = nextSequence++;
+        filesInFlight.add(sequence);
+        return sequence;
+    }
+
+    synchronized void fileFinished(long sequence) {
+        filesInFlight.remove(sequence);
+        long oldestInFlight = filesInFlight.isEmpty() ? Long.MAX_VALUE : filesInFlight.first();
+        Iterator<Slot> iterator = slots.values().iterator();
+        while (iterator.hasNext()) {
+            Slot slot = iterator.next();
+            if (slot.sequence <= oldestInFlight && slot.tail.isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Runs {@code write} once every earlier write to {@code uri} has completed,
+     * unless a newer file has already written it. The returned future completes
+     * with {@code false} if the write was dropped. The write is never started
+     * while this sequencer's lock is held.
+     */
+    CompletableFuture<Boolean> write(String uri, long sequence, Supplier<CompletableFuture<Void>> write) {
+        CompletableFuture<Void> previous;
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        synchronized (this) {
+            Slot slot = slots.get(uri);
+            if (slot != null && slot.sequence > sequence) {
+                return CompletableFuture.completedFuture(false);
+            }
+            previous = slot == null ? null : slot.tail;
+            slots.put(uri, new Slot(sequence, written));
+        }
+
+        CompletableFuture<Void> ready = previous == null
+            ? CompletableFuture.<Void>completedFuture(null)
+            : previous.handle((ignored, error) -> null);
+        ready.thenCompose(ignored -> write.get()).whenComplete((ignored, error) -> {
+            if (error == null) {
+                written.complete(null);
+            } else {
+                written.completeExceptionally(error);
+            }
+        });
+        return written.thenApply(ignored -> true);
+    }
+
+    synchronized int size() {
+        return slots.size();
+    }
+
+    private static final class Slot {
+
+        private final long sequence;
+        private final CompletableFuture<Void> tail;
+
+        private Slot(long sequence, CompletableFuture<Void> tail) {
+            this.sequence = sequence;
+            this.tail = tail;
+        }
+    }
+
+}
@@ -1,155 +1,1008 @@
 package com.metabroadcast.nonametv.ingest.process;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-
-import javax.xml.XMLConstants;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.sax.SAXSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
 import com.metabroadcast.common.ingest.monitorclient.model.Entity;
-import org.atlasapi.client.AtlasWriteClient;
+import org.atlasapi.media.entity.simple.Broadcast;
 import org.atlasapi.media.entity.simple.Item;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 
 import com.metabroadcast.common.ingest.s3.process.FileProcessor;
 import com.metabroadcast.common.ingest.s3.process.ProcessingResult;
+import com.metabroadcast.nonametv.ingest.process.channel.ChannelRegistry;
+import com.metabroadcast.nonametv.ingest.process.checkpoint.CheckpointStore;
+import com.metabroadcast.nonametv.ingest.process.checkpoint.FileCheckpoint;
+import com.metabroadcast.nonametv.ingest.process.checkpoint.Outcome;
+import com.metabroadcast.nonametv.ingest.process.dedup.BrandWriteCache;
+import com.metabroadcast.nonametv.ingest.process.dedup.ItemFingerprintStore;
+import com.metabroadcast.nonametv.ingest.process.dedup.ItemFingerprinter;
+import com.metabroadcast.nonametv.ingest.process.delta.ChannelIntervalIndex;
+import com.metabroadcast.nonametv.ingest.process.delta.ChannelIntervalIndex.ChannelAnomalies;
+import com.metabroadcast.nonametv.ingest.process.delta.FileSchedule;
+import com.metabroadcast.nonametv.ingest.process.delta.ScheduleIndex;
+import com.metabroadcast.nonametv.ingest.process.delta.Slot;
+import com.metabroadcast.nonametv.ingest.process.metrics.IngestMetrics;
+import com.metabroadcast.nonametv.ingest.process.metrics.IngestMetrics.Stage;
+import com.metabroadcast.nonametv.ingest.process.parse.FeedInput;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvHandler;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvParseException;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.spill.SpillFile;
+import com.metabroadcast.nonametv.ingest.process.spill.WriteBuffer;
+import com.metabroadcast.nonametv.ingest.process.spill.WritePriority;
 import com.metabroadcast.nonametv.ingest.process.translate.BrandFactory;
+import com.metabroadcast.nonametv.ingest.process.translate.BrandUriGenerator;
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeFields;
 import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeToItemTranslator;
+import com.metabroadcast.nonametv.ingest.process.translate.SymbolTable;
+import com.metabroadcast.nonametv.ingest.process.translate.SymbolTable.Symbol;
 import com.metabroadcast.nonametv.ingest.process.translate.TranslationResult;
+import com.metabroadcast.nonametv.ingest.process.translate.TranslationResult.Status;
+import com.metabroadcast.nonametv.ingest.process.translate.XmlTvDateTimes;
+import com.metabroadcast.nonametv.ingest.process.write.CircuitOpenException;
+import com.metabroadcast.nonametv.ingest.process.write.ItemRemover;
+import com.metabroadcast.nonametv.ingest.process.write.ItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.LoggingItemRemover;
+import com.metabroadcast.nonametv.xml.Channel;
 import com.metabroadcast.nonametv.xml.Programme;
-import com.metabroadcast.nonametv.xml.Tv;
 
 /**
+ * Processes a feed file as a three-stage pipeline: the calling thread parses
+ * programmes and hands them to the translate executor, whose workers hand
+ * translated items to the {@link ItemWriter}. Files compressed with gzip, bzip2
+ * or zstd are decompressed as they are parsed. The translate executor is bounded,
+ * so slow translation throttles parsing. A parser that reads programmes into
+ * {@link ProgrammeFields} rather than unmarshalling them has them translated on
+ * the calling thread, and only the rest of the work handed on. Translated items
+ * wait in a {@link WriteBuffer}, from which at most {@code maxPendingWrites}
+ * writes are in flight at once. The buffer gives out items by the bands of the
+ * {@link WritePriority}, so programmes broadcast soon are written ahead of those
+ * broadcast later in the file, with channels taking turns within a band. It
+ * spills to disk once it holds {@code writeBufferBytes} of items, so a slow
+ * write stage holds neither the heap nor the parser. Items whose content is
+ * unchanged since they were last written are skipped without touching Atlas, and
+ * when the {@link ScheduleIndex} is enabled, slots that a fully parsed file no
+ * longer lists within the window it covers are removed. Channels declared by the
+ * file are added to the {@link ChannelRegistry}, from which the translator takes
+ * each programme's broadcast channel URI. The latency of every stage, the
+ * outcome of every Atlas write, and the time from a file's arrival until each of
+ * its items is visible in Atlas, by band, is recorded in {@link IngestMetrics}.
+ * <p>
+ * Up to {@code fileParallelism} files are processed at once, each with its own
+ * {@link FileRun}; further files wait their turn in the order they arrived. A
+ * {@link SlotWriteSequencer} keeps writes to each item URI in file order, so an
+ * older file never overwrites a slot that a newer one has written.
+ * <p>
+ * Progress through each file is checkpointed by the {@link CheckpointStore}. A
+ * file processed again after an interrupted attempt skips the programmes that
+ * attempt committed, other than those whose writes failed, and reports the
+ * errors it had reported for them again.
+ * <p>
+ * A file is stopped early, and marked for retry, once more than
+ * {@code errorBudget} of its writes have failed or a write finds the Atlas
+ * circuit breaker open: the rest of the file is not read and programmes not yet
+ * written are abandoned, to be picked up from the checkpoint when the file is
+ * retried. Write failures are reported once per distinct error.
+ *
  * @author will
  */
 public class XmlTvFileProcessor implements FileProcessor {
 
     private static final Logger log = LoggerFactory.getLogger(XmlTvFileProcessor.class);
 
-    private final AtlasWriteClient atlasWriteClient;
+    private final ItemWriter itemWriter;
+    private final XmlTvParser xmlTvParser;
     private final ProgrammeToItemTranslator programmeToItemTranslator;
     private final BrandFactory brandFactory;
+    private final BrandWriteCache brandWriteCache;
+    private final ItemFingerprinter itemFingerprinter;
+    private final ItemFingerprintStore itemFingerprintStore;
+    private final ScheduleIndex scheduleIndex;
+    private final ChannelRegistry channelRegistry;
+    private final ItemRemover itemRemover;
+    private final CheckpointStore checkpointStore;
+    private final BoundedExecutor translateExecutor;
+    private final int maxPendingWrites;
+    private final int maximumSymbols;
+    private final int errorBudget;
+    private final long minimumGapMillis;
+    private final Semaphore writePermits;
+    private final WritePriority writePriority;
+    private final WriteBuffer<PendingWrite> writeBuffer;
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final IngestMetrics metrics;
+    private final Semaphore filePermits;
+    private final SlotWriteSequencer slotWriteSequencer = new SlotWriteSequencer();
+    private final Set<String> filesAwaitingRetry = ConcurrentHashMap.newKeySet();
+    private final Set<String> failedFiles = ConcurrentHashMap.newKeySet();
 
-    private boolean lastRunSuccessful;
-
-    public XmlTvFileProcessor(AtlasWriteClient atlasWriteClient,
-        ProgrammeToItemTranslator programmeToItemTranslator,
-        BrandFactory brandFactory) {
-        this.atlasWriteClient = checkNotNull(atlasWriteClient);
-        this.programmeToItemTranslator = checkNotNull(programmeToItemTranslator);
-        this.brandFactory = checkNotNull(brandFactory);
+    private XmlTvFileProcessor(Builder builder) throws IOException {
+        ChannelRegistry channelRegistry = builder.channelRegistry;
+        BrandUriGenerator brandUriGenerator = new BrandUriGenerator();
+        this.itemWriter = builder.itemWriter;
+        this.xmlTvParser = builder.xmlTvParser;
+        this.programmeToItemTranslator = new ProgrammeToItemTranslator(brandUriGenerator, channelRegistry);
+        this.brandFactory = new BrandFactory(brandUriGenerator);
+        this.itemFingerprinter = builder.itemFingerprinter;
+        this.brandWriteCache = builder.brandWriteCache != null
+            ? builder.brandWriteCache
+            : new BrandWriteCache(itemFingerprinter, 50000, 720, TimeUnit.MINUTES);
+        this.itemFingerprintStore = builder.itemFingerprintStore != null
+            ? builder.itemFingerprintStore
+            : new ItemFingerprintStore(new File(builder.directory, "item-fingerprints.tsv"), 7, TimeUnit.DAYS);
+        this.scheduleIndex = builder.scheduleIndex;
+        this.channelRegistry = channelRegistry;
+        this.itemRemover = builder.itemRemover;
+        this.checkpointStore = new CheckpointStore(new File(builder.directory, "checkpoints"),
+            builder.checkpointCommitInterval);
+        this.maxPendingWrites = builder.maxPendingWrites;
+        this.maximumSymbols = builder.maximumSymbols;
+        this.errorBudget = builder.errorBudget;
+        this.minimumGapMillis = builder.minimumGapMillis;
+        this.writePermits = new Semaphore(maxPendingWrites);
+        this.writePriority = builder.writePriority;
+        this.writeBuffer = new WriteBuffer<>(new SpillFile(new File(builder.directory, "write-buffer.spill")),
+            builder.writeBufferBytes, writePriority);
+        this.metrics = builder.metrics;
+        this.filePermits = new Semaphore(builder.fileParallelism, true);
+        this.translateExecutor = BoundedExecutor.fixedThreadPool("xmltv-translate", builder.translateConcurrency,
+            builder.translateQueueCapacity);
+    }
 
-        lastRunSuccessful = true;
+    /**
+     * Starts building a processor that hands items to {@code itemWriter}, reads
+     * feeds with {@code xmlTvParser} and keeps its fingerprints, checkpoints and
+     * spilled writes in {@code directory}.
+     */
+    public static Builder builder(ItemWriter itemWriter, XmlTvParser xmlTvParser, File directory) {
+        return new Builder(itemWriter, xmlTvParser, directory);
     }
 
     @Override
     public ProcessingResult process(String originalFilename, File file) {
-        log.debug("Started processing an XMLTV feed file");
-        ProcessingResult.Builder resultBuilder = ProcessingResult.builder();
+        return process(originalFilename, file, reserveSequence());
+    }
+
+    /**
+     * Reserves a file's place in the order files arrive in, for a caller that
+     * hands files to several threads but needs them ordered as it submitted them:
+     * a file's writes never overwrite those of a file reserved after it, whichever
+     * thread gets to run first. Each reserved sequence must be passed to
+     * {@link #process(String, File, long)} exactly once.
+     */
+    public long reserveSequence() {
+        return slotWriteSequencer.fileStarted();
+    }
 
-        Tv tv;
+    /**
+     * Processes a file in the place reserved for it by {@link #reserveSequence()}.
+     */
+    public ProcessingResult process(String originalFilename, File file, long sequence) {
+        return process(originalFilename, () -> FeedInput.open(file, originalFilename),
+            () -> openCheckpoint(originalFilename, file), true, sequence);
+    }
+
+    /**
+     * Processes a feed as it is read from a stream, such as the body of a request
+     * pushing it, without first copying it to disk. The stream cannot be read
+     * again, so the feed is not checkpointed, and if it is stopped early it is not
+     * marked for retry: it is up to whoever pushed it to push it again. Pushed
+     * feeds wait for their turn alongside files. The input is closed once read.
+     * <p>
+     * Should the input pass a size limit partway through, the run is stopped and
+     * programmes not yet written are abandoned, though those written before the
+     * limit was reached remain written.
+     */
+    public ProcessingResult process(String originalFilename, FeedInput input) {
+        return process(originalFilename, () -> input, FileCheckpoint::none, false, reserveSequence());
+    }
+
+    private ProcessingResult process(String originalFilename, FeedSource source,
+            Supplier<FileCheckpoint> checkpoint, boolean retryable, long sequence) {
+        long arrivedNanos = System.nanoTime();
+        try {
+            filePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            slotWriteSequencer.fileFinished(sequence);
+            return ProcessingResult.builder()
+                .error("input file: Interrupted before it could be processed")
+                .build();
+        }
         try {
-            JAXBContext context = JAXBContext.newInstance(Tv.class);
-
-            SAXParserFactory spf = SAXParserFactory.newInstance();
-            spf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            spf.setFeature("http://apache.org/xml/features/validation/schema", false);
-            spf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-
-            XMLReader xmlReader = spf.newSAXParser().getXMLReader();
-            InputSource inputSource = new InputSource(new FileReader(file));
-            SAXSource source = new SAXSource(xmlReader, inputSource);
-
-            Unmarshaller unmarshaller = context.createUnmarshaller();
-
-            tv = (Tv)unmarshaller.unmarshal(source);
-        } catch (JAXBException | ParserConfigurationException | SAXException | FileNotFoundException e) {
-            String error = "Unable to deserialise the input file as XMLTV-compliant XML";
-            log.error(error, e);
-            lastRunSuccessful = false;
-            resultBuilder.error(String.format("input file: %s", error));
-            return resultBuilder.build();
-        }
-
-        if (tv == null) {
-            String error = "Unable to deserialise a 'tv' element from the feed file";
-            log.error(error);
-            lastRunSuccessful = false;
-            resultBuilder.error(String.format("input file: %s", error));
-            return resultBuilder.build();
-        }
-
-        for (Programme programme : tv.getProgramme()) {
-            TranslationResult translationResult = programmeToItemTranslator.translate(programme);
-            Item item = translationResult.getItem();
-
-            String programmeId = programme.getChannel() + programme.getStart() + programme.getStop();
-
-            switch (translationResult.getStatus()) {
-            case ERROR:
-                log.debug("Error(s) translating programme {}", programmeId);
-                for (String error : translationResult.getErrors()) {
-                    resultBuilder.error(String.format("Programme ID: %s. Warning: %s",
-                            programmeId,
-                            error
-                    ));
+            return process(originalFilename, source, retryable, new FileRun(sequence, checkpoint.get(),
+                new SymbolTable(maximumSymbols), arrivedNanos));
+        } finally {
+            filePermits.release();
+            slotWriteSequencer.fileFinished(sequence);
+        }
+    }
+
+    private ProcessingResult process(String originalFilename, FeedSource source, boolean retryable, FileRun run) {
+        log.debug("Started processing XMLTV feed file {}", originalFilename);
+        long startedNanos = System.nanoTime();
+        metrics.fileStarted();
+
+        FileCheckpoint checkpoint = run.checkpoint();
+        if (checkpoint.isResumed()) {
+            log.info("Resuming {} from programme {}, {} programmes having been processed before",
+                originalFilename, checkpoint.offset(), checkpoint.resumedEntries().size());
+            for (FileCheckpoint.Entry entry : checkpoint.resumedEntries()) {
+                reportOutcome(entry.getOutcome(), entry.getMessages(), run);
+            }
+        }
+
+        boolean parsed = true;
+        FileSchedule schedule = new FileSchedule();
+        ChannelIntervalIndex intervals = new ChannelIntervalIndex(minimumGapMillis);
+        long compressedBytes = 0;
+        long uncompressedBytes = 0;
+        FeedInput feedInput = null;
+        try (FeedInput input = source.open()) {
+            feedInput = input;
+            xmlTvParser.parse(input.stream(), new XmlTvHandler() {
+
+                private long parseStartedNanos = System.nanoTime();
+                private int programmeIndex;
+
+                @Override
+                public void handleChannel(Channel channel) {
+                    log.debug("Read channel {}", channel.getId());
+                    channelRegistry.register(channel);
+                    parseStartedNanos = System.nanoTime();
+                }
+
+                @Override
+                public void handleProgramme(Programme programme) {
+                    if (run.isStopped()) {
+                        throw new FileStoppedException();
+                    }
+                    metrics.record(Stage.PARSE, System.nanoTime() - parseStartedNanos);
+                    int index = programmeIndex++;
+                    if (admit(programme.getChannel(), programme.getStart(), programme.getStop(), index,
+                            () -> programmeToItemTranslator.itemUri(programme))) {
+                        submit(programme, index, run);
+                    }
+                    parseStartedNanos = System.nanoTime();
                 }
-                continue;
+
+                @Override
+                public void handleProgrammeFields(ProgrammeFields programme) {
+                    if (run.isStopped()) {
+                        throw new FileStoppedException();
+                    }
+                    metrics.record(Stage.PARSE, System.nanoTime() - parseStartedNanos);
+                    int index = programmeIndex++;
+                    if (admit(programme.getChannel(), programme.getStart(), programme.getStop(), index,
+                            () -> programmeToItemTranslator.itemUri(programme))) {
+                        translateAndSubmit(programme, index, run);
+                    }
+                    parseStartedNanos = System.nanoTime();
+                }
+
+                /**
+                 * Indexes a programme's slot and decides whether to process it:
+                 * not if it repeats a slot already read on its channel, the first
+                 * listing being kept, nor if an earlier attempt processed it.
+                 * Programmes whose times cannot be parsed are left for translation
+                 * to reject.
+                 */
+                private boolean admit(String channel, String start, String stop, int index,
+                        Supplier<String> uri) {
+                    if (channel != null && start != null && stop != null) {
+                        long startMillis;
+                        long stopMillis;
+                        try {
+                            startMillis = XmlTvDateTimes.parseMillis(start);
+                            stopMillis = XmlTvDateTimes.parseMillis(stop);
+                        } catch (IllegalArgumentException e) {
+                            return !resumed(index);
+                        }
+                        if (!intervals.add(channel, startMillis, stopMillis)) {
+                            run.programmeDuplicated();
+                            return false;
+                        }
+                        if (scheduleIndex.isEnabled()) {
+                            schedule.add(channel, uri.get(), startMillis, stopMillis);
+                        }
+                    }
+                    return !resumed(index);
+                }
+
+                private boolean resumed(int index) {
+                    if (checkpoint.isCompleted(index)) {
+                        run.programmeResumed();
+                        return true;
+                    }
+                    return false;
+                }
+            });
+            compressedBytes = input.compressedBytes();
+            uncompressedBytes = input.uncompressedBytes();
+            log.info("Read {} bytes of {} from {} ({} compressed)",
+                uncompressedBytes, input.compression(), originalFilename, compressedBytes);
+        } catch (XmlTvParseException e) {
+            log.error(e.getMessage(), e);
+            parsed = false;
+            run.error(String.format("input file: %s", e.getMessage()));
+        } catch (IOException e) {
+            log.error("Unable to read the input file {}", originalFilename, e);
+            parsed = false;
+            run.error(String.format("input file: Unable to read the input file: %s", e.getMessage()));
+        } catch (FileStoppedException e) {
+            parsed = false;
+        }
+        if (feedInput != null && feedInput.exceededLimit()) {
+            // what was read before the limit is not the whole feed, so write no more of it
+            run.stop("the feed is larger than its size limit");
+        }
+
+        reportScheduleAnomalies(intervals, originalFilename, run);
+
+        run.awaitCompletion();
+        if (run.isStopped()) {
+            log.warn("Stopped processing {} early: {}", originalFilename, run.stopReason());
+            if (retryable) {
+                run.error(String.format("input file: Stopped early as %s; %d programmes were abandoned"
+                    + " and the file will be retried", run.stopReason(), run.abandonedCount()));
+                filesAwaitingRetry.add(originalFilename);
+            } else {
+                run.error(String.format("input file: Stopped early as %s; %d programmes were abandoned"
+                    + " and the feed must be pushed again", run.stopReason(), run.abandonedCount()));
             }
+        }
+        int programmeCount = run.startedCount();
+        if (parsed && scheduleIndex.isEnabled()) {
+            removeVanishedSlots(scheduleIndex.reconcile(schedule, run.sequence()), run);
+            run.awaitCompletion();
+        }
+        boolean successful = parsed && run.failedWriteCount() == 0;
+        if (successful) {
+            failedFiles.remove(originalFilename);
+            filesAwaitingRetry.remove(originalFilename);
+        } else {
+            failedFiles.add(originalFilename);
+        }
+        SymbolTable symbols = run.symbols();
+        for (Symbol symbol : Symbol.values()) {
+            metrics.symbolLookups(symbol.displayName(), symbols.lookups(symbol), symbols.hits(symbol),
+                symbols.bytesSaved(symbol));
+        }
+        metrics.fileCompleted(originalFilename, programmeCount, compressedBytes, uncompressedBytes,
+            System.nanoTime() - startedNanos, successful);
+        log.info("Skipped {} programmes in {} unchanged since they were last written, {} superseded by a newer file"
+            + ", {} processed by an earlier attempt and {} duplicating another slot on their channel",
+            run.skippedCount(), originalFilename, run.supersededCount(), run.resumedCount(),
+            run.duplicatedCount());
+        if (scheduleIndex.isEnabled()) {
+            log.info("Removed {} slots that have disappeared from the schedule in {}",
+                run.removedCount(), originalFilename);
+        }
+        try {
+            itemFingerprintStore.flush();
+        } catch (IOException e) {
+            log.warn("Unable to persist item fingerprints", e);
+        }
+        try {
+            scheduleIndex.flush();
+        } catch (IOException e) {
+            log.warn("Unable to persist the schedule index", e);
+        }
+        try {
+            channelRegistry.flush();
+        } catch (IOException e) {
+            log.warn("Unable to persist the channel registry", e);
+        }
+        if (successful) {
+            checkpoint.discard();
+        } else {
+            checkpoint.close();
+        }
+        return run.result();
+    }
 
+    private FileCheckpoint openCheckpoint(String originalFilename, File file) {
+        try {
+            return checkpointStore.open(originalFilename, file);
+        } catch (IOException e) {
+            log.warn("Unable to open the checkpoint for {}, it will be processed in full", originalFilename, e);
+            return FileCheckpoint.none();
+        }
+    }
+
+    private void submit(Programme programme, int index, FileRun run) {
+        run.programmeStarted();
+        try {
+            translateExecutor.submit(() -> translate(programme, index, run));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(programmeId(programme), run);
+        }
+    }
+
+    /**
+     * Translates a programme read without unmarshalling on the parsing thread,
+     * as its fields are refilled for the next programme as soon as this returns,
+     * and hands the result to the translate executor. Translating from the fields
+     * is cheap next to unmarshalling, which is what the parsing thread no longer
+     * does.
+     */
+    private void translateAndSubmit(ProgrammeFields programme, int index, FileRun run) {
+        run.programmeStarted();
+        String programmeId = programmeId(programme.getChannel(), programme.getStart(), programme.getStop());
+        TranslationResult translationResult;
+        long translateStartedNanos = System.nanoTime();
+        try {
+            translationResult = programmeToItemTranslator.translate(programme, run.symbols());
+            metrics.record(Stage.TRANSLATE, System.nanoTime() - translateStartedNanos);
+        } catch (RuntimeException e) {
+            rejected(programmeId, index, e, run);
+            return;
+        }
+        try {
+            translateExecutor.submit(() -> translated(translationResult, programmeId, index, run));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(programmeId, run);
+        }
+    }
+
+    private void translate(Programme programme, int index, FileRun run) {
+        if (run.isStopped()) {
+            run.programmeAbandoned();
+            run.programmeFinished();
+            return;
+        }
+        String programmeId = programmeId(programme);
+        TranslationResult translationResult;
+        long translateStartedNanos = System.nanoTime();
+        try {
+            translationResult = programmeToItemTranslator.translate(programme, run.symbols());
+            metrics.record(Stage.TRANSLATE, System.nanoTime() - translateStartedNanos);
+        } catch (RuntimeException e) {
+            rejected(programmeId, index, e, run);
+            return;
+        }
+        translated(translationResult, programmeId, index, run);
+    }
+
+    private void rejected(String programmeId, int index, RuntimeException e, FileRun run) {
+        log.debug("Unable to translate programme {}", programmeId, e);
+        complete(index, Outcome.REJECTED,
+            ImmutableList.of(String.format("Programme ID: %s. Error: %s", programmeId, e.getMessage())), run);
+        run.programmeFinished();
+    }
+
+    private void translated(TranslationResult translationResult, String programmeId, int index, FileRun run) {
+        if (run.isStopped()) {
+            run.programmeAbandoned();
+            run.programmeFinished();
+            return;
+        }
+        switch (translationResult.getStatus()) {
+        case ERROR:
+            log.debug("Error(s) translating programme {}", programmeId);
+            complete(index, Outcome.REJECTED, warnings(programmeId, translationResult), run);
+            run.programmeFinished();
+            return;
+        }
+
+        Item item = translationResult.getItem();
+        Outcome outcome = translationResult.getStatus() == Status.WARNING ? Outcome.WARNED : Outcome.WRITTEN;
+        List<String> messages = outcome == Outcome.WARNED
+            ? warnings(programmeId, translationResult)
+            : ImmutableList.<String>of();
+        HashCode fingerprint = itemFingerprinter.fingerprint(item);
+        if (itemFingerprintStore.isUnchanged(item.getUri(), fingerprint)) {
+            log.debug("Programme {} is unchanged since it was last written", programmeId);
+            run.programmeSkipped();
+            complete(index, outcome, messages, run);
+            run.programmeFinished();
+            return;
+        }
+
+        writeBuffer.add(item, new PendingWrite(index, programmeId, outcome, messages, fingerprint, run));
+        drainWriteBuffer();
+    }
+
+    /**
+     * Starts writes from the buffer while there are permits for them. Only one
+     * thread drains at a time; a thread that finds another draining leaves it to
+     * take another pass, so writes that complete on the draining thread do not
+     * recurse.
+     */
+    private void drainWriteBuffer() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            while (!writeBuffer.isEmpty() && writePermits.tryAcquire()) {
+                WriteBuffer.Entry<PendingWrite> entry = writeBuffer.poll();
+                if (entry == null) {
+                    writePermits.release();
+                    continue;
+                }
+                PendingWrite pending = entry.getContext();
+                if (pending.run.isStopped()) {
+                    writePermits.release();
+                    pending.run.programmeAbandoned();
+                    pending.run.programmeFinished();
+                } else if (entry.getItem() == null) {
+                    writePermits.release();
+                    pending.run.checkpoint().record(pending.index, Outcome.FAILED, ImmutableList.<String>of());
+                    writeFailed("Unable to read back from the write buffer", pending.programmeId,
+                        new IOException("Spilled item could not be read"), pending.run);
+                    pending.run.programmeFinished();
+                } else {
+                    write(entry.getItem(), entry.getBand(), pending);
+                }
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    /**
+     * Writes the brand and then the item. Completion is handled on whichever
+     * thread finishes the write, so nothing here may block.
+     */
+    private void write(Item item, int band, PendingWrite pending) {
+        FileRun run = pending.run;
+        String programmeId = pending.programmeId;
+
+        CompletableFuture<Boolean> written = slotWriteSequencer.write(item.getUri(), run.sequence(),
+            () -> brandWriteCache.write(brandFactory.createFor(item), brand -> timedWrite(Stage.BRAND_WRITE, brand))
+                    .thenCompose(ignored -> timedWrite(Stage.ITEM_WRITE, item)));
+
+        written.whenComplete((wasWritten, error) -> {
             try {
-                atlasWriteClient.writeItem(brandFactory.createFrom(programme));
-                atlasWriteClient.writeItem(item);
-            } catch (RuntimeException e) {
-                log.debug("Unable to insert into Atlas programme {}", programmeId, e);
-                resultBuilder.error(String.format(
-                        "%s Unable to insert into Atlas: %s",
-                        programmeId,
-                        Throwables.getStackTraceAsString(e)
-                ));
-                continue;
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    run.checkpoint().record(pending.index, Outcome.FAILED, ImmutableList.<String>of());
+                    log.debug("Unable to insert into Atlas programme {}", programmeId, cause);
+                    writeFailed("Unable to insert into Atlas", programmeId, cause, run);
+                    return;
+                }
+                if (!wasWritten) {
+                    log.debug("Programme {} was superseded by a newer file", programmeId);
+                    run.programmeSuperseded();
+                    complete(pending.index, pending.outcome, pending.messages, run);
+                    return;
+                }
+                itemFingerprintStore.recordWritten(item.getUri(), pending.fingerprint, slotStopMillis(item));
+                metrics.slotVisible(writePriority.bandName(band), System.nanoTime() - run.arrivedNanos());
+
+                complete(pending.index, pending.outcome, pending.messages, run);
+                log.debug("Successfully posted programme {} item {}", programmeId, item.getUri());
+            } finally {
+                writePermits.release();
+                run.programmeFinished();
+                drainWriteBuffer();
             }
+        });
+    }
+
+    /**
+     * The end of the latest broadcast of an item, or {@link Long#MAX_VALUE} if it
+     * has none with an end, so that its fingerprint is never treated as expired.
+     */
+    private static long slotStopMillis(Item item) {
+        long stopMillis = Long.MIN_VALUE;
+        if (item.getBroadcasts() != null) {
+            for (Broadcast broadcast : item.getBroadcasts()) {
+                if (broadcast.getTransmissionEndTime() != null) {
+                    stopMillis = Math.max(stopMillis, broadcast.getTransmissionEndTime().getTime());
+                }
+            }
+        }
+        return stopMillis == Long.MIN_VALUE ? Long.MAX_VALUE : stopMillis;
+    }
 
-            switch (translationResult.getStatus()) {
-            case SUCCESS:
-                Entity successEntity = Entity.success().build();
-                resultBuilder.addEntity(successEntity);
-                break;
-            case WARNING:
-                for (String warning : translationResult.getErrors()) {
-                    resultBuilder.error(String.format("Programme ID: %s. Warning: %s",
-                            programmeId,
-                            warning
-                    ));
-                    Entity failureEntity = Entity.failure().withError(String.format("Programme ID: %s. Warning: %s",
-                            programmeId,
-                            warning
-                    )).build();
-                    resultBuilder.addEntity(failureEntity);
+    /**
+     * Reports the duplicated, overlapping and missing slots on each channel in
+     * the file, as one message per channel however many slots are affected.
+     */
+    private void reportScheduleAnomalies(ChannelIntervalIndex intervals, String originalFilename, FileRun run) {
+        long duplicates = 0;
+        long overlaps = 0;
+        long gaps = 0;
+        for (ChannelAnomalies anomalies : intervals.anomalies()) {
+            log.warn("Schedule anomalies in {} on {}", originalFilename, anomalies);
+            run.error(String.format("schedule: %s", anomalies));
+            duplicates += anomalies.getDuplicates();
+            overlaps += anomalies.getOverlaps();
+            gaps += anomalies.getGaps();
+        }
+        metrics.scheduleAnomalies(duplicates, overlaps, gaps);
+    }
+
+    /**
+     * Removes the items of slots that have disappeared from the schedule. Removals
+     * are ordered with writes to the same URI, so a newer file that lists the slot
+     * again takes precedence.
+     */
+    private void removeVanishedSlots(List<Slot> vanished, FileRun run) {
+        for (Slot slot : vanished) {
+            run.programmeStarted();
+            String uri = slot.getUri();
+            CompletableFuture<Boolean> removed = slotWriteSequencer.write(uri, run.sequence(),
+                () -> itemRemover.remove(uri));
+            removed.whenComplete((wasRemoved, error) -> {
+                try {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        log.debug("Unable to remove from Atlas item {}", uri, cause);
+                        writeFailed("Unable to remove from Atlas", uri, cause, run);
+                        return;
+                    }
+                    if (wasRemoved) {
+                        itemFingerprintStore.forget(uri);
+                        scheduleIndex.removed(slot);
+                        run.slotRemoved();
+                    }
+                } finally {
+                    run.programmeFinished();
                 }
+            });
+        }
+    }
+
+    /**
+     * Records a failed write, stopping the file if Atlas is unavailable or the
+     * file's error budget is spent.
+     */
+    private void writeFailed(String action, String id, Throwable cause, FileRun run) {
+        int failed = run.writeFailed(action, id, cause);
+        if (Throwables.getRootCause(cause) instanceof CircuitOpenException) {
+            run.stop("the Atlas circuit breaker is open");
+        } else if (failed > errorBudget) {
+            run.stop(String.format("%d writes failed, more than the error budget of %d", failed, errorBudget));
+        }
+    }
+
+    private CompletableFuture<Void> timedWrite(Stage stage, Item item) {
+        long startedNanos = System.nanoTime();
+        CompletableFuture<Void> written;
+        try {
+            written = itemWriter.write(item);
+        } catch (RuntimeException e) {
+            metrics.writeFailed(stage, System.nanoTime() - startedNanos);
+            throw e;
+        }
+        return written.whenComplete((ignored, error) -> {
+            if (error == null) {
+                metrics.writeSucceeded(stage, System.nanoTime() - startedNanos);
+            } else {
+                metrics.writeFailed(stage, System.nanoTime() - startedNanos);
             }
+        });
+    }
 
-            log.debug("Successfully posted programme {} item {}", programme, item);
-            lastRunSuccessful = true;
+    private void complete(int index, Outcome outcome, List<String> messages, FileRun run) {
+        reportOutcome(outcome, messages, run);
+        run.checkpoint().record(index, outcome, messages);
+    }
+
+    /**
+     * Adds a programme's outcome to the file's result, whether it was processed
+     * on this attempt or resumed from an earlier one.
+     */
+    private void reportOutcome(Outcome outcome, List<String> messages, FileRun run) {
+        switch (outcome) {
+        case WRITTEN:
+            Entity successEntity = Entity.success().build();
+            run.addEntity(successEntity);
+            break;
+        case WARNED:
+            for (String warning : messages) {
+                run.error(warning);
+                Entity failureEntity = Entity.failure().withError(warning).build();
+                run.addEntity(failureEntity);
+            }
+            break;
+        case REJECTED:
+            for (String error : messages) {
+                run.error(error);
+            }
+            break;
         }
-        return resultBuilder.build();
     }
 
-    public boolean wasLastRunSuccessful() {
-        return lastRunSuccessful;
+    private List<String> warnings(String programmeId, TranslationResult translationResult) {
+        List<String> warnings = new ArrayList<>(translationResult.getErrors().size());
+        for (String warning : translationResult.getErrors()) {
+            warnings.add(String.format("Programme ID: %s. Warning: %s",
+                    programmeId,
+                    warning
+            ));
+        }
+        return warnings;
+    }
+
+    private void abandon(String programmeId, FileRun run) {
+        run.error(String.format("Programme ID: %s. Interrupted before it could be processed", programmeId));
+        run.programmeFinished();
+    }
+
+    private String programmeId(Programme programme) {
+        return programmeId(programme.getChannel(), programme.getStart(), programme.getStop());
+    }
+
+    private static String programmeId(String channel, String start, String stop) {
+        return channel + start + stop;
+    }
+
+    /**
+     * The number of programmes handed to the translate threads that they have
+     * not yet finished with.
+     */
+    public int translateInFlight() {
+        return translateExecutor.inFlight();
+    }
+
+    /**
+     * The number of translated programmes whose writes are in flight.
+     */
+    public int pendingWrites() {
+        return maxPendingWrites - writePermits.availablePermits();
+    }
+
+    /**
+     * The number of translated programmes waiting in the write buffer.
+     */
+    public int bufferedWrites() {
+        return writeBuffer.size();
+    }
+
+    /**
+     * The number of translated programmes waiting in a band of the write buffer.
+     */
+    public int bufferedWrites(int band) {
+        return writeBuffer.size(band);
+    }
+
+    /**
+     * The bytes on disk held by translated programmes spilled from the write buffer.
+     */
+    public long spilledWriteBytes() {
+        return writeBuffer.spilledBytes();
+    }
+
+    /**
+     * The files stopped early that have not since been processed successfully.
+     */
+    public Set<String> filesAwaitingRetry() {
+        return filesAwaitingRetry;
+    }
+
+    /**
+     * The files that failed to parse or had a write refused by Atlas on their
+     * last run, and have not since been processed successfully. Files processed
+     * concurrently are tracked apart, so one succeeding does not hide another
+     * failing.
+     */
+    public Set<String> failedFiles() {
+        return failedFiles;
+    }
+
+    /**
+     * Stops the translate threads once the work handed to them is done.
+     */
+    public void shutdown() {
+        translateExecutor.shutdown();
+    }
+
+    /**
+     * Builds an {@link XmlTvFileProcessor}. Anything not set takes the value
+     * shipped in the service's default configuration, except that the schedule
+     * index is disabled, channels are only registered in memory and write
+     * priority is left to the order programmes are read in.
+     */
+    public static final class Builder {
+
+        private final ItemWriter itemWriter;
+        private final XmlTvParser xmlTvParser;
+        private final File directory;
+        private ChannelRegistry channelRegistry = ChannelRegistry.inMemory();
+        private ItemFingerprinter itemFingerprinter = new ItemFingerprinter();
+        private BrandWriteCache brandWriteCache;
+        private ItemFingerprintStore itemFingerprintStore;
+        private ScheduleIndex scheduleIndex = ScheduleIndex.disabled();
+        private ItemRemover itemRemover = new LoggingItemRemover();
+        private int checkpointCommitInterval = 500;
+        private int translateConcurrency = 2;
+        private int translateQueueCapacity = 256;
+        private int maxPendingWrites = 256;
+        private long writeBufferBytes = 64L * 1024 * 1024;
+        private WritePriority writePriority = WritePriority.none();
+        private int maximumSymbols = 20000;
+        private int errorBudget = 100;
+        private long minimumGapMillis = TimeUnit.MINUTES.toMillis(5);
+        private int fileParallelism = 4;
+        private IngestMetrics metrics = new IngestMetrics();
+
+        private Builder(ItemWriter itemWriter, XmlTvParser xmlTvParser, File directory) {
+            this.itemWriter = checkNotNull(itemWriter);
+            this.xmlTvParser = checkNotNull(xmlTvParser);
+            this.directory = checkNotNull(directory);
+        }
+
+        public Builder channelRegistry(ChannelRegistry channelRegistry) {
+            this.channelRegistry = checkNotNull(channelRegistry);
+            return this;
+        }
+
+        /**
+         * The fingerprinter items are compared by, which should be the one the
+         * brand write cache uses, if one is set.
+         */
+        public Builder itemFingerprinter(ItemFingerprinter itemFingerprinter) {
+            this.itemFingerprinter = checkNotNull(itemFingerprinter);
+            return this;
+        }
+
+        public Builder brandWriteCache(BrandWriteCache brandWriteCache) {
+            this.brandWriteCache = checkNotNull(brandWriteCache);
+            return this;
+        }
+
+        public Builder itemFingerprintStore(ItemFingerprintStore itemFingerprintStore) {
+            this.itemFingerprintStore = checkNotNull(itemFingerprintStore);
+            return this;
+        }
+
+        public Builder scheduleIndex(ScheduleIndex scheduleIndex) {
+            this.scheduleIndex = checkNotNull(scheduleIndex);
+            return this;
+        }
+
+        public Builder itemRemover(ItemRemover itemRemover) {
+            this.itemRemover = checkNotNull(itemRemover);
+            return this;
+        }
+
+        /**
+         * How many programmes are processed between checkpoints.
+         */
+        public Builder checkpointCommitInterval(int checkpointCommitInterval) {
+            checkArgument(checkpointCommitInterval > 0, "checkpointCommitInterval must be positive");
+            this.checkpointCommitInterval = checkpointCommitInterval;
+            return this;
+        }
+
+        /**
+         * The number of translate threads, shared between files, and how many
+         * programmes may wait for them before parsing is held up.
+         */
+        public Builder translateConcurrency(int threads, int queueCapacity) {
+            checkArgument(threads > 0, "threads must be positive");
+            checkArgument(queueCapacity >= 0, "queueCapacity must not be negative");
+            this.translateConcurrency = threads;
+            this.translateQueueCapacity = queueCapacity;
+            return this;
+        }
+
+        public Builder maxPendingWrites(int maxPendingWrites) {
+            checkArgument(maxPendingWrites > 0, "maxPendingWrites must be positive");
+            this.maxPendingWrites = maxPendingWrites;
+            return this;
+        }
+
+        /**
+         * How many bytes of translated items the write buffer holds before it
+         * spills to disk.
+         */
+        public Builder writeBufferBytes(long writeBufferBytes) {
+            checkArgument(writeBufferBytes >= 0, "writeBufferBytes must not be negative");
+            this.writeBufferBytes = writeBufferBytes;
+            return this;
+        }
+
+        public Builder writePriority(WritePriority writePriority) {
+            this.writePriority = checkNotNull(writePriority);
+            return this;
+        }
+
+        /**
+         * The size each file's symbol table is bounded to.
+         */
+        public Builder maximumSymbols(int maximumSymbols) {
+            this.maximumSymbols = maximumSymbols;
+            return this;
+        }
+
+        /**
+         * How many writes of a file may fail before it is stopped early.
+         */
+        public Builder errorBudget(int errorBudget) {
+            this.errorBudget = errorBudget;
+            return this;
+        }
+
+        /**
+         * The shortest gap between a channel's programmes that is reported.
+         */
+        public Builder minimumGap(long minimumGap, TimeUnit unit) {
+            this.minimumGapMillis = unit.toMillis(minimumGap);
+            return this;
+        }
+
+        public Builder fileParallelism(int fileParallelism) {
+            checkArgument(fileParallelism > 0, "fileParallelism must be positive");
+            this.fileParallelism = fileParallelism;
+            return this;
+        }
+
+        public Builder metrics(IngestMetrics metrics) {
+            this.metrics = checkNotNull(metrics);
+            return this;
+        }
+
+        public XmlTvFileProcessor build() throws IOException {
+            return new XmlTvFileProcessor(this);
+        }
+    }
+
+    /**
+     * What a buffered write needs to record its outcome, held on the heap while
+     * its item may be spilled to disk.
+     */
+    private static final class PendingWrite {
+
+        private final int index;
+        private final String programmeId;
+        private final Outcome outcome;
+        private final List<String> messages;
+        private final HashCode fingerprint;
+        private final FileRun run;
+
+        private PendingWrite(int index, String programmeId, Outcome outcome, List<String> messages,
+                HashCode fingerprint, FileRun run) {
+            this.index = index;
+            this.programmeId = programmeId;
+            this.outcome = outcome;
+            this.messages = messages;
+            this.fingerprint = fingerprint;
+            this.run = run;
+        }
+    }
+
+    /**
+     * Thrown from the parse handler to stop reading a file that has been stopped.
+     */
+    private static final class FileStoppedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private FileStoppedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Opens a feed for one attempt at processing it.
+     */
+    private interface FeedSource {
+
+        FeedInput open() throws IOException;
     }
 
 }
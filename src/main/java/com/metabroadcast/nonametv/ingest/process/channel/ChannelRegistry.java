@@ -0,0 +1,238 @@
+package com.metabroadcast.nonametv.ingest.process.channel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.metabroadcast.nonametv.xml.Channel;
+
+/**
+ * The channels declared by {@code <channel>} elements, indexed by XMLTV channel
+ * ID. Each channel's broadcast URI is built once, when the channel is
+ * registered, and then looked up by every programme on it. A programme on a
+ * channel that no feed has declared still gets a broadcast URI, built the same
+ * way, but the channel is reported once, when it is first seen.
+ * <p>
+ * Channel elements carry no Atlas channel URI, so the broadcast URI remains
+ * {@code http://<channel ID>/}, as it has always been.
+ * <p>
+ * Channels are persisted to a tab-separated file by {@link #flush()}, which
+ * replaces the file atomically, so channels declared by earlier files are known
+ * to later ones.
+ */
+public class ChannelRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ChannelRegistry.class);
+
+    private static final char SEPARATOR = '\t';
+    private static final Splitter SPLITTER = Splitter.on(SEPARATOR);
+    private static final CharMatcher LINE_BREAKS_AND_SEPARATORS = CharMatcher.anyOf("\t\r\n");
+
+    private final File file;
+    private final ConcurrentMap<String, RegisteredChannel> channels = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> unknownChannels = new ConcurrentHashMap<>();
+
+    private volatile boolean changed;
+
+    public ChannelRegistry(File file) throws IOException {
+        this.file = checkNotNull(file);
+        load();
+    }
+
+    private ChannelRegistry() {
+        this.file = null;
+    }
+
+    /**
+     * A registry that is not persisted, which starts out knowing no channels.
+     */
+    public static ChannelRegistry inMemory() {
+        return new ChannelRegistry();
+    }
+
+    /**
+     * Registers, or updates, the channel declared by a {@code <channel>} element.
+     */
+    public void register(Channel channel) {
+        String id = channel.getId();
+        if (id == null) {
+            return;
+        }
+        RegisteredChannel registered = new RegisteredChannel(id, broadcastUriFor(id),
+            clean(channel.getDisplayName().isEmpty() ? null : channel.getDisplayName().get(0).getvalue()),
+            clean(channel.getIcon().isEmpty() ? null : channel.getIcon().get(0).getSrc()),
+            clean(channel.getUrl().isEmpty() ? null : channel.getUrl().get(0).getvalue()));
+        if (!registered.equals(channels.put(id, registered))) {
+            changed = true;
+        }
+        unknownChannels.remove(id);
+    }
+
+    /**
+     * The URI of the channel on which a programme is broadcast.
+     */
+    public String broadcastUri(String channelId) {
+        if (channelId == null) {
+            return broadcastUriFor(null);
+        }
+        RegisteredChannel channel = channels.get(channelId);
+        if (channel != null) {
+            return channel.getBroadcastUri();
+        }
+        return unknownChannels.computeIfAbsent(channelId, id -> {
+            log.warn("Channel {} has not been declared by a channel element", id);
+            return broadcastUriFor(id);
+        });
+    }
+
+    /**
+     * The registered channel with the given ID, or {@code null} if there is none.
+     */
+    public RegisteredChannel channel(String channelId) {
+        return channels.get(channelId);
+    }
+
+    /**
+     * The IDs of channels that programmes have been broadcast on but that no
+     * feed has declared.
+     */
+    public Set<String> unknownChannels() {
+        return Collections.unmodifiableSet(unknownChannels.keySet());
+    }
+
+    public int size() {
+        return channels.size();
+    }
+
+    public synchronized void flush() throws IOException {
+        if (file == null || !changed) {
+            return;
+        }
+        changed = false;
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+            for (RegisteredChannel channel : channels.values()) {
+                writer.write(channel.getId());
+                writer.write(SEPARATOR);
+                writer.write(Strings.nullToEmpty(channel.getDisplayName()));
+                writer.write(SEPARATOR);
+                writer.write(Strings.nullToEmpty(channel.getIconUri()));
+                writer.write(SEPARATOR);
+                writer.write(Strings.nullToEmpty(channel.getUrl()));
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            log.info("No channels found at {}", file);
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> fields = SPLITTER.splitToList(line);
+                if (fields.size() != 4 || fields.get(0).isEmpty()) {
+                    log.warn("Ignoring malformed channel line in {}: {}", file, line);
+                    continue;
+                }
+                String id = fields.get(0);
+                channels.put(id, new RegisteredChannel(id, broadcastUriFor(id), Strings.emptyToNull(fields.get(1)),
+                    Strings.emptyToNull(fields.get(2)), Strings.emptyToNull(fields.get(3))));
+            }
+        }
+        log.info("Loaded {} channels from {}", channels.size(), file);
+    }
+
+    private static String broadcastUriFor(String channelId) {
+        return "http://" + channelId + "/";
+    }
+
+    private static String clean(String value) {
+        return value == null ? null : Strings.emptyToNull(LINE_BREAKS_AND_SEPARATORS.replaceFrom(value, ' ').trim());
+    }
+
+    public static final class RegisteredChannel {
+
+        private final String id;
+        private final String broadcastUri;
+        private final String displayName;
+        private final String iconUri;
+        private final String url;
+
+        private RegisteredChannel(String id, String broadcastUri, String displayName, String iconUri, String url) {
+            this.id = id;
+            this.broadcastUri = broadcastUri;
+            this.displayName = displayName;
+            this.iconUri = iconUri;
+            this.url = url;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getBroadcastUri() {
+            return broadcastUri;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public String getIconUri() {
+            return iconUri;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            }
+            if (!(that instanceof RegisteredChannel)) {
+                return false;
+            }
+            RegisteredChannel other = (RegisteredChannel) that;
+            return id.equals(other.id)
+                && Objects.equals(displayName, other.displayName)
+                && Objects.equals(iconUri, other.iconUri)
+                && Objects.equals(url, other.url);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, displayName, iconUri, url);
+        }
+
+        @Override
+        public String toString() {
+            return id + " (" + displayName + ")";
+        }
+    }
+
+}
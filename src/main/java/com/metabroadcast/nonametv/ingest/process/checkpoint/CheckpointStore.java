@@ -0,0 +1,63 @@
+package com.metabroadcast.nonametv.ingest.process.checkpoint;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Keeps a {@link FileCheckpoint} for each feed file on local disk, so that a
+ * file processed again after a restart or an Atlas outage resumes where the last
+ * attempt committed rather than from its first programme. A checkpoint is only
+ * resumed for the same content: files are identified by their original name,
+ * and a checkpoint whose file had a different length or first block is
+ * discarded.
+ */
+public class CheckpointStore {
+
+    private static final int IDENTITY_BLOCK_SIZE = 64 * 1024;
+    private static final String SUFFIX = ".checkpoint";
+
+    private final File directory;
+    private final int commitInterval;
+
+    /**
+     * @param commitInterval the number of programmes processed between commits
+     */
+    public CheckpointStore(File directory, int commitInterval) throws IOException {
+        checkArgument(commitInterval > 0, "commitInterval must be positive");
+        this.directory = checkNotNull(directory);
+        this.commitInterval = commitInterval;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the checkpoint directory " + directory);
+        }
+    }
+
+    /**
+     * Opens the checkpoint for a file, resuming it if an earlier attempt at the
+     * same content left one behind.
+     */
+    public FileCheckpoint open(String originalFilename, File file) throws IOException {
+        String name = Hashing.sha1().hashString(originalFilename, StandardCharsets.UTF_8).toString();
+        return FileCheckpoint.open(new File(directory, name + SUFFIX), identity(originalFilename, file), commitInterval);
+    }
+
+    private static String identity(String originalFilename, File file) throws IOException {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] block = new byte[IDENTITY_BLOCK_SIZE];
+            int read = ByteStreams.read(input, block, 0, block.length);
+            hasher.putBytes(block, 0, read);
+        }
+        return originalFilename + ' ' + file.length() + ' ' + hasher.hash();
+    }
+
+}
@@ -0,0 +1,351 @@
+package com.metabroadcast.nonametv.ingest.process.checkpoint;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The progress made through one feed file: which programmes, numbered in the
+ * order they appear in the file, have been processed and how, and the offset
+ * below which every programme has been. Outcomes are appended to a journal as
+ * programmes finish, in whatever order that is, and committed to disk every
+ * {@code commitInterval} programmes; a commit records the offset and forces the
+ * journal to the device. Only committed outcomes are resumed.
+ * <p>
+ * Programmes whose write failed are recorded as failed and retried on resume.
+ * The messages reported for other programmes are kept, so that a resumed file
+ * reports them again alongside those of the programmes it goes on to process.
+ * <p>
+ * Checkpointing is best effort: if the journal cannot be written, the file is
+ * processed regardless and a later attempt repeats more of it.
+ */
+public class FileCheckpoint implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FileCheckpoint.class);
+
+    private static final char SEPARATOR = '\t';
+    private static final char HEADER = 'H';
+    private static final char COMMIT = 'C';
+    private static final Splitter LINE_SPLITTER = Splitter.on(SEPARATOR);
+
+    private final File file;
+    private final int commitInterval;
+    private final BitSet completed = new BitSet();
+    private final List<Entry> resumed;
+
+    private FileChannel channel;
+    private Writer journal;
+    private int uncommitted;
+
+    private FileCheckpoint(File file, int commitInterval, Collection<Entry> committed) {
+        this.file = file;
+        this.commitInterval = commitInterval;
+        List<Entry> resumed = new ArrayList<>();
+        for (Entry entry : committed) {
+            if (entry.outcome.isCompleted()) {
+                completed.set(entry.index);
+                resumed.add(entry);
+            }
+        }
+        this.resumed = Collections.unmodifiableList(resumed);
+    }
+
+    /**
+     * A checkpoint that records nothing, for when a file's checkpoint cannot be
+     * opened.
+     */
+    public static FileCheckpoint none() {
+        return new FileCheckpoint(null, Integer.MAX_VALUE, ImmutableList.<Entry>of());
+    }
+
+    static FileCheckpoint open(File file, String identity, int commitInterval) throws IOException {
+        Collection<Entry> committed = file.exists()
+            ? load(file, identity)
+            : ImmutableList.<Entry>of();
+        FileCheckpoint checkpoint = new FileCheckpoint(file, commitInterval, committed);
+        checkpoint.rewrite(identity, committed);
+        return checkpoint;
+    }
+
+    /**
+     * Whether an earlier attempt at this file committed any progress.
+     */
+    public boolean isResumed() {
+        return !resumed.isEmpty();
+    }
+
+    /**
+     * The outcomes committed by earlier attempts, in programme order. Failed
+     * programmes are not included, as they are to be processed again.
+     */
+    public List<Entry> resumedEntries() {
+        return resumed;
+    }
+
+    /**
+     * The number of programmes from the start of the file that have all been
+     * processed.
+     */
+    public synchronized int offset() {
+        return completed.nextClearBit(0);
+    }
+
+    public synchronized boolean isCompleted(int index) {
+        return completed.get(index);
+    }
+
+    /**
+     * Records how processing a programme ended, committing the journal if enough
+     * programmes have finished since the last commit.
+     */
+    public synchronized void record(int index, Outcome outcome, List<String> messages) {
+        if (outcome.isCompleted()) {
+            completed.set(index);
+        }
+        if (journal == null) {
+            return;
+        }
+        try {
+            writeEntry(journal, new Entry(index, outcome, outcome.isCompleted() ? messages : ImmutableList.<String>of()));
+        } catch (IOException e) {
+            abandon(e);
+            return;
+        }
+        if (++uncommitted >= commitInterval) {
+            commit();
+        }
+    }
+
+    public synchronized void commit() {
+        if (journal == null || uncommitted == 0) {
+            return;
+        }
+        try {
+            journal.write(COMMIT);
+            journal.write(SEPARATOR);
+            journal.write(Integer.toString(offset()));
+            journal.write('\n');
+            journal.flush();
+            channel.force(false);
+            uncommitted = 0;
+        } catch (IOException e) {
+            abandon(e);
+        }
+    }
+
+    /**
+     * Deletes the checkpoint once its file has been processed in full.
+     */
+    public synchronized void discard() {
+        closeJournal();
+        if (file != null && file.exists() && !file.delete()) {
+            log.warn("Unable to delete the checkpoint {}", file);
+        }
+    }
+
+    /**
+     * Commits any outstanding progress and closes the journal, keeping the
+     * checkpoint for the next attempt.
+     */
+    @Override
+    public synchronized void close() {
+        commit();
+        closeJournal();
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Unable to close the checkpoint {}", file, e);
+        }
+        journal = null;
+        channel = null;
+    }
+
+    private void abandon(IOException e) {
+        log.warn("Unable to write the checkpoint {}, progress on this attempt will not be resumed", file, e);
+        closeJournal();
+    }
+
+    /**
+     * Replaces the journal with one holding only the committed outcomes, dropping
+     * any partly written tail, and opens it to append this attempt's.
+     */
+    private void rewrite(String identity, Collection<Entry> committed) throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write(SEPARATOR);
+            writer.write(escape(identity));
+            writer.write('\n');
+            for (Entry entry : committed) {
+                writeEntry(writer, entry);
+            }
+            writer.write(COMMIT);
+            writer.write(SEPARATOR);
+            writer.write(Integer.toString(offset()));
+            writer.write('\n');
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journal = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+    }
+
+    private static Collection<Entry> load(File file, String identity) throws IOException {
+        Map<Integer, Entry> committed = new TreeMap<>();
+        List<Entry> pending = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.equals(HEADER + String.valueOf(SEPARATOR) + escape(identity))) {
+                log.info("Discarding the checkpoint {}, which was made for different content", file);
+                return committed.values();
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> fields = LINE_SPLITTER.splitToList(line);
+                if (fields.get(0).length() != 1) {
+                    break;
+                }
+                char code = fields.get(0).charAt(0);
+                if (code == COMMIT) {
+                    for (Entry entry : pending) {
+                        committed.put(entry.index, entry);
+                    }
+                    pending.clear();
+                    continue;
+                }
+                Outcome outcome = Outcome.fromCode(code);
+                if (outcome == null || fields.size() < 2) {
+                    break;
+                }
+                try {
+                    List<String> messages = new ArrayList<>(fields.size() - 2);
+                    for (String message : fields.subList(2, fields.size())) {
+                        messages.add(unescape(message));
+                    }
+                    pending.add(new Entry(Integer.parseInt(fields.get(1)), outcome, messages));
+                } catch (IllegalArgumentException e) {
+                    break;
+                }
+            }
+        }
+        return committed.values();
+    }
+
+    private static void writeEntry(Writer writer, Entry entry) throws IOException {
+        writer.write(entry.outcome.code());
+        writer.write(SEPARATOR);
+        writer.write(Integer.toString(entry.index));
+        for (String message : entry.messages) {
+            writer.write(SEPARATOR);
+            writer.write(escape(message));
+        }
+        writer.write('\n');
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                escaped.append("\\\\");
+                break;
+            case '\t':
+                escaped.append("\\t");
+                break;
+            case '\n':
+                escaped.append("\\n");
+                break;
+            case '\r':
+                escaped.append("\\r");
+                break;
+            default:
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String value) {
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\') {
+                unescaped.append(c);
+                continue;
+            }
+            if (++i == value.length()) {
+                throw new IllegalArgumentException("Truncated escape in \"" + value + "\"");
+            }
+            switch (value.charAt(i)) {
+            case 't':
+                unescaped.append('\t');
+                break;
+            case 'n':
+                unescaped.append('\n');
+                break;
+            case 'r':
+                unescaped.append('\r');
+                break;
+            default:
+                unescaped.append(value.charAt(i));
+            }
+        }
+        return unescaped.toString();
+    }
+
+    public static final class Entry {
+
+        private final int index;
+        private final Outcome outcome;
+        private final List<String> messages;
+
+        Entry(int index, Outcome outcome, List<String> messages) {
+            this.index = index;
+            this.outcome = outcome;
+            this.messages = messages;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public List<String> getMessages() {
+            return messages;
+        }
+    }
+
+}
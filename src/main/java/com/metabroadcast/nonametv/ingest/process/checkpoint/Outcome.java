@@ -0,0 +1,52 @@
+package com.metabroadcast.nonametv.ingest.process.checkpoint;
+
+/**
+ * How processing a programme ended, as far as resuming its file is concerned.
+ */
+public enum Outcome {
+
+    /**
+     * Written to Atlas, or found not to need writing.
+     */
+    WRITTEN('W'),
+
+    /**
+     * Written to Atlas, with warnings reported.
+     */
+    WARNED('A'),
+
+    /**
+     * Not written because it could not be translated; trying again would fail
+     * the same way.
+     */
+    REJECTED('R'),
+
+    /**
+     * The write to Atlas failed, so it must be tried again.
+     */
+    FAILED('F');
+
+    private final char code;
+
+    Outcome(char code) {
+        this.code = code;
+    }
+
+    char code() {
+        return code;
+    }
+
+    boolean isCompleted() {
+        return this != FAILED;
+    }
+
+    static Outcome fromCode(char code) {
+        for (Outcome outcome : values()) {
+            if (outcome.code == code) {
+                return outcome;
+            }
+        }
+        return null;
+    }
+
+}
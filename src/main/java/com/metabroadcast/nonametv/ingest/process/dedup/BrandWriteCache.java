@@ -0,0 +1,104 @@
+package com.metabroadcast.nonametv.ingest.process.dedup;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.atlasapi.media.entity.simple.Item;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Remembers which brands have recently been written to Atlas so that the many
+ * programmes sharing a title do not each upsert the same brand. Entries are keyed
+ * by brand URI and content fingerprint, so a brand whose content changes is
+ * written again straight away. Entries expire after a fixed time and the least
+ * recently used are evicted once the cache is full.
+ * <p>
+ * With a TTL longer than a file takes to process, each brand is written at most
+ * once per file; across files it is rewritten once its entry has expired.
+ */
+public class BrandWriteCache {
+
+    private final ItemFingerprinter fingerprinter;
+    private final Cache<BrandKey, CompletableFuture<Void>> written;
+
+    public BrandWriteCache(ItemFingerprinter fingerprinter, long maximumSize, long ttl, TimeUnit ttlUnit) {
+        this.fingerprinter = checkNotNull(fingerprinter);
+        this.written = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, ttlUnit)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Writes the brand with the given writer unless the same content has been
+     * written, or is being written, recently. Callers for a brand whose write is
+     * still in flight share its future. A failed write is forgotten so that the
+     * next caller tries again.
+     */
+    public CompletableFuture<Void> write(Item brand, Function<Item, CompletableFuture<Void>> writer) {
+        BrandKey key = new BrandKey(brand.getUri(), fingerprinter.fingerprint(brand));
+        CompletableFuture<Void> write;
+        try {
+            write = written.get(key, () -> writer.apply(brand));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e.getCause());
+            return failed;
+        }
+        write.whenComplete((ignored, error) -> {
+            if (error != null) {
+                written.asMap().remove(key, write);
+            }
+        });
+        return write;
+    }
+
+    public CacheStats stats() {
+        return written.stats();
+    }
+
+    public long size() {
+        return written.size();
+    }
+
+    private static final class BrandKey {
+
+        private final String uri;
+        private final HashCode fingerprint;
+
+        BrandKey(String uri, HashCode fingerprint) {
+            this.uri = checkNotNull(uri);
+            this.fingerprint = checkNotNull(fingerprint);
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            }
+            if (!(that instanceof BrandKey)) {
+                return false;
+            }
+            BrandKey other = (BrandKey) that;
+            return uri.equals(other.uri) && fingerprint.equals(other.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(uri, fingerprint);
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.metabroadcast.nonametv.ingest.process.dedup;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashCode;
+
+/**
+ * Maps item URIs to the fingerprint of the content last written to Atlas for
+ * them, so that programmes repeated across overlapping feed files are only
+ * written when they have changed. Fingerprints are held in memory and persisted
+ * to a tab-separated file by {@link #flush()}, which replaces the file
+ * atomically so a crash mid-write leaves the previous snapshot intact.
+ * <p>
+ * Item URIs embed their slot's times, so once a slot has ended its URI will not
+ * be listed again. Each fingerprint is kept with the end of its slot, and those
+ * whose slots ended longer ago than the retention period are dropped when the
+ * store is flushed.
+ */
+public class ItemFingerprintStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemFingerprintStore.class);
+
+    private static final char SEPARATOR = '\t';
+
+    private final File file;
+    private final long retentionMillis;
+    private final ConcurrentMap<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+
+    public ItemFingerprintStore(File file, long retention, TimeUnit unit) throws IOException {
+        this.file = checkNotNull(file);
+        this.retentionMillis = unit.toMillis(retention);
+        load();
+    }
+
+    public boolean isUnchanged(String uri, HashCode fingerprint) {
+        Fingerprint written = fingerprints.get(uri);
+        return written != null && fingerprint.equals(written.hash);
+    }
+
+    /**
+     * Records that content with the given fingerprint has been written for the URI,
+     * whose slot ends at {@code stopMillis}. Call only once the write has succeeded.
+     */
+    public void recordWritten(String uri, HashCode fingerprint, long stopMillis) {
+        fingerprints.put(uri, new Fingerprint(fingerprint, stopMillis));
+    }
+
+    /**
+     * Forgets the fingerprint of an item that has been removed, so that it is
+     * written again should its slot reappear.
+     */
+    public void forget(String uri) {
+        fingerprints.remove(uri);
+    }
+
+    public int size() {
+        return fingerprints.size();
+    }
+
+    public synchronized void flush() throws IOException {
+        long retainedFrom = System.currentTimeMillis() - retentionMillis;
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+            Iterator<Map.Entry<String, Fingerprint>> iterator = fingerprints.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Fingerprint> entry = iterator.next();
+                Fingerprint fingerprint = entry.getValue();
+                if (fingerprint.stopMillis < retainedFrom) {
+                    iterator.remove();
+                    continue;
+                }
+                writer.write(entry.getKey());
+                writer.write(SEPARATOR);
+                writer.write(Long.toString(fingerprint.stopMillis));
+                writer.write(SEPARATOR);
+                writer.write(fingerprint.hash.toString());
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            log.info("No item fingerprints found at {}, every item will be written", file);
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int hashSeparator = line.lastIndexOf(SEPARATOR);
+                int stopSeparator = hashSeparator < 1 ? -1 : line.lastIndexOf(SEPARATOR, hashSeparator - 1);
+                if (stopSeparator < 1) {
+                    log.warn("Ignoring malformed item fingerprint line in {}: {}", file, line);
+                    continue;
+                }
+                try {
+                    fingerprints.put(line.substring(0, stopSeparator), new Fingerprint(
+                        HashCode.fromString(line.substring(hashSeparator + 1)),
+                        Long.parseLong(line.substring(stopSeparator + 1, hashSeparator))));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Ignoring malformed item fingerprint line in {}: {}", file, line);
+                }
+            }
+        }
+        log.info("Loaded {} item fingerprints from {}", fingerprints.size(), file);
+    }
+
+    private static final class Fingerprint {
+
+        private final HashCode hash;
+        private final long stopMillis;
+
+        private Fingerprint(HashCode hash, long stopMillis) {
+            this.hash = hash;
+            this.stopMillis = stopMillis;
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.metabroadcast.nonametv.ingest.process.dedup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.atlasapi.media.entity.simple.Broadcast;
+import org.atlasapi.media.entity.simple.Item;
+import org.atlasapi.media.entity.simple.LocalizedDescription;
+import org.atlasapi.media.entity.simple.Person;
+import org.atlasapi.media.entity.simple.PublisherDetails;
+import org.atlasapi.media.entity.simple.Rating;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.metabroadcast.common.intl.Country;
+
+/**
+ * Computes a content hash over the fields of an {@link Item} that the translator
+ * and {@code BrandFactory} populate. Unordered collections are sorted before
+ * hashing, so two items with the same content always have the same fingerprint
+ * regardless of set iteration order.
+ */
+public class ItemFingerprinter {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    public HashCode fingerprint(Item item) {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+
+        putString(hasher, item.getUri());
+        putString(hasher, item.getType());
+        putString(hasher, item.getTitle());
+        putString(hasher, item.getBrandSummary() == null ? null : item.getBrandSummary().getUri());
+        putString(hasher, item.getDescription());
+        putString(hasher, publisherKey(item.getPublisher()));
+        putString(hasher, String.valueOf(item.getYear()));
+        putString(hasher, String.valueOf(item.getSeriesNumber()));
+        putString(hasher, String.valueOf(item.getEpisodeNumber()));
+
+        List<String> descriptions = new ArrayList<>();
+        for (LocalizedDescription description : nullToEmpty(item.getDescriptions())) {
+            descriptions.add(description.getDescription());
+        }
+        putSorted(hasher, descriptions);
+
+        List<String> people = new ArrayList<>();
+        for (Person person : nullToEmpty(item.getPeople())) {
+            people.add(person.getUri());
+            people.add(person.getName());
+            people.add(person.getRole());
+        }
+        putAll(hasher, people);
+
+        putSorted(hasher, new ArrayList<>(nullToEmpty(item.getGenres())));
+        putSorted(hasher, new ArrayList<>(nullToEmpty(item.getAliases())));
+
+        List<String> ratings = new ArrayList<>();
+        for (Rating rating : nullToEmpty(item.getRatings())) {
+            ratings.add(rating.getValue() + "/" + publisherKey(rating.getPublisherDetails()));
+        }
+        putSorted(hasher, ratings);
+
+        List<String> countries = new ArrayList<>();
+        for (Country country : nullToEmpty(item.getCountriesOfOrigin())) {
+            countries.add(country.getCode());
+        }
+        putSorted(hasher, countries);
+
+        List<String> broadcasts = new ArrayList<>();
+        for (Broadcast broadcast : nullToEmpty(item.getBroadcasts())) {
+            broadcasts.add(broadcast.getBroadcastOn()
+                    + "|" + broadcast.getTransmissionTime()
+                    + "|" + broadcast.getTransmissionEndTime());
+        }
+        putSorted(hasher, broadcasts);
+
+        return hasher.hash();
+    }
+
+    private String publisherKey(PublisherDetails publisher) {
+        return publisher == null ? null : publisher.getKey();
+    }
+
+    private void putSorted(Hasher hasher, List<String> values) {
+        Collections.sort(values, (a, b) -> String.valueOf(a).compareTo(String.valueOf(b)));
+        putAll(hasher, values);
+    }
+
+    private void putAll(Hasher hasher, List<String> values) {
+        hasher.putInt(values.size());
+        for (String value : values) {
+            putString(hasher, value);
+        }
+    }
+
+    private void putString(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length());
+            hasher.putUnencodedChars(value);
+        }
+    }
+
+    private static <T> Collection<T> nullToEmpty(Collection<T> values) {
+        return values == null ? Collections.<T>emptyList() : values;
+    }
+
+}
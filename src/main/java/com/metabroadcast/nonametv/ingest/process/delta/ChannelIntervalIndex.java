@@ -0,0 +1,224 @@
+package com.metabroadcast.nonametv.ingest.process.delta;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The slots one feed file lists on each channel, indexed as they are read so
+ * that a slot listed twice is caught before it is processed, and checked once
+ * the file has been read for slots that overlap or leave gaps between them.
+ * <p>
+ * Duplicates are found by their parsed times, so the same slot written with
+ * different offsets is still a duplicate. Each channel's slots are sorted once
+ * and then swept in a single pass, so checking a file costs O(n log n) however
+ * many programmes it holds; feeds list slots nearly in order, which the sort
+ * takes advantage of.
+ */
+public class ChannelIntervalIndex {
+
+    private final long minimumGapMillis;
+    private final Map<String, ChannelIntervals> channels = new LinkedHashMap<>();
+
+    /**
+     * @param minimumGapMillis the shortest time between one slot's end and the
+     *        next's start that is reported as a gap
+     */
+    public ChannelIntervalIndex(long minimumGapMillis) {
+        checkArgument(minimumGapMillis > 0, "minimum gap must be positive");
+        this.minimumGapMillis = minimumGapMillis;
+    }
+
+    /**
+     * Adds a slot, returning false if the channel already has one with the same
+     * start and stop, in which case the slot is counted as a duplicate and the
+     * first one listed should be kept.
+     */
+    public boolean add(String channel, long startMillis, long stopMillis) {
+        ChannelIntervals intervals = channels.get(channel);
+        if (intervals == null) {
+            intervals = new ChannelIntervals();
+            channels.put(channel, intervals);
+        }
+        return intervals.add(startMillis, stopMillis);
+    }
+
+    /**
+     * The anomalies in each channel's slots, for channels that have any, in the
+     * order the channels were first listed.
+     */
+    public List<ChannelAnomalies> anomalies() {
+        List<ChannelAnomalies> anomalies = new ArrayList<>();
+        for (Map.Entry<String, ChannelIntervals> channel : channels.entrySet()) {
+            ChannelAnomalies channelAnomalies = channel.getValue().check(channel.getKey(), minimumGapMillis);
+            if (!channelAnomalies.isEmpty()) {
+                anomalies.add(channelAnomalies);
+            }
+        }
+        return anomalies;
+    }
+
+    private static final class ChannelIntervals {
+
+        private final Set<Interval> seen = new HashSet<>();
+        private int duplicates;
+        private long firstDuplicateMillis = Long.MAX_VALUE;
+
+        private boolean add(long startMillis, long stopMillis) {
+            if (seen.add(new Interval(startMillis, stopMillis))) {
+                return true;
+            }
+            duplicates++;
+            firstDuplicateMillis = Math.min(firstDuplicateMillis, startMillis);
+            return false;
+        }
+
+        private ChannelAnomalies check(String channel, long minimumGapMillis) {
+            Interval[] sorted = seen.toArray(new Interval[seen.size()]);
+            Arrays.sort(sorted);
+
+            int overlaps = 0;
+            int gaps = 0;
+            long firstOverlapMillis = 0;
+            long firstGapStartMillis = 0;
+            long firstGapEndMillis = 0;
+            long latestStopMillis = sorted[0].stopMillis;
+            for (int i = 1; i < sorted.length; i++) {
+                Interval interval = sorted[i];
+                if (interval.startMillis < latestStopMillis) {
+                    if (overlaps++ == 0) {
+                        firstOverlapMillis = interval.startMillis;
+                    }
+                } else if (interval.startMillis - latestStopMillis >= minimumGapMillis) {
+                    if (gaps++ == 0) {
+                        firstGapStartMillis = latestStopMillis;
+                        firstGapEndMillis = interval.startMillis;
+                    }
+                }
+                latestStopMillis = Math.max(latestStopMillis, interval.stopMillis);
+            }
+            return new ChannelAnomalies(channel, duplicates, firstDuplicateMillis, overlaps, firstOverlapMillis,
+                gaps, firstGapStartMillis, firstGapEndMillis);
+        }
+    }
+
+    private static final class Interval implements Comparable<Interval> {
+
+        private final long startMillis;
+        private final long stopMillis;
+
+        private Interval(long startMillis, long stopMillis) {
+            this.startMillis = startMillis;
+            this.stopMillis = stopMillis;
+        }
+
+        @Override
+        public int compareTo(Interval other) {
+            int byStart = Long.compare(startMillis, other.startMillis);
+            return byStart != 0 ? byStart : Long.compare(stopMillis, other.stopMillis);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Interval)) {
+                return false;
+            }
+            Interval other = (Interval) obj;
+            return startMillis == other.startMillis && stopMillis == other.stopMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(startMillis) + Long.hashCode(stopMillis);
+        }
+    }
+
+    /**
+     * The slots on one channel that were listed more than once, that start
+     * before an earlier slot has ended, or that leave a gap after the slots
+     * before them, each with the earliest instance.
+     */
+    public static final class ChannelAnomalies {
+
+        private final String channel;
+        private final int duplicates;
+        private final long firstDuplicateMillis;
+        private final int overlaps;
+        private final long firstOverlapMillis;
+        private final int gaps;
+        private final long firstGapStartMillis;
+        private final long firstGapEndMillis;
+
+        ChannelAnomalies(String channel, int duplicates, long firstDuplicateMillis, int overlaps,
+                long firstOverlapMillis, int gaps, long firstGapStartMillis, long firstGapEndMillis) {
+            this.channel = channel;
+            this.duplicates = duplicates;
+            this.firstDuplicateMillis = firstDuplicateMillis;
+            this.overlaps = overlaps;
+            this.firstOverlapMillis = firstOverlapMillis;
+            this.gaps = gaps;
+            this.firstGapStartMillis = firstGapStartMillis;
+            this.firstGapEndMillis = firstGapEndMillis;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        /**
+         * Slots listed again after their first listing, which were skipped.
+         */
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        public int getOverlaps() {
+            return overlaps;
+        }
+
+        public int getGaps() {
+            return gaps;
+        }
+
+        public boolean isEmpty() {
+            return duplicates == 0 && overlaps == 0 && gaps == 0;
+        }
+
+        /**
+         * Describes the anomalies, for example "foxtv.no: 1 duplicate slot skipped
+         * (first at 2015-01-06T20:00:00Z); 2 overlapping slots (first at ...)".
+         */
+        @Override
+        public String toString() {
+            List<String> parts = new ArrayList<>(3);
+            if (duplicates > 0) {
+                parts.add(String.format("%d duplicate %s skipped (first at %s)",
+                    duplicates, plural(duplicates, "slot"), Instant.ofEpochMilli(firstDuplicateMillis)));
+            }
+            if (overlaps > 0) {
+                parts.add(String.format("%d overlapping %s (first at %s)",
+                    overlaps, plural(overlaps, "slot"), Instant.ofEpochMilli(firstOverlapMillis)));
+            }
+            if (gaps > 0) {
+                parts.add(String.format("%d %s (first from %s to %s)", gaps, plural(gaps, "gap"),
+                    Instant.ofEpochMilli(firstGapStartMillis), Instant.ofEpochMilli(firstGapEndMillis)));
+            }
+            return channel + ": " + String.join("; ", parts);
+        }
+
+        private static String plural(int count, String noun) {
+            return count == 1 ? noun : noun + "s";
+        }
+    }
+
+}
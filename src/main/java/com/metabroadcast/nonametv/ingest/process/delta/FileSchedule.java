@@ -0,0 +1,77 @@
+package com.metabroadcast.nonametv.ingest.process.delta;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The slots one feed file lists for each channel, and the window of time the
+ * file covers on each. Collected on the parsing thread as programmes are read.
+ */
+public class FileSchedule {
+
+    private final Map<String, ChannelSchedule> channels = new LinkedHashMap<>();
+
+    /**
+     * Adds a programme's slot from times already parsed.
+     */
+    public void add(String channel, String uri, long startMillis, long stopMillis) {
+        ChannelSchedule schedule = channels.get(channel);
+        if (schedule == null) {
+            schedule = new ChannelSchedule(channel);
+            channels.put(channel, schedule);
+        }
+        schedule.add(new Slot(channel, uri, startMillis, stopMillis));
+    }
+
+    public Collection<ChannelSchedule> channels() {
+        return channels.values();
+    }
+
+    public boolean isEmpty() {
+        return channels.isEmpty();
+    }
+
+    public static final class ChannelSchedule {
+
+        private final String channel;
+        private final List<Slot> slots = new ArrayList<>();
+        private long windowStartMillis = Long.MAX_VALUE;
+        private long windowEndMillis = Long.MIN_VALUE;
+
+        private ChannelSchedule(String channel) {
+            this.channel = channel;
+        }
+
+        private void add(Slot slot) {
+            slots.add(slot);
+            windowStartMillis = Math.min(windowStartMillis, slot.getStartMillis());
+            windowEndMillis = Math.max(windowEndMillis, slot.getStopMillis());
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public List<Slot> getSlots() {
+            return slots;
+        }
+
+        /**
+         * The start of the earliest slot the file lists on this channel.
+         */
+        public long getWindowStartMillis() {
+            return windowStartMillis;
+        }
+
+        /**
+         * The end of the latest slot the file lists on this channel.
+         */
+        public long getWindowEndMillis() {
+            return windowEndMillis;
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.metabroadcast.nonametv.ingest.process.delta;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+
+/**
+ * The slots last ingested for each channel, ordered by start time, so that a new
+ * feed file can be compared with the schedule already in Atlas over the window
+ * of time it covers. A slot indexed within that window that the file no longer
+ * lists has disappeared from the schedule and its item should be removed; the
+ * content of slots that are still listed is compared separately by
+ * {@link com.metabroadcast.nonametv.ingest.process.dedup.ItemFingerprintStore},
+ * which is keyed by the same item URIs.
+ * <p>
+ * Files processed concurrently are reconciled in the order they arrived on each
+ * channel: once a file has been reconciled, an older one finishing later leaves
+ * that channel's slots as they are. Slots that ended longer ago than the
+ * retention period are dropped when the index is flushed, which persists it to
+ * a tab-separated file and replaces that file atomically.
+ */
+public class ScheduleIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduleIndex.class);
+
+    private static final char SEPARATOR = '\t';
+    private static final Splitter LINE_SPLITTER = Splitter.on(SEPARATOR);
+
+    private final File file;
+    private final long retentionMillis;
+    private final Map<String, NavigableMap<Long, Slot>> channels = new HashMap<>();
+    private final Map<String, Long> reconciledSequences = new HashMap<>();
+
+    private ScheduleIndex(File file, long retentionMillis) {
+        this.file = file;
+        this.retentionMillis = retentionMillis;
+    }
+
+    public ScheduleIndex(File file, long retention, TimeUnit unit) throws IOException {
+        this(checkNotNull(file), unit.toMillis(retention));
+        load();
+    }
+
+    /**
+     * An index that keeps nothing, for when incremental ingest is turned off:
+     * every file is written in full and no slot is ever removed.
+     */
+    public static ScheduleIndex disabled() {
+        return new ScheduleIndex(null, 0);
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * Records the slots a fully parsed file lists and returns those indexed within
+     * its window on each channel that it no longer lists. The returned slots stay
+     * indexed until {@link #removed(Slot)} is called for them, so a removal that
+     * fails is found again by the next file covering the same window.
+     *
+     * @param sequence the order in which the file arrived
+     */
+    public synchronized List<Slot> reconcile(FileSchedule schedule, long sequence) {
+        if (!isEnabled()) {
+            return new ArrayList<>();
+        }
+        List<Slot> vanished = new ArrayList<>();
+        for (FileSchedule.ChannelSchedule channelSchedule : schedule.channels()) {
+            String channel = channelSchedule.getChannel();
+            Long reconciledSequence = reconciledSequences.get(channel);
+            if (reconciledSequence != null && reconciledSequence > sequence) {
+                continue;
+            }
+            reconciledSequences.put(channel, sequence);
+
+            NavigableMap<Long, Slot> slots = channels.get(channel);
+            if (slots == null) {
+                slots = new TreeMap<>();
+                channels.put(channel, slots);
+            }
+
+            Set<String> listed = new HashSet<>();
+            for (Slot slot : channelSchedule.getSlots()) {
+                listed.add(slot.getUri());
+            }
+            long windowEnd = channelSchedule.getWindowEndMillis();
+            for (Slot indexed : slots.subMap(channelSchedule.getWindowStartMillis(), true, windowEnd, false).values()) {
+                if (indexed.getStopMillis() <= windowEnd && !listed.contains(indexed.getUri())) {
+                    vanished.add(indexed);
+                }
+            }
+            for (Slot slot : channelSchedule.getSlots()) {
+                slots.put(slot.getStartMillis(), slot);
+            }
+        }
+        return vanished;
+    }
+
+    /**
+     * Forgets a slot once its item has been removed, unless a newer file has since
+     * put another slot at its start time.
+     */
+    public synchronized void removed(Slot slot) {
+        NavigableMap<Long, Slot> slots = channels.get(slot.getChannel());
+        if (slots != null) {
+            slots.remove(slot.getStartMillis(), slot);
+        }
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (NavigableMap<Long, Slot> slots : channels.values()) {
+            size += slots.size();
+        }
+        return size;
+    }
+
+    public synchronized void flush() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        long retainedFrom = System.currentTimeMillis() - retentionMillis;
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+            Iterator<NavigableMap<Long, Slot>> channelIterator = channels.values().iterator();
+            while (channelIterator.hasNext()) {
+                NavigableMap<Long, Slot> slots = channelIterator.next();
+                Iterator<Slot> slotIterator = slots.values().iterator();
+                while (slotIterator.hasNext()) {
+                    Slot slot = slotIterator.next();
+                    if (slot.getStopMillis() < retainedFrom) {
+                        slotIterator.remove();
+                        continue;
+                    }
+                    writer.write(slot.getChannel());
+                    writer.write(SEPARATOR);
+                    writer.write(Long.toString(slot.getStartMillis()));
+                    writer.write(SEPARATOR);
+                    writer.write(Long.toString(slot.getStopMillis()));
+                    writer.write(SEPARATOR);
+                    writer.write(slot.getUri());
+                    writer.newLine();
+                }
+                if (slots.isEmpty()) {
+                    channelIterator.remove();
+                }
+            }
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            log.info("No schedule index found at {}, no slots will be removed until one is built", file);
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> fields = LINE_SPLITTER.splitToList(line);
+                if (fields.size() != 4) {
+                    log.warn("Ignoring malformed schedule index line in {}: {}", file, line);
+                    continue;
+                }
+                try {
+                    Slot slot = new Slot(fields.get(0), fields.get(3),
+                        Long.parseLong(fields.get(1)), Long.parseLong(fields.get(2)));
+                    NavigableMap<Long, Slot> slots = channels.get(slot.getChannel());
+                    if (slots == null) {
+                        slots = new TreeMap<>();
+                        channels.put(slot.getChannel(), slots);
+                    }
+                    slots.put(slot.getStartMillis(), slot);
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring malformed schedule index line in {}: {}", file, line);
+                }
+            }
+        }
+        log.info("Loaded {} scheduled slots on {} channels from {}", size(), channels.size(), file);
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.metabroadcast.nonametv.ingest.process.delta;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A programme's place in a channel's schedule, and the URI of the item written
+ * for it.
+ */
+public final class Slot {
+
+    private final String channel;
+    private final String uri;
+    private final long startMillis;
+    private final long stopMillis;
+
+    public Slot(String channel, String uri, long startMillis, long stopMillis) {
+        this.channel = checkNotNull(channel);
+        this.uri = checkNotNull(uri);
+        this.startMillis = startMillis;
+        this.stopMillis = stopMillis;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getStopMillis() {
+        return stopMillis;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Slot)) {
+            return false;
+        }
+        Slot slot = (Slot) other;
+        return startMillis == slot.startMillis
+            && stopMillis == slot.stopMillis
+            && channel.equals(slot.channel)
+            && uri.equals(slot.uri);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(channel, uri, startMillis, stopMillis);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("channel", channel)
+            .add("uri", uri)
+            .add("startMillis", startMillis)
+            .add("stopMillis", stopMillis)
+            .toString();
+    }
+
+}
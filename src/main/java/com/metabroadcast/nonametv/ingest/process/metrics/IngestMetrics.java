@@ -0,0 +1,476 @@
+package com.metabroadcast.nonametv.ingest.process.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, latency histograms and gauges for the ingest pipeline, shared by
+ * every file processed. Recording is lock-free so that it can sit on the hot
+ * path of each stage; {@link #snapshot()} gathers a consistent-enough view for
+ * health probes and the metrics endpoint.
+ * <p>
+ * Heap high-water marks come from the JVM's own peak usage of the heap memory
+ * pools, which are reset as each file starts. The pools peak independently, so
+ * their sum is an upper bound on the true peak, and while files are processed
+ * concurrently each file's peak includes the memory used by the others.
+ */
+public class IngestMetrics {
+
+    public enum Stage {
+        PARSE("parse"),
+        TRANSLATE("translate"),
+        BRAND_WRITE("brand write"),
+        ITEM_WRITE("item write");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String displayName() {
+            return displayName;
+        }
+    }
+
+    private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> writes = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> writeFailures = new EnumMap<>(Stage.class);
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, SymbolCounters> symbols = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> visibility = new ConcurrentHashMap<>();
+    private final List<String> visibilityBands = new CopyOnWriteArrayList<>();
+
+    private final LongAdder programmes = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder failedFiles = new LongAdder();
+    private final LongAdder processingNanos = new LongAdder();
+    private final LongAdder duplicateSlots = new LongAdder();
+    private final LongAdder overlappingSlots = new LongAdder();
+    private final LongAdder scheduleGaps = new LongAdder();
+    private final AtomicLong maxHeapPeakBytes = new AtomicLong();
+    private final List<MemoryPoolMXBean> heapPools;
+
+    private volatile FileSummary lastFile;
+
+    public IngestMetrics() {
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage, new LatencyHistogram());
+            writes.put(stage, new LongAdder());
+            writeFailures.put(stage, new LongAdder());
+        }
+        heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    public void record(Stage stage, long elapsedNanos) {
+        latencies.get(stage).record(elapsedNanos);
+    }
+
+    public void writeSucceeded(Stage stage, long elapsedNanos) {
+        record(stage, elapsedNanos);
+        writes.get(stage).increment();
+    }
+
+    public void writeFailed(Stage stage, long elapsedNanos) {
+        record(stage, elapsedNanos);
+        writes.get(stage).increment();
+        writeFailures.get(stage).increment();
+    }
+
+    /**
+     * Records the time from a file's arrival until one of its items was written
+     * to Atlas, where it is visible, by the priority band it was written in.
+     */
+    public void slotVisible(String band, long elapsedNanos) {
+        LatencyHistogram histogram = visibility.get(band);
+        if (histogram == null) {
+            histogram = visibility.computeIfAbsent(band, ignored -> {
+                visibilityBands.add(band);
+                return new LatencyHistogram();
+            });
+        }
+        histogram.record(elapsedNanos);
+    }
+
+    /**
+     * Adds the slots one file listed more than once or overlapping others, and
+     * the gaps it left, across all of its channels.
+     */
+    public void scheduleAnomalies(long duplicates, long overlaps, long gaps) {
+        duplicateSlots.add(duplicates);
+        overlappingSlots.add(overlaps);
+        scheduleGaps.add(gaps);
+    }
+
+    /**
+     * Registers a gauge, such as a queue depth, to be read on every snapshot.
+     */
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Adds the lookups made in one file's table of shared values of a kind.
+     */
+    public void symbolLookups(String symbol, long lookups, long hits, long bytesSaved) {
+        SymbolCounters counters = symbols.computeIfAbsent(symbol, ignored -> new SymbolCounters());
+        counters.lookups.add(lookups);
+        counters.hits.add(hits);
+        counters.bytesSaved.add(bytesSaved);
+    }
+
+    public void fileStarted() {
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * Records a processed file. {@code bytes} were read from the file, and
+     * {@code uncompressed} parsed from it; they differ only for compressed files.
+     */
+    public void fileCompleted(String filename, long programmeCount, long bytes, long uncompressed,
+            long elapsedNanos, boolean successful) {
+        programmes.add(programmeCount);
+        bytesRead.add(bytes);
+        uncompressedBytes.add(uncompressed);
+        files.increment();
+        if (!successful) {
+            failedFiles.increment();
+        }
+        processingNanos.add(elapsedNanos);
+
+        long heapPeakBytes = heapPeakBytes();
+        long max;
+        while (heapPeakBytes > (max = maxHeapPeakBytes.get())
+                && !maxHeapPeakBytes.compareAndSet(max, heapPeakBytes)) {
+            // retry until this peak is recorded or a larger one has been
+        }
+        lastFile = new FileSummary(filename, programmeCount, bytes, uncompressed, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+            perSecond(programmeCount, elapsedNanos), heapPeakBytes, successful);
+    }
+
+    public FileSummary lastFile() {
+        return lastFile;
+    }
+
+    public Snapshot snapshot() {
+        Map<String, LatencyHistogram.Snapshot> stageLatencies = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            stageLatencies.put(stage.displayName(), latencies.get(stage).snapshot());
+        }
+
+        Map<String, WriteSummary> atlasWrites = new LinkedHashMap<>();
+        for (Stage stage : new Stage[] { Stage.BRAND_WRITE, Stage.ITEM_WRITE }) {
+            long attempted = writes.get(stage).sum();
+            long failed = writeFailures.get(stage).sum();
+            atlasWrites.put(stage.displayName(),
+                new WriteSummary(attempted, failed, attempted == 0 ? 0 : failed / (double) attempted));
+        }
+
+        Map<String, Long> gaugeValues = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            gaugeValues.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+
+        Map<String, SymbolSummary> symbolSummaries = new TreeMap<>();
+        for (Map.Entry<String, SymbolCounters> symbol : symbols.entrySet()) {
+            SymbolCounters counters = symbol.getValue();
+            long lookups = counters.lookups.sum();
+            long hits = counters.hits.sum();
+            symbolSummaries.put(symbol.getKey(), new SymbolSummary(lookups, hits,
+                lookups == 0 ? 0 : hits / (double) lookups, counters.bytesSaved.sum()));
+        }
+
+        Map<String, LatencyHistogram.Snapshot> visibilityLatencies = new LinkedHashMap<>();
+        for (String band : visibilityBands) {
+            LatencyHistogram histogram = visibility.get(band);
+            if (histogram != null) {
+                visibilityLatencies.put(band, histogram.snapshot());
+            }
+        }
+
+        Map<String, Long> scheduleAnomalies = new LinkedHashMap<>();
+        scheduleAnomalies.put("duplicate slots", duplicateSlots.sum());
+        scheduleAnomalies.put("overlapping slots", overlappingSlots.sum());
+        scheduleAnomalies.put("gaps", scheduleGaps.sum());
+
+        long programmeCount = programmes.sum();
+        return new Snapshot(files.sum(), failedFiles.sum(), programmeCount, bytesRead.sum(),
+            uncompressedBytes.sum(), perSecond(programmeCount, processingNanos.sum()), stageLatencies, atlasWrites, gaugeValues,
+            symbolSummaries, visibilityLatencies, scheduleAnomalies, maxHeapPeakBytes.get(), Runtime.getRuntime().maxMemory(),
+            lastFile);
+    }
+
+    private long heapPeakBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static double perSecond(long count, long elapsedNanos) {
+        return elapsedNanos <= 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    public static final class Snapshot {
+
+        private final long files;
+        private final long failedFiles;
+        private final long programmes;
+        private final long bytesRead;
+        private final long uncompressedBytes;
+        private final double programmesPerSecond;
+        private final Map<String, LatencyHistogram.Snapshot> stageLatencies;
+        private final Map<String, WriteSummary> atlasWrites;
+        private final Map<String, Long> gauges;
+        private final Map<String, SymbolSummary> symbols;
+        private final Map<String, LatencyHistogram.Snapshot> visibility;
+        private final Map<String, Long> scheduleAnomalies;
+        private final long heapPeakBytes;
+        private final long heapMaxBytes;
+        private final FileSummary lastFile;
+
+        Snapshot(long files, long failedFiles, long programmes, long bytesRead, long uncompressedBytes,
+                double programmesPerSecond,
+                Map<String, LatencyHistogram.Snapshot> stageLatencies, Map<String, WriteSummary> atlasWrites,
+                Map<String, Long> gauges, Map<String, SymbolSummary> symbols,
+                Map<String, LatencyHistogram.Snapshot> visibility, Map<String, Long> scheduleAnomalies,
+                long heapPeakBytes, long heapMaxBytes,
+                FileSummary lastFile) {
+            this.files = files;
+            this.failedFiles = failedFiles;
+            this.programmes = programmes;
+            this.bytesRead = bytesRead;
+            this.uncompressedBytes = uncompressedBytes;
+            this.programmesPerSecond = programmesPerSecond;
+            this.stageLatencies = stageLatencies;
+            this.atlasWrites = atlasWrites;
+            this.gauges = gauges;
+            this.symbols = symbols;
+            this.visibility = visibility;
+            this.scheduleAnomalies = scheduleAnomalies;
+            this.heapPeakBytes = heapPeakBytes;
+            this.heapMaxBytes = heapMaxBytes;
+            this.lastFile = lastFile;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getFailedFiles() {
+            return failedFiles;
+        }
+
+        public long getProgrammes() {
+            return programmes;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getUncompressedBytes() {
+            return uncompressedBytes;
+        }
+
+        /**
+         * Programmes per second of time spent processing files.
+         */
+        public double getProgrammesPerSecond() {
+            return programmesPerSecond;
+        }
+
+        public Map<String, LatencyHistogram.Snapshot> getStageLatencies() {
+            return stageLatencies;
+        }
+
+        public Map<String, WriteSummary> getAtlasWrites() {
+            return atlasWrites;
+        }
+
+        public Map<String, Long> getGauges() {
+            return gauges;
+        }
+
+        /**
+         * Lookups in the tables of values shared across each file, by kind of value.
+         */
+        public Map<String, SymbolSummary> getSymbols() {
+            return symbols;
+        }
+
+        /**
+         * The time from each file's arrival until its items were visible in Atlas,
+         * by the priority band they were written in.
+         */
+        public Map<String, LatencyHistogram.Snapshot> getVisibility() {
+            return visibility;
+        }
+
+        /**
+         * Duplicated and overlapping slots, and gaps, found in the schedules of
+         * every file processed.
+         */
+        public Map<String, Long> getScheduleAnomalies() {
+            return scheduleAnomalies;
+        }
+
+        public long getHeapPeakBytes() {
+            return heapPeakBytes;
+        }
+
+        public long getHeapMaxBytes() {
+            return heapMaxBytes;
+        }
+
+        public FileSummary getLastFile() {
+            return lastFile;
+        }
+    }
+
+    public static final class WriteSummary {
+
+        private final long attempted;
+        private final long failed;
+        private final double errorRate;
+
+        WriteSummary(long attempted, long failed, double errorRate) {
+            this.attempted = attempted;
+            this.failed = failed;
+            this.errorRate = errorRate;
+        }
+
+        public long getAttempted() {
+            return attempted;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public double getErrorRate() {
+            return errorRate;
+        }
+    }
+
+    public static final class SymbolSummary {
+
+        private final long lookups;
+        private final long hits;
+        private final double hitRate;
+        private final long bytesSaved;
+
+        SymbolSummary(long lookups, long hits, double hitRate, long bytesSaved) {
+            this.lookups = lookups;
+            this.hits = hits;
+            this.hitRate = hitRate;
+            this.bytesSaved = bytesSaved;
+        }
+
+        public long getLookups() {
+            return lookups;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public double getHitRate() {
+            return hitRate;
+        }
+
+        /**
+         * An estimate of the heap not allocated thanks to hits.
+         */
+        public long getBytesSaved() {
+            return bytesSaved;
+        }
+    }
+
+    private static final class SymbolCounters {
+
+        private final LongAdder lookups = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder bytesSaved = new LongAdder();
+    }
+
+    public static final class FileSummary {
+
+        private final String filename;
+        private final long programmes;
+        private final long bytesRead;
+        private final long uncompressedBytes;
+        private final long elapsedMillis;
+        private final double programmesPerSecond;
+        private final long heapPeakBytes;
+        private final boolean successful;
+
+        FileSummary(String filename, long programmes, long bytesRead, long uncompressedBytes, long elapsedMillis,
+                double programmesPerSecond, long heapPeakBytes, boolean successful) {
+            this.filename = filename;
+            this.programmes = programmes;
+            this.bytesRead = bytesRead;
+            this.uncompressedBytes = uncompressedBytes;
+            this.elapsedMillis = elapsedMillis;
+            this.programmesPerSecond = programmesPerSecond;
+            this.heapPeakBytes = heapPeakBytes;
+            this.successful = successful;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public long getProgrammes() {
+            return programmes;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getUncompressedBytes() {
+            return uncompressedBytes;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getProgrammesPerSecond() {
+            return programmesPerSecond;
+        }
+
+        public long getHeapPeakBytes() {
+            return heapPeakBytes;
+        }
+
+        public boolean isSuccessful() {
+            return successful;
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+
+/**
+ * The compression formats a feed file may arrive in. Each is recognised by the
+ * magic bytes at the start of the file, or failing that by the extension of the
+ * file's original name.
+ */
+public enum Compression {
+
+    NONE("", new byte[0]) {
+
+        @Override
+        InputStream decompress(InputStream input) {
+            return input;
+        }
+    },
+    GZIP(".gz", new byte[] { 0x1f, (byte) 0x8b }) {
+
+        @Override
+        InputStream decompress(InputStream input) throws IOException {
+            return new GZIPInputStream(input, BUFFER_SIZE);
+        }
+    },
+    BZIP2(".bz2", new byte[] { 'B', 'Z', 'h' }) {
+
+        @Override
+        InputStream decompress(InputStream input) throws IOException {
+            return new BZip2CompressorInputStream(input, true);
+        }
+    },
+    ZSTD(".zst", new byte[] { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd }) {
+
+        @Override
+        InputStream decompress(InputStream input) {
+            return new ZstdInputStream(input);
+        }
+    };
+
+    static final int MAGIC_LENGTH = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String extension;
+    private final byte[] magic;
+
+    Compression(String extension, byte[] magic) {
+        this.extension = extension;
+        this.magic = magic;
+    }
+
+    abstract InputStream decompress(InputStream input) throws IOException;
+
+    /**
+     * Identifies the compression of a file from its first {@link #MAGIC_LENGTH}
+     * bytes, or fewer if the file is shorter, falling back to the extension of
+     * its original name.
+     */
+    static Compression detect(byte[] header, int headerLength, String originalFilename) {
+        for (Compression compression : values()) {
+            if (compression.magic.length > 0 && startsWith(header, headerLength, compression.magic)) {
+                return compression;
+            }
+        }
+        if (originalFilename != null) {
+            String name = originalFilename.toLowerCase();
+            for (Compression compression : values()) {
+                if (!compression.extension.isEmpty() && name.endsWith(compression.extension)) {
+                    return compression;
+                }
+            }
+            if (name.endsWith(".zstd")) {
+                return ZSTD;
+            }
+        }
+        return NONE;
+    }
+
+    private static boolean startsWith(byte[] header, int headerLength, byte[] magic) {
+        if (headerLength < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (header[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
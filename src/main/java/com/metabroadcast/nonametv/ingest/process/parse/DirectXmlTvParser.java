@@ -0,0 +1,275 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.InputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeFields;
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeFields.Credit;
+import com.metabroadcast.nonametv.xml.Channel;
+
+/**
+ * Walks the feed with a StAX pull parser, like {@link StreamingXmlTvParser}, but
+ * reads each {@code <programme>} element by hand rather than unmarshalling it.
+ * Only the values that translation uses are read, straight into one
+ * {@link ProgrammeFields} that is refilled for every programme, so no JAXB
+ * objects are built and the text of each element is the only allocation. Every
+ * other element of a programme is skipped. {@code <channel>} elements, of which
+ * there are few, are still unmarshalled.
+ * <p>
+ * Programmes are passed to {@link XmlTvHandler#handleProgrammeFields}, and the
+ * values read are those JAXB would have bound: attribute values are normalised
+ * the same way, and an element's text is all of its character data, however the
+ * parser splits it.
+ */
+public class DirectXmlTvParser implements XmlTvParser {
+
+    private static final String TV = "tv";
+    private static final String CHANNEL = "channel";
+    private static final String PROGRAMME = "programme";
+
+    private final XmlTvParsingContext parsingContext;
+
+    public DirectXmlTvParser(XmlTvParsingContext parsingContext) {
+        this.parsingContext = checkNotNull(parsingContext);
+    }
+
+    @Override
+    public void parse(InputStream input, XmlTvHandler handler) throws XmlTvParseException {
+        try {
+            XMLStreamReader reader = parsingContext.createStreamReader(input);
+            try {
+                new FeedReader(reader, parsingContext.unmarshaller()).parse(handler);
+            } finally {
+                reader.close();
+            }
+        } catch (JAXBException | XMLStreamException e) {
+            throw new XmlTvParseException("Unable to deserialise the input file as XMLTV-compliant XML", e);
+        }
+    }
+
+    /**
+     * The state of one parse, which must stay on the thread that started it.
+     */
+    private static final class FeedReader {
+
+        private final XMLStreamReader reader;
+        private final Unmarshaller unmarshaller;
+        private final ProgrammeFields fields = new ProgrammeFields();
+        private final StringBuilder text = new StringBuilder(256);
+
+        private FeedReader(XMLStreamReader reader, Unmarshaller unmarshaller) {
+            this.reader = reader;
+            this.unmarshaller = unmarshaller;
+        }
+
+        private void parse(XmlTvHandler handler) throws XMLStreamException, JAXBException, XmlTvParseException {
+            if (!advanceToRootElement() || !TV.equals(reader.getLocalName())) {
+                throw new XmlTvParseException("Unable to deserialise a 'tv' element from the feed file");
+            }
+
+            reader.next();
+            while (reader.getEventType() != XMLStreamConstants.END_DOCUMENT) {
+                if (reader.isStartElement()) {
+                    String name = reader.getLocalName();
+                    if (PROGRAMME.equals(name)) {
+                        readProgramme();
+                        handler.handleProgrammeFields(fields);
+                    } else if (CHANNEL.equals(name)) {
+                        // unmarshalling leaves the reader on the event after the element's end tag
+                        handler.handleChannel(unmarshaller.unmarshal(reader, Channel.class).getValue());
+                        continue;
+                    } else {
+                        skipElement();
+                    }
+                }
+                reader.next();
+            }
+        }
+
+        /**
+         * Reads the programme the reader is on into the fields, leaving the reader
+         * on its end tag.
+         */
+        private void readProgramme() throws XMLStreamException {
+            fields.reset();
+            fields.setChannel(attribute("channel"));
+            fields.setStart(attribute("start"));
+            fields.setStop(attribute("stop"));
+            while (nextChildElement()) {
+                switch (reader.getLocalName()) {
+                case "title":
+                    fields.addTitle(readText());
+                    break;
+                case "desc":
+                    fields.addDesc(attribute("lang"), readText());
+                    break;
+                case "credits":
+                    readCredits();
+                    break;
+                case "date":
+                    fields.setDate(readText());
+                    break;
+                case "category":
+                    fields.addCategory(readText());
+                    break;
+                case "url":
+                    fields.addUrl(readText());
+                    break;
+                case "country":
+                    fields.addCountry(readText());
+                    break;
+                case "episode-num":
+                    fields.addEpisodeNum(attribute("system"), readText());
+                    break;
+                case "star-rating":
+                    readStarRating();
+                    break;
+                default:
+                    skipElement();
+                }
+            }
+        }
+
+        private void readCredits() throws XMLStreamException {
+            fields.startCredits();
+            while (nextChildElement()) {
+                String name = reader.getLocalName();
+                if ("actor".equals(name)) {
+                    String role = attribute("role");
+                    fields.addActor(readText(), role);
+                    continue;
+                }
+                Credit credit = Credit.forElement(name);
+                if (credit == null) {
+                    skipElement();
+                } else {
+                    fields.addCredit(credit, readText());
+                }
+            }
+        }
+
+        private void readStarRating() throws XMLStreamException {
+            String value = null;
+            while (nextChildElement()) {
+                if ("value".equals(reader.getLocalName())) {
+                    value = readText();
+                } else {
+                    skipElement();
+                }
+            }
+            fields.addStarRating(value);
+        }
+
+        /**
+         * Reads the character data of the element the reader is on, skipping any
+         * child elements, and leaves the reader on its end tag. Text that the
+         * parser delivers in one piece is returned without copying.
+         */
+        private String readText() throws XMLStreamException {
+            String single = null;
+            boolean split = false;
+            int event;
+            while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+                switch (event) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (split) {
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    } else if (single == null) {
+                        single = reader.getText();
+                    } else {
+                        split = true;
+                        text.setLength(0);
+                        text.append(single);
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.START_ELEMENT:
+                    skipElement();
+                    break;
+                default:
+                    break;
+                }
+            }
+            if (split) {
+                return text.toString();
+            }
+            return single == null ? "" : single;
+        }
+
+        /**
+         * The value of an attribute of the element the reader is on, with tabs and
+         * line breaks replaced by spaces, as JAXB's normalizedString binding does.
+         */
+        private String attribute(String name) {
+            String value = reader.getAttributeValue(null, name);
+            if (value == null) {
+                return null;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\t' || c == '\r' || c == '\n') {
+                    return normalise(value);
+                }
+            }
+            return value;
+        }
+
+        private static String normalise(String value) {
+            char[] chars = value.toCharArray();
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == '\t' || chars[i] == '\r' || chars[i] == '\n') {
+                    chars[i] = ' ';
+                }
+            }
+            return new String(chars);
+        }
+
+        /**
+         * Moves to the next child of the element the reader is in, ignoring any
+         * text between children as JAXB does, and returns whether there is one.
+         * If there is not, the reader is left on the element's end tag.
+         */
+        private boolean nextChildElement() throws XMLStreamException {
+            while (true) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    return true;
+                }
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    return false;
+                }
+            }
+        }
+
+        private boolean advanceToRootElement() throws XMLStreamException {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void skipElement() throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.InputStream;
+
+import javax.xml.bind.JAXBException;
+
+import org.xml.sax.InputSource;
+
+import com.metabroadcast.nonametv.xml.Channel;
+import com.metabroadcast.nonametv.xml.Programme;
+import com.metabroadcast.nonametv.xml.Tv;
+
+/**
+ * Unmarshals the whole {@link Tv} document before handing any of its elements
+ * on. Memory use grows with the size of the feed file; prefer
+ * {@link StreamingXmlTvParser} for large feeds.
+ */
+public class DocumentXmlTvParser implements XmlTvParser {
+
+    private final XmlTvParsingContext parsingContext;
+
+    public DocumentXmlTvParser(XmlTvParsingContext parsingContext) {
+        this.parsingContext = checkNotNull(parsingContext);
+    }
+
+    @Override
+    public void parse(InputStream input, XmlTvHandler handler) throws XmlTvParseException {
+        Tv tv;
+        try {
+            InputSource inputSource = new InputSource(input);
+            tv = (Tv)parsingContext.unmarshaller().unmarshal(parsingContext.createSaxSource(inputSource));
+        } catch (JAXBException e) {
+            throw new XmlTvParseException("Unable to deserialise the input file as XMLTV-compliant XML", e);
+        }
+
+        if (tv == null) {
+            throw new XmlTvParseException("Unable to deserialise a 'tv' element from the feed file");
+        }
+
+        for (Channel channel : tv.getChannel()) {
+            handler.handleChannel(channel);
+        }
+        for (Programme programme : tv.getProgramme()) {
+            handler.handleProgramme(programme);
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+
+/**
+ * A feed file opened as raw bytes for the XML parsers, decompressed on the fly if
+ * it is compressed so that the inflated feed is never written to disk. Bytes are
+ * never decoded here: the parsers detect the encoding from the byte order mark
+ * and the XML declaration, falling back to UTF-8 as the XML specification
+ * requires, rather than assuming the platform default charset. Files large
+ * enough for it to pay off are memory-mapped.
+ * <p>
+ * The bytes read from the file and the bytes handed to the parser are counted
+ * separately, so compressed feeds report both sizes. A feed from a stream that
+ * cannot be trusted can be limited in both sizes, which also guards against
+ * small compressed feeds that inflate enormously.
+ */
+public final class FeedInput implements Closeable {
+
+    static final long MAPPING_THRESHOLD = 1L << 20;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CountingInputStream compressed;
+    private final CountingInputStream uncompressed;
+    private final Compression compression;
+    private final Limit limit;
+
+    private FeedInput(CountingInputStream compressed, CountingInputStream uncompressed, Compression compression,
+            Limit limit) {
+        this.compressed = compressed;
+        this.uncompressed = uncompressed;
+        this.compression = compression;
+        this.limit = limit;
+    }
+
+    public static FeedInput open(File file, String originalFilename) throws IOException {
+        InputStream raw = file.length() >= MAPPING_THRESHOLD
+            ? new MappedFileInputStream(file)
+            : new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            return open(raw, originalFilename);
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps a stream of feed bytes, which may be compressed.
+     */
+    public static FeedInput open(InputStream input, String originalFilename) throws IOException {
+        return open(input, originalFilename, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Wraps a stream of feed bytes, which may be compressed, from which no more
+     * than {@code maximumBytes} may be read, nor more than
+     * {@code maximumUncompressedBytes} once decompressed. Reading past either
+     * limit fails, and {@link #exceededLimit()} then tells why.
+     */
+    public static FeedInput open(InputStream input, String originalFilename, long maximumBytes,
+            long maximumUncompressedBytes) throws IOException {
+        InputStream raw = input.markSupported() ? input : new BufferedInputStream(input, BUFFER_SIZE);
+        byte[] header = new byte[Compression.MAGIC_LENGTH];
+        raw.mark(header.length);
+        int headerLength = ByteStreams.read(raw, header, 0, header.length);
+        raw.reset();
+
+        Limit limit = new Limit();
+        Compression compression = Compression.detect(header, headerLength, originalFilename);
+        CountingInputStream compressed = new CountingInputStream(
+            limit.apply(raw, maximumBytes, "bytes"));
+        CountingInputStream uncompressed = compression == Compression.NONE
+            ? compressed
+            : new CountingInputStream(limit.apply(compression.decompress(compressed), maximumUncompressedBytes,
+                "bytes uncompressed"));
+        return new FeedInput(compressed, uncompressed, compression, limit);
+    }
+
+    /**
+     * The uncompressed feed.
+     */
+    public InputStream stream() {
+        return uncompressed;
+    }
+
+    public Compression compression() {
+        return compression;
+    }
+
+    /**
+     * Bytes read from the underlying file or stream so far.
+     */
+    public long compressedBytes() {
+        return compressed.getCount();
+    }
+
+    /**
+     * Bytes of uncompressed feed handed to the parser so far.
+     */
+    public long uncompressedBytes() {
+        return uncompressed.getCount();
+    }
+
+    /**
+     * Whether reading stopped because the feed was larger than it was allowed
+     * to be.
+     */
+    public boolean exceededLimit() {
+        return limit.exceeded;
+    }
+
+    @Override
+    public void close() throws IOException {
+        uncompressed.close();
+    }
+
+    private static final class Limit {
+
+        private volatile boolean exceeded;
+
+        private InputStream apply(InputStream input, long maximumBytes, String description) {
+            return maximumBytes == Long.MAX_VALUE ? input : new LimitedInputStream(input, maximumBytes, description);
+        }
+
+        private final class LimitedInputStream extends FilterInputStream {
+
+            private final long maximumBytes;
+            private final String description;
+            private long count;
+
+            private LimitedInputStream(InputStream input, long maximumBytes, String description) {
+                super(input);
+                this.maximumBytes = maximumBytes;
+                this.description = description;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if (read != -1) {
+                    counted(1);
+                }
+                return read;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    counted(read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                counted(skipped);
+                return skipped;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            private void counted(long bytes) throws IOException {
+                count += bytes;
+                if (count > maximumBytes) {
+                    exceeded = true;
+                    throw new IOException(String.format("Feed is larger than the limit of %d %s",
+                        maximumBytes, description));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.InputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.metabroadcast.nonametv.xml.Channel;
+import com.metabroadcast.nonametv.xml.Programme;
+
+/**
+ * Walks the feed with a StAX pull parser and unmarshals one {@code <channel>} or
+ * {@code <programme>} element at a time, so that memory use is bounded by the
+ * largest single element rather than by the size of the file.
+ */
+public class StreamingXmlTvParser implements XmlTvParser {
+
+    private static final String TV = "tv";
+    private static final String CHANNEL = "channel";
+    private static final String PROGRAMME = "programme";
+
+    private final XmlTvParsingContext parsingContext;
+
+    public StreamingXmlTvParser(XmlTvParsingContext parsingContext) {
+        this.parsingContext = checkNotNull(parsingContext);
+    }
+
+    @Override
+    public void parse(InputStream input, XmlTvHandler handler) throws XmlTvParseException {
+        try {
+            XMLStreamReader reader = parsingContext.createStreamReader(input);
+            try {
+                parse(reader, parsingContext.unmarshaller(), handler);
+            } finally {
+                reader.close();
+            }
+        } catch (JAXBException | XMLStreamException e) {
+            throw new XmlTvParseException("Unable to deserialise the input file as XMLTV-compliant XML", e);
+        }
+    }
+
+    private void parse(XMLStreamReader reader, Unmarshaller unmarshaller, XmlTvHandler handler)
+            throws XMLStreamException, JAXBException, XmlTvParseException {
+        if (!advanceToRootElement(reader) || !TV.equals(reader.getLocalName())) {
+            throw new XmlTvParseException("Unable to deserialise a 'tv' element from the feed file");
+        }
+
+        reader.next();
+        while (reader.getEventType() != XMLStreamConstants.END_DOCUMENT) {
+            if (reader.isStartElement()) {
+                String name = reader.getLocalName();
+                if (PROGRAMME.equals(name)) {
+                    // unmarshalling leaves the reader on the event after the element's end tag
+                    handler.handleProgramme(unmarshaller.unmarshal(reader, Programme.class).getValue());
+                    continue;
+                }
+                if (CHANNEL.equals(name)) {
+                    handler.handleChannel(unmarshaller.unmarshal(reader, Channel.class).getValue());
+                    continue;
+                }
+                skipElement(reader);
+            }
+            reader.next();
+        }
+    }
+
+    private boolean advanceToRootElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+}
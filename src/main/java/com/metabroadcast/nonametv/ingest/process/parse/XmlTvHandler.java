@@ -0,0 +1,23 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeFields;
+import com.metabroadcast.nonametv.xml.Channel;
+import com.metabroadcast.nonametv.xml.Programme;
+
+/**
+ * Receives the top-level elements of an XMLTV document in document order.
+ */
+public interface XmlTvHandler {
+
+    void handleChannel(Channel channel);
+
+    void handleProgramme(Programme programme);
+
+    /**
+     * Receives a programme read by a parser that does not unmarshal programmes.
+     * The parser refills the same fields for the next programme once this
+     * returns, so they must not be retained.
+     */
+    void handleProgrammeFields(ProgrammeFields programme);
+
+}
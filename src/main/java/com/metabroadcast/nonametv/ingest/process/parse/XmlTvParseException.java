@@ -0,0 +1,13 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+public class XmlTvParseException extends Exception {
+
+    public XmlTvParseException(String message) {
+        super(message);
+    }
+
+    public XmlTvParseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface XmlTvParser {
+
+    /**
+     * Parses an XMLTV feed, passing each channel and programme to the handler as
+     * it is read. The input is raw bytes; its encoding is detected from the XML
+     * declaration. The caller remains responsible for closing it.
+     *
+     * @throws XmlTvParseException if the input is not XMLTV-compliant XML. Elements
+     *         read before the failure will already have been passed to the handler.
+     */
+    void parse(InputStream input, XmlTvHandler handler) throws XmlTvParseException;
+
+    /**
+     * Parses an XMLTV feed file, which may be compressed.
+     *
+     * @see FeedInput
+     */
+    default void parse(File file, XmlTvHandler handler) throws XmlTvParseException {
+        try (FeedInput input = FeedInput.open(file, file.getName())) {
+            parse(input.stream(), handler);
+        } catch (IOException e) {
+            throw new XmlTvParseException("Unable to read the input file", e);
+        }
+    }
+
+}
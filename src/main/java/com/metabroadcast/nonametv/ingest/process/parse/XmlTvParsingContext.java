@@ -0,0 +1,131 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.sax.SAXSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import com.metabroadcast.nonametv.xml.Programme;
+import com.metabroadcast.nonametv.xml.Tv;
+
+/**
+ * Holds the expensive, reusable parts of XMLTV parsing so they are built once per
+ * process rather than once per feed file. The {@link JAXBContext} and the parser
+ * factories are thread-safe and shared; unmarshallers and SAX readers are not, so
+ * each thread gets its own.
+ */
+public class XmlTvParsingContext {
+
+    private static final Logger log = LoggerFactory.getLogger(XmlTvParsingContext.class);
+
+    private static final String WARM_UP_DOCUMENT = "<programme channel=\"warmup\" start=\"20150101000000 +0000\">"
+            + "<title lang=\"en\">warm-up</title>"
+            + "<credits><actor role=\"r\">a</actor></credits>"
+            + "<category lang=\"en\">c</category>"
+            + "<episode-num system=\"xmltv_ns\">0 . 0 .</episode-num>"
+            + "<star-rating><value>1 / 1</value></star-rating>"
+            + "</programme>";
+
+    private final JAXBContext jaxbContext;
+    private final XMLInputFactory inputFactory;
+    private final SAXParserFactory saxParserFactory;
+
+    private final ThreadLocal<Unmarshaller> unmarshallers = new ThreadLocal<Unmarshaller>() {
+
+        @Override
+        protected Unmarshaller initialValue() {
+            try {
+                return jaxbContext.createUnmarshaller();
+            } catch (JAXBException e) {
+                throw new IllegalStateException("Unable to create an XMLTV unmarshaller", e);
+            }
+        }
+    };
+
+    private final ThreadLocal<XMLReader> xmlReaders = new ThreadLocal<XMLReader>() {
+
+        @Override
+        protected XMLReader initialValue() {
+            try {
+                return saxParserFactory.newSAXParser().getXMLReader();
+            } catch (ParserConfigurationException | SAXException e) {
+                throw new IllegalStateException("Unable to create an XMLTV SAX reader", e);
+            }
+        }
+    };
+
+    public XmlTvParsingContext() throws JAXBException, ParserConfigurationException, SAXException {
+        jaxbContext = JAXBContext.newInstance(Tv.class);
+
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        saxParserFactory = SAXParserFactory.newInstance();
+        saxParserFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        saxParserFactory.setFeature("http://apache.org/xml/features/validation/schema", false);
+        saxParserFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+    }
+
+    /**
+     * Returns the calling thread's unmarshaller. It must not be handed to another thread.
+     */
+    public Unmarshaller unmarshaller() {
+        return unmarshallers.get();
+    }
+
+    public XMLStreamReader createStreamReader(InputStream input) throws XMLStreamException {
+        return inputFactory.createXMLStreamReader(input);
+    }
+
+    /**
+     * Returns a SAX source backed by the calling thread's reader. The source must be
+     * consumed on the calling thread.
+     */
+    public SAXSource createSaxSource(InputSource inputSource) {
+        return new SAXSource(xmlReaders.get(), inputSource);
+    }
+
+    /**
+     * Unmarshals a small representative programme through both the StAX and SAX paths
+     * so that JAXB's lazily-built accessors and the parser classes are loaded before
+     * the first feed file arrives.
+     */
+    public void warmUp() {
+        long start = System.nanoTime();
+        try {
+            XMLStreamReader reader = createStreamReader(warmUpDocument());
+            try {
+                unmarshaller().unmarshal(reader, Programme.class);
+            } finally {
+                reader.close();
+            }
+            unmarshaller().unmarshal(createSaxSource(new InputSource(warmUpDocument())));
+        } catch (JAXBException | XMLStreamException e) {
+            log.warn("XMLTV parser warm-up failed", e);
+            return;
+        }
+        log.info("Warmed up XMLTV parsing in {}ms", (System.nanoTime() - start) / 1000000);
+    }
+
+    private InputStream warmUpDocument() {
+        return new ByteArrayInputStream(WARM_UP_DOCUMENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.metabroadcast.nonametv.ingest.process.spill;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A store of byte records held in a memory-mapped file. Records are appended to
+ * the end of the most recently mapped segment, and a new segment is mapped once
+ * it is full; each is read back, once, by the position {@link #append} returned,
+ * in whatever order the caller needs. The mapped pages live outside the heap and
+ * are paged out by the operating system as it needs, so a large backlog of
+ * records costs disk rather than heap.
+ * <p>
+ * A segment is released once every record in it has been read, and the file is
+ * truncated whenever the last record is read, so it only grows while the backlog
+ * does.
+ */
+public class SpillFile implements Closeable {
+
+    private static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    private final File file;
+    private final int segmentBytes;
+    private final FileChannel channel;
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+
+    private Segment tail;
+    private long mappedBytes;
+    private long pendingBytes;
+    private int size;
+    private boolean closed;
+
+    public SpillFile(File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_BYTES);
+    }
+
+    SpillFile(File file, int segmentBytes) throws IOException {
+        checkArgument(segmentBytes > LENGTH_BYTES, "segment must hold at least one record");
+        this.file = checkNotNull(file);
+        this.segmentBytes = segmentBytes;
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create spill directory " + directory);
+        }
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Appends a record and returns the position from which to read it. A record
+     * larger than a segment is given a segment of its own.
+     */
+    public synchronized long append(byte[] record) throws IOException {
+        checkState(!closed, "spill file %s is closed", file);
+        int recordBytes = LENGTH_BYTES + record.length;
+        if (tail == null || tail.buffer.remaining() < recordBytes) {
+            int length = Math.max(segmentBytes, recordBytes);
+            MappedByteBuffer mapped = channel.map(MapMode.READ_WRITE, mappedBytes, length);
+            Segment previous = tail;
+            tail = new Segment(mappedBytes, mapped);
+            segments.put(mappedBytes, tail);
+            mappedBytes += length;
+            if (previous != null && previous.unread == 0) {
+                segments.remove(previous.start);
+            }
+        }
+        long position = tail.start + tail.buffer.position();
+        tail.buffer.putInt(record.length);
+        tail.buffer.put(record);
+        tail.unread++;
+        pendingBytes += recordBytes;
+        size++;
+        return position;
+    }
+
+    /**
+     * Removes and returns the record appended at a position. Each record may be
+     * read only once.
+     */
+    public synchronized byte[] read(long position) throws IOException {
+        checkState(!closed, "spill file %s is closed", file);
+        Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+        checkArgument(entry != null && entry.getValue().unread > 0, "no unread record at %s", position);
+        Segment segment = entry.getValue();
+        ByteBuffer read = segment.buffer.duplicate();
+        read.position((int) (position - segment.start));
+        byte[] record = new byte[read.getInt()];
+        read.get(record);
+        pendingBytes -= LENGTH_BYTES + record.length;
+        if (--segment.unread == 0 && segment != tail) {
+            segments.remove(segment.start);
+        }
+        if (--size == 0) {
+            reset();
+        }
+        return record;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The bytes held by records not yet read.
+     */
+    public synchronized long pendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Closes and deletes the file, discarding any records not yet read.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        segments.clear();
+        tail = null;
+        size = 0;
+        pendingBytes = 0;
+        channel.close();
+        if (!file.delete() && file.exists()) {
+            throw new IOException("Unable to delete spill file " + file);
+        }
+    }
+
+    private void reset() throws IOException {
+        segments.clear();
+        tail = null;
+        mappedBytes = 0;
+        channel.truncate(0);
+    }
+
+    private static final class Segment {
+
+        private final long start;
+        private final ByteBuffer buffer;
+        private int unread;
+
+        private Segment(long start, MappedByteBuffer mapped) {
+            this.start = start;
+            this.buffer = mapped;
+        }
+    }
+
+}
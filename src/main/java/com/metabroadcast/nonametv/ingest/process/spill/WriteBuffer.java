@@ -0,0 +1,310 @@
+package com.metabroadcast.nonametv.ingest.process.spill;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+
+/**
+ * A queue of translated items awaiting a write, each with a context of the
+ * caller's choosing, that gives out the items broadcast soonest first. Items are
+ * divided into the bands of a {@link WritePriority} as they are added, and each
+ * band is emptied before the next is touched. Within a band the channels take
+ * turns, one item at a time, so a channel with a long schedule does not hold up
+ * the others; each channel's items come out in the order they were added.
+ * <p>
+ * Items are held on the heap until their estimated size reaches
+ * {@code memoryThresholdBytes}; beyond that they are serialised to JSON, as
+ * Atlas's simple model is sent over the wire, and appended to a
+ * {@link SpillFile}, leaving only their context and position on the heap. Adding
+ * never blocks on the consumer, so the producer keeps its pace however far the
+ * writes fall behind.
+ * <p>
+ * Dates are serialised as epoch milliseconds, so a spilled item reads back equal
+ * to the item that was added.
+ */
+public class WriteBuffer<C> {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBuffer.class);
+
+    private static final long ITEM_BYTES = 512;
+    private static final long ELEMENT_BYTES = 160;
+    private static final long NOT_SPILLED = -1;
+
+    private final SpillFile spillFile;
+    private final long memoryThresholdBytes;
+    private final WritePriority priority;
+    private final Gson gson = new GsonBuilder()
+        .registerTypeAdapter(Date.class, new EpochMillisAdapter())
+        .create();
+    private final List<Band<C>> bands;
+
+    private int size;
+    private long memoryBytes;
+    private long spilled;
+
+    public WriteBuffer(SpillFile spillFile, long memoryThresholdBytes) {
+        this(spillFile, memoryThresholdBytes, WritePriority.none());
+    }
+
+    public WriteBuffer(SpillFile spillFile, long memoryThresholdBytes, WritePriority priority) {
+        this.spillFile = checkNotNull(spillFile);
+        this.memoryThresholdBytes = memoryThresholdBytes;
+        this.priority = checkNotNull(priority);
+        this.bands = new ArrayList<>(priority.bandCount());
+        for (int band = 0; band < priority.bandCount(); band++) {
+            bands.add(new Band<C>());
+        }
+    }
+
+    /**
+     * Adds an item, spilling it to disk if the items held in memory have reached
+     * the threshold. Its band is decided now, from the time now. Serialisation
+     * happens outside the buffer's lock. If the spill file cannot be written the
+     * item is held in memory instead.
+     */
+    public void add(Item item, C context) {
+        long bytes = estimateBytes(item);
+        int band = priority.band(item);
+        String channel = WritePriority.channel(item);
+        synchronized (this) {
+            if (size == 0 || memoryBytes + bytes <= memoryThresholdBytes) {
+                enqueue(channel, new Entry<>(item, context, band, bytes, NOT_SPILLED));
+                memoryBytes += bytes;
+                return;
+            }
+        }
+
+        byte[] record = gson.toJson(item).getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            try {
+                enqueue(channel, new Entry<>(null, context, band, 0, spillFile.append(record)));
+                spilled++;
+            } catch (IOException e) {
+                log.warn("Unable to spill item {}, holding it in memory", item.getUri(), e);
+                enqueue(channel, new Entry<>(item, context, band, bytes, NOT_SPILLED));
+                memoryBytes += bytes;
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the next entry: the earliest added, on the channel whose
+     * turn it is, in the highest priority band that has any. Returns {@code null}
+     * if the buffer is empty. Spilled items are read back outside the buffer's
+     * lock; if one cannot be read, its entry is returned without an item.
+     */
+    public Entry<C> poll() {
+        Entry<C> entry;
+        byte[] record;
+        synchronized (this) {
+            entry = dequeue();
+            if (entry == null) {
+                return null;
+            }
+            if (entry.position == NOT_SPILLED) {
+                memoryBytes -= entry.bytes;
+                return entry;
+            }
+            try {
+                record = spillFile.read(entry.position);
+            } catch (IOException e) {
+                log.error("Unable to read a spilled item back", e);
+                return entry;
+            }
+        }
+        try {
+            Item item = gson.fromJson(new String(record, StandardCharsets.UTF_8), Item.class);
+            return new Entry<>(item, entry.context, entry.band, 0, NOT_SPILLED);
+        } catch (JsonParseException e) {
+            log.error("Unable to read a spilled item back", e);
+            return entry;
+        }
+    }
+
+    private void enqueue(String channel, Entry<C> entry) {
+        bands.get(entry.band).add(channel, entry);
+        size++;
+    }
+
+    private Entry<C> dequeue() {
+        for (Band<C> band : bands) {
+            Entry<C> entry = band.poll();
+            if (entry != null) {
+                size--;
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The number of entries in a band.
+     */
+    public synchronized int size(int band) {
+        return bands.get(band).size;
+    }
+
+    /**
+     * The estimated size of the items held in memory.
+     */
+    public synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * The bytes on disk held by spilled items not yet removed.
+     */
+    public long spilledBytes() {
+        return spillFile.pendingBytes();
+    }
+
+    /**
+     * The number of items that have been spilled to disk.
+     */
+    public synchronized long spilledCount() {
+        return spilled;
+    }
+
+    /**
+     * A rough estimate of an item's retained size: a fixed overhead for the item
+     * and its scalar fields, two bytes per character of its longest strings, and a
+     * fixed cost per element of each of its collections.
+     */
+    static long estimateBytes(Item item) {
+        long chars = Strings.nullToEmpty(item.getUri()).length()
+            + Strings.nullToEmpty(item.getTitle()).length()
+            + Strings.nullToEmpty(item.getDescription()).length();
+        long elements = sizeOf(item.getDescriptions())
+            + sizeOf(item.getPeople())
+            + sizeOf(item.getGenres())
+            + sizeOf(item.getAliases())
+            + sizeOf(item.getRatings())
+            + sizeOf(item.getCountriesOfOrigin())
+            + sizeOf(item.getBroadcasts());
+        return ITEM_BYTES + 2 * chars + ELEMENT_BYTES * elements;
+    }
+
+    private static int sizeOf(Collection<?> collection) {
+        return collection == null ? 0 : collection.size();
+    }
+
+    public static final class Entry<C> {
+
+        private final Item item;
+        private final C context;
+        private final int band;
+        private final long bytes;
+        private final long position;
+
+        private Entry(Item item, C context, int band, long bytes, long position) {
+            this.item = item;
+            this.context = context;
+            this.band = band;
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        /**
+         * The item, or {@code null} if it was spilled and could not be read back.
+         */
+        public Item getItem() {
+            return item;
+        }
+
+        public C getContext() {
+            return context;
+        }
+
+        /**
+         * The priority band the item was added to.
+         */
+        public int getBand() {
+            return band;
+        }
+    }
+
+    /**
+     * The entries of one band, queued by channel, with the channels that have
+     * entries taking turns.
+     */
+    private static final class Band<C> {
+
+        private final Map<String, Deque<Entry<C>>> channels = new HashMap<>();
+        private final Deque<String> turns = new ArrayDeque<>();
+        private int size;
+
+        private void add(String channel, Entry<C> entry) {
+            Deque<Entry<C>> entries = channels.get(channel);
+            if (entries == null) {
+                entries = new ArrayDeque<>();
+                channels.put(channel, entries);
+                turns.addLast(channel);
+            }
+            entries.addLast(entry);
+            size++;
+        }
+
+        private Entry<C> poll() {
+            String channel = turns.pollFirst();
+            if (channel == null) {
+                return null;
+            }
+            Deque<Entry<C>> entries = channels.get(channel);
+            Entry<C> entry = entries.pollFirst();
+            if (entries.isEmpty()) {
+                channels.remove(channel);
+            } else {
+                turns.addLast(channel);
+            }
+            size--;
+            return entry;
+        }
+    }
+
+    private static final class EpochMillisAdapter implements JsonSerializer<Date>, JsonDeserializer<Date> {
+
+        @Override
+        public JsonElement serialize(Date date, Type type, JsonSerializationContext context) {
+            return new JsonPrimitive(date.getTime());
+        }
+
+        @Override
+        public Date deserialize(JsonElement json, Type type, JsonDeserializationContext context) {
+            return new Date(json.getAsLong());
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.metabroadcast.nonametv.ingest.process.spill;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.atlasapi.media.entity.simple.Broadcast;
+import org.atlasapi.media.entity.simple.Item;
+
+/**
+ * Divides items into priority bands by how soon they are broadcast. The bands
+ * are bounded by offsets from now, in increasing order: with bounds of 24 and 48
+ * hours, items broadcast within the next 24 hours are in band 0, those within 48
+ * in band 1, and the rest in band 2. Items already on air, or whose broadcast has
+ * passed, are in band 0; items without a broadcast are in the last band.
+ */
+public class WritePriority {
+
+    private static final String ALL = "all";
+
+    private final long[] boundsMillis;
+    private final String[] bandNames;
+    private final Clock clock;
+
+    public WritePriority(long[] bounds, TimeUnit unit) {
+        this(bounds, unit, Clock.systemUTC());
+    }
+
+    WritePriority(long[] bounds, TimeUnit unit, Clock clock) {
+        this.clock = checkNotNull(clock);
+        boundsMillis = new long[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            boundsMillis[i] = unit.toMillis(bounds[i]);
+            checkArgument(i == 0 ? boundsMillis[i] > 0 : boundsMillis[i] > boundsMillis[i - 1],
+                "band bounds must be positive and increasing: %s", Arrays.toString(bounds));
+        }
+        bandNames = new String[bounds.length + 1];
+        String suffix = unitSuffix(unit);
+        for (int band = 0; band < bandNames.length; band++) {
+            if (bounds.length == 0) {
+                bandNames[band] = ALL;
+            } else if (band == 0) {
+                bandNames[band] = "within " + bounds[0] + suffix;
+            } else if (band == bounds.length) {
+                bandNames[band] = "after " + bounds[band - 1] + suffix;
+            } else {
+                bandNames[band] = bounds[band - 1] + suffix + " to " + bounds[band] + suffix;
+            }
+        }
+    }
+
+    /**
+     * A single band, so that items are written in the order they were read.
+     */
+    public static WritePriority none() {
+        return new WritePriority(new long[0], TimeUnit.HOURS);
+    }
+
+    public int bandCount() {
+        return bandNames.length;
+    }
+
+    /**
+     * A name for a band, such as "within 24h", for reporting.
+     */
+    public String bandName(int band) {
+        return bandNames[band];
+    }
+
+    /**
+     * The band of an item, from the start of its earliest broadcast.
+     */
+    public int band(Item item) {
+        if (boundsMillis.length == 0 || item.getBroadcasts() == null || item.getBroadcasts().isEmpty()) {
+            return boundsMillis.length;
+        }
+        Broadcast broadcast = item.getBroadcasts().first();
+        if (broadcast.getTransmissionTime() == null) {
+            return boundsMillis.length;
+        }
+        long offsetMillis = broadcast.getTransmissionTime().getTime() - clock.millis();
+        int band = 0;
+        while (band < boundsMillis.length && offsetMillis >= boundsMillis[band]) {
+            band++;
+        }
+        return band;
+    }
+
+    /**
+     * The channel an item is broadcast on, across which its band is shared
+     * fairly, or the empty string if it has no broadcast.
+     */
+    static String channel(Item item) {
+        if (item.getBroadcasts() == null || item.getBroadcasts().isEmpty()) {
+            return "";
+        }
+        String channel = item.getBroadcasts().first().getBroadcastOn();
+        return channel == null ? "" : channel;
+    }
+
+    private static String unitSuffix(TimeUnit unit) {
+        switch (unit) {
+        case DAYS:
+            return "d";
+        case HOURS:
+            return "h";
+        case MINUTES:
+            return "m";
+        case SECONDS:
+            return "s";
+        default:
+            return " " + unit.name().toLowerCase();
+        }
+    }
+
+}
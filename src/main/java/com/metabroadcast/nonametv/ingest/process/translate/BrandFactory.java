@@ -13,7 +13,19 @@ public class BrandFactory {
     }
 
     public Item createFrom(Programme programme) {
-        Item brand = new Item(brandUriGenerator.generate(programme));
+        return create(brandUriGenerator.generate(programme));
+    }
+
+    /**
+     * Creates the brand an item translated by {@link ProgrammeToItemTranslator}
+     * belongs to, reusing the brand URI the translator already generated.
+     */
+    public Item createFor(Item item) {
+        return create(item.getBrandSummary().getUri());
+    }
+
+    private Item create(String brandUri) {
+        Item brand = new Item(brandUri);
         brand.setPublisher(new PublisherDetails("nonametv"));
         brand.setType("brand");
 
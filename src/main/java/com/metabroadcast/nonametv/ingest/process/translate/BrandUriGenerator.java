@@ -8,7 +8,11 @@ public class BrandUriGenerator {
     private static final String URL_PREFIX = "http://nonametv.org/";
 
     public String generate(Programme programme) {
-        return URL_PREFIX + Iterables.getOnlyElement(programme.getTitle()).getvalue();
+        return generate(Iterables.getOnlyElement(programme.getTitle()).getvalue());
+    }
+
+    public String generate(String title) {
+        return URL_PREFIX + title;
     }
 
 }
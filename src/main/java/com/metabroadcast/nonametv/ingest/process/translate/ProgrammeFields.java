@@ -0,0 +1,284 @@
+package com.metabroadcast.nonametv.ingest.process.translate;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.metabroadcast.nonametv.xml.Actor;
+import com.metabroadcast.nonametv.xml.Adapter;
+import com.metabroadcast.nonametv.xml.Category;
+import com.metabroadcast.nonametv.xml.Commentator;
+import com.metabroadcast.nonametv.xml.Composer;
+import com.metabroadcast.nonametv.xml.Country;
+import com.metabroadcast.nonametv.xml.Credits;
+import com.metabroadcast.nonametv.xml.Desc;
+import com.metabroadcast.nonametv.xml.Director;
+import com.metabroadcast.nonametv.xml.Editor;
+import com.metabroadcast.nonametv.xml.EpisodeNum;
+import com.metabroadcast.nonametv.xml.Guest;
+import com.metabroadcast.nonametv.xml.Presenter;
+import com.metabroadcast.nonametv.xml.Producer;
+import com.metabroadcast.nonametv.xml.Programme;
+import com.metabroadcast.nonametv.xml.StarRating;
+import com.metabroadcast.nonametv.xml.Title;
+import com.metabroadcast.nonametv.xml.Url;
+import com.metabroadcast.nonametv.xml.Writer;
+
+/**
+ * The values of a programme that translation reads, and nothing else. The
+ * translator works from these fields whichever way the programme was read: they
+ * are copied from an unmarshalled {@link Programme}, or filled in directly from
+ * the feed by a parser that never builds one. An instance is reset and refilled
+ * for each programme, so its lists are allocated once and then reused.
+ */
+public final class ProgrammeFields {
+
+    /**
+     * The credits other than actors, in the order the translator lists them.
+     */
+    public enum Credit {
+        ADAPTER("adapter"),
+        COMMENTATOR("commentator"),
+        COMPOSER("composer"),
+        DIRECTOR("director"),
+        EDITOR("editor"),
+        GUEST("guest"),
+        PRESENTER("presenter"),
+        PRODUCER("producer"),
+        WRITER("writer");
+
+        private static final Map<String, Credit> BY_ELEMENT_NAME = new HashMap<>();
+
+        static {
+            for (Credit credit : values()) {
+                BY_ELEMENT_NAME.put(credit.elementName, credit);
+            }
+        }
+
+        private final String elementName;
+
+        Credit(String elementName) {
+            this.elementName = elementName;
+        }
+
+        /**
+         * The credit named by an element of {@code <credits>}, or {@code null} if
+         * there is none, as for {@code <actor>}.
+         */
+        public static Credit forElement(String elementName) {
+            return BY_ELEMENT_NAME.get(elementName);
+        }
+    }
+
+    private static final String XMLTV_NS_EPISODE_NUM_SYSTEM = "xmltv_ns";
+
+    String channel;
+    String start;
+    String stop;
+    String date;
+    String xmltvNsEpisodeNum;
+    boolean hasCredits;
+    final List<String> titles = new ArrayList<>(1);
+    final List<String> descLanguages = new ArrayList<>(2);
+    final List<String> descs = new ArrayList<>(2);
+    final List<String> actors = new ArrayList<>();
+    final List<String> actorRoles = new ArrayList<>();
+    final Map<Credit, List<String>> credits = new EnumMap<>(Credit.class);
+    final List<String> categories = new ArrayList<>();
+    final List<String> urls = new ArrayList<>(1);
+    final List<String> countries = new ArrayList<>(1);
+    final List<String> starRatings = new ArrayList<>(1);
+
+    public ProgrammeFields() {
+        for (Credit credit : Credit.values()) {
+            credits.put(credit, new ArrayList<String>());
+        }
+    }
+
+    /**
+     * Clears every field, ready for the next programme.
+     */
+    public void reset() {
+        channel = null;
+        start = null;
+        stop = null;
+        date = null;
+        xmltvNsEpisodeNum = null;
+        titles.clear();
+        descLanguages.clear();
+        descs.clear();
+        clearCredits();
+        hasCredits = false;
+        categories.clear();
+        urls.clear();
+        countries.clear();
+        starRatings.clear();
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public void setChannel(String channel) {
+        this.channel = channel;
+    }
+
+    public String getStart() {
+        return start;
+    }
+
+    public void setStart(String start) {
+        this.start = start;
+    }
+
+    public String getStop() {
+        return stop;
+    }
+
+    public void setStop(String stop) {
+        this.stop = stop;
+    }
+
+    public void addTitle(String title) {
+        titles.add(title);
+    }
+
+    public void addDesc(String language, String desc) {
+        descLanguages.add(language);
+        descs.add(desc);
+    }
+
+    /**
+     * Starts the programme's credits, replacing any read before, as a second
+     * {@code <credits>} element replaces the first.
+     */
+    public void startCredits() {
+        clearCredits();
+        hasCredits = true;
+    }
+
+    public void addActor(String name, String role) {
+        actors.add(name);
+        actorRoles.add(role);
+    }
+
+    public void addCredit(Credit credit, String name) {
+        credits.get(credit).add(name);
+    }
+
+    public void setDate(String date) {
+        this.date = date;
+    }
+
+    public void addCategory(String category) {
+        categories.add(category);
+    }
+
+    public void addUrl(String url) {
+        urls.add(url);
+    }
+
+    public void addCountry(String country) {
+        countries.add(country);
+    }
+
+    /**
+     * Adds an episode number, of which only the first in the xmltv_ns system is
+     * kept.
+     */
+    public void addEpisodeNum(String system, String episodeNum) {
+        if (xmltvNsEpisodeNum == null && XMLTV_NS_EPISODE_NUM_SYSTEM.equals(system)) {
+            xmltvNsEpisodeNum = episodeNum;
+        }
+    }
+
+    public void addStarRating(String value) {
+        starRatings.add(value);
+    }
+
+    int creditCount() {
+        int count = actors.size();
+        for (List<String> names : credits.values()) {
+            count += names.size();
+        }
+        return count;
+    }
+
+    /**
+     * Replaces these fields with those of an unmarshalled programme.
+     */
+    ProgrammeFields copyOf(Programme programme) {
+        reset();
+        channel = programme.getChannel();
+        start = programme.getStart();
+        stop = programme.getStop();
+        date = programme.getDate();
+        for (Title title : programme.getTitle()) {
+            titles.add(title.getvalue());
+        }
+        for (Desc desc : programme.getDesc()) {
+            addDesc(desc.getLang(), desc.getvalue());
+        }
+        Credits programmeCredits = programme.getCredits();
+        if (programmeCredits != null) {
+            hasCredits = true;
+            for (Actor actor : programmeCredits.getActor()) {
+                addActor(actor.getvalue(), actor.getRole());
+            }
+            for (Adapter adapter : programmeCredits.getAdapter()) {
+                addCredit(Credit.ADAPTER, adapter.getvalue());
+            }
+            for (Commentator commentator : programmeCredits.getCommentator()) {
+                addCredit(Credit.COMMENTATOR, commentator.getvalue());
+            }
+            for (Composer composer : programmeCredits.getComposer()) {
+                addCredit(Credit.COMPOSER, composer.getvalue());
+            }
+            for (Director director : programmeCredits.getDirector()) {
+                addCredit(Credit.DIRECTOR, director.getvalue());
+            }
+            for (Editor editor : programmeCredits.getEditor()) {
+                addCredit(Credit.EDITOR, editor.getvalue());
+            }
+            for (Guest guest : programmeCredits.getGuest()) {
+                addCredit(Credit.GUEST, guest.getvalue());
+            }
+            for (Presenter presenter : programmeCredits.getPresenter()) {
+                addCredit(Credit.PRESENTER, presenter.getvalue());
+            }
+            for (Producer producer : programmeCredits.getProducer()) {
+                addCredit(Credit.PRODUCER, producer.getvalue());
+            }
+            for (Writer writer : programmeCredits.getWriter()) {
+                addCredit(Credit.WRITER, writer.getvalue());
+            }
+        }
+        for (Category category : programme.getCategory()) {
+            categories.add(category.getvalue());
+        }
+        for (Url url : programme.getUrl()) {
+            urls.add(url.getvalue());
+        }
+        for (Country country : programme.getCountry()) {
+            countries.add(country.getvalue());
+        }
+        for (EpisodeNum episodeNum : programme.getEpisodeNum()) {
+            addEpisodeNum(episodeNum.getSystem(), episodeNum.getvalue());
+        }
+        for (StarRating starRating : programme.getStarRating()) {
+            starRatings.add(starRating.getValue());
+        }
+        return this;
+    }
+
+    private void clearCredits() {
+        actors.clear();
+        actorRoles.clear();
+        for (List<String> names : credits.values()) {
+            names.clear();
+        }
+    }
+
+}
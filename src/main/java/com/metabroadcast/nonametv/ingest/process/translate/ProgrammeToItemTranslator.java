@@ -1,12 +1,14 @@
 package com.metabroadcast.nonametv.ingest.process.translate;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Function;
 
 import org.atlasapi.media.entity.simple.BrandSummary;
 import org.atlasapi.media.entity.simple.Broadcast;
@@ -15,275 +17,256 @@ import org.atlasapi.media.entity.simple.LocalizedDescription;
 import org.atlasapi.media.entity.simple.Person;
 import org.atlasapi.media.entity.simple.PublisherDetails;
 import org.atlasapi.media.entity.simple.Rating;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 
 import com.google.common.collect.Iterables;
 import com.metabroadcast.common.intl.Countries;
-import com.metabroadcast.nonametv.xml.Actor;
-import com.metabroadcast.nonametv.xml.Adapter;
-import com.metabroadcast.nonametv.xml.Category;
-import com.metabroadcast.nonametv.xml.Commentator;
-import com.metabroadcast.nonametv.xml.Composer;
-import com.metabroadcast.nonametv.xml.Country;
-import com.metabroadcast.nonametv.xml.Credits;
-import com.metabroadcast.nonametv.xml.Desc;
-import com.metabroadcast.nonametv.xml.Director;
-import com.metabroadcast.nonametv.xml.Editor;
-import com.metabroadcast.nonametv.xml.EpisodeNum;
-import com.metabroadcast.nonametv.xml.Guest;
-import com.metabroadcast.nonametv.xml.Presenter;
-import com.metabroadcast.nonametv.xml.Producer;
+import com.metabroadcast.nonametv.ingest.process.channel.ChannelRegistry;
+import com.metabroadcast.nonametv.ingest.process.translate.SymbolTable.Symbol;
 import com.metabroadcast.nonametv.xml.Programme;
-import com.metabroadcast.nonametv.xml.StarRating;
-import com.metabroadcast.nonametv.xml.Url;
-import com.metabroadcast.nonametv.xml.Writer;
 
+/**
+ * Translates a programme into an Atlas item. Translation runs for every programme
+ * in a feed, so each field is read from the programme once, values are matched
+ * with the hand-written parsers in {@link XmlTvValueParsers} rather than regular
+ * expressions, and URIs are built in a per-thread {@link TranslationScratch}.
+ * Broadcast times are parsed by {@link XmlTvDateTimes}, reusing the previous
+ * programme's stop time where it is the next programme's start. Values that
+ * repeat across programmes are shared through the caller's {@link SymbolTable},
+ * and broadcast channel URIs are looked up in the {@link ChannelRegistry}.
+ */
 public class ProgrammeToItemTranslator {
 
     private static final String URL_PREFIX = "http://nonametv.org/";
-    private static final String XMLTV_NS_EPISODE_NUM_SYSTEM = "xmltv_ns";
-    private static final Pattern XMLTV_NS_SEASON_AND_EPISODE_NUMBER = Pattern.compile("(\\d+)\\s+\\.\\s+(\\d+)\\s+\\.");
-    private static final Pattern XMLTV_STAR_RATING = Pattern.compile("([\\d\\.]+)\\s+/\\s+([\\d\\.]+)");
-    private static final DateTimeFormatter XMLTV_DATE_FORMAT = DateTimeFormat.forPattern("yyyyMMddHHmmss Z");
+    private static final int MAXIMUM_CACHED_CHANNELS = 4096;
+    private static final String PUBLISHER_KEY = "nonametv";
+    private static final SymbolTable UNSHARED = new SymbolTable(0);
+
+    private static final Function<String, String> GENRE_URI = category -> URL_PREFIX + category;
 
     private BrandUriGenerator brandUriGenerator;
+    private final ChannelRegistry channelRegistry;
+    private final ScheduleBoundaryCache scheduleBoundaryCache = new ScheduleBoundaryCache(MAXIMUM_CACHED_CHANNELS);
 
     public ProgrammeToItemTranslator(BrandUriGenerator brandUriGenerator) {
+        this(brandUriGenerator, ChannelRegistry.inMemory());
+    }
+
+    public ProgrammeToItemTranslator(BrandUriGenerator brandUriGenerator, ChannelRegistry channelRegistry) {
         this.brandUriGenerator = brandUriGenerator;
+        this.channelRegistry = checkNotNull(channelRegistry);
     }
 
+    /**
+     * Translates a programme without sharing values with any other.
+     */
     public TranslationResult translate(Programme programme) {
-        List<String> warnings = new ArrayList<>();
+        return translate(programme, UNSHARED);
+    }
+
+    public TranslationResult translate(Programme programme, SymbolTable symbols) {
+        return translate(TranslationScratch.get().fields.copyOf(programme), symbols);
+    }
+
+    /**
+     * Translates a programme from its fields, as read by a parser that does not
+     * unmarshal programmes. The item is built from nothing else, so it is the same
+     * as that translated from the equivalent {@link Programme}.
+     */
+    public TranslationResult translate(ProgrammeFields programme, SymbolTable symbols) {
+        TranslationScratch scratch = TranslationScratch.get();
+        List<String> warnings = null;
         Item item = new Item();
 
-        String itemUri = getUri(programme);
+        String itemUri = getUri(programme.channel, programme.start, programme.stop, scratch);
 
         item.setType("episode");
 
         item.setUri(itemUri);
 
-        String title = getTitle(programme);
+        String title = Iterables.getOnlyElement(programme.titles);
         item.setTitle(title);
-        BrandSummary brandSummary = new BrandSummary(brandUriGenerator.generate(programme));
+        BrandSummary brandSummary = new BrandSummary(brandUriGenerator.generate(title));
         item.setBrandSummary(brandSummary);
 
-        item.setDescriptions(getLocalizedDescriptions(programme));
-        item.setDescription(getDescription(programme));
-        item.setPeople(getPeople(programme, itemUri));
+        setDescriptions(item, programme);
+        item.setPeople(getPeople(programme, itemUri, symbols, scratch));
         try {
-            item.setYear(getYear(programme));
+            item.setYear(Integer.parseInt(programme.date));
         } catch (NumberFormatException e) {
-            warnings.add("Unable to parse year from programme");
+            warnings = addWarning(warnings, "Unable to parse year from programme");
         }
-        item.setGenres(getGenres(programme));
+        item.setGenres(getGenres(programme, symbols));
         item.setAliases(getAliases(programme));
-        if (hasSeriesAndEpisodeNumber(programme)) {
+        String seasonAndEpisode = programme.xmltvNsEpisodeNum;
+        if (seasonAndEpisode != null
+                && XmlTvValueParsers.matchXmltvNsSeasonAndEpisode(seasonAndEpisode, scratch)) {
+            int episodeStart = scratch.secondStart;
+            int episodeEnd = scratch.secondEnd;
             try {
-                item.setSeriesNumber(getSeriesNumber(programme));
+                item.setSeriesNumber(XmlTvValueParsers.parseDigits(seasonAndEpisode, scratch.firstStart, scratch.firstEnd) + 1);
             } catch (IllegalArgumentException e) {
-                warnings.add(e.getMessage());
+                warnings = addWarning(warnings, e.getMessage());
             }
             try {
-                item.setEpisodeNumber(getEpisodeNumber(programme));
+                item.setEpisodeNumber(XmlTvValueParsers.parseDigits(seasonAndEpisode, episodeStart, episodeEnd) + 1);
             } catch (IllegalArgumentException e) {
-                warnings.add(e.getMessage());
+                warnings = addWarning(warnings, e.getMessage());
             }
         }
-        item.setRatings(getRatings(programme));
-        item.setCountriesOfOrigin(getCountriesOfOrigin(programme));
+        item.setRatings(getRatings(programme, symbols, scratch));
+        item.setCountriesOfOrigin(getCountriesOfOrigin(programme, symbols));
         item.setBroadcasts(getBroadcasts(programme));
-        item.setPublisher(new PublisherDetails("nonametv"));
+        item.setPublisher(symbols.lookup(Symbol.PUBLISHER, PUBLISHER_KEY, PublisherDetails::new));
 
-        if (warnings.isEmpty()) {
+        if (warnings == null) {
             return new TranslationResult(item);
         } else {
-            return new TranslationResult(item, TranslationResult.Status.WARNING, warnings.toArray(new String[] {}));
+            return new TranslationResult(item, TranslationResult.Status.WARNING, warnings.toArray(new String[warnings.size()]));
         }
     }
 
-    private String getUri(Programme programme) {
-        String itemUri = URL_PREFIX + programme.getChannel() + programme.getStart() + programme.getStop();
-        itemUri = itemUri.replace(" ", "");
-        return itemUri;
+    private static List<String> addWarning(List<String> warnings, String warning) {
+        if (warnings == null) {
+            warnings = new ArrayList<>(2);
+        }
+        warnings.add(warning);
+        return warnings;
     }
 
-    private String getTitle(Programme programme) {
-        return Iterables.getOnlyElement(programme.getTitle()).getvalue();
+    /**
+     * The URI of the item a programme translates to, which identifies its slot.
+     */
+    public String itemUri(Programme programme) {
+        return getUri(programme.getChannel(), programme.getStart(), programme.getStop(), TranslationScratch.get());
     }
 
-    private Set<LocalizedDescription> getLocalizedDescriptions(Programme programme) {
-        Set<LocalizedDescription> descriptionSet = new HashSet<>();
-        for (Desc desc : programme.getDesc()) {
-            if (!"en".equals(desc.getLang())) {
-                LocalizedDescription localizedDescription = new LocalizedDescription();
-                localizedDescription.setDescription(desc.getvalue());
-                descriptionSet.add(localizedDescription);
-            }
+    /**
+     * The URI of the item a programme translates to, which identifies its slot.
+     */
+    public String itemUri(ProgrammeFields programme) {
+        return getUri(programme.channel, programme.start, programme.stop, TranslationScratch.get());
+    }
+
+    private String getUri(String channel, String start, String stop, TranslationScratch scratch) {
+        StringBuilder itemUri = scratch.builder().append(URL_PREFIX);
+        appendWithoutSpaces(itemUri, channel);
+        appendWithoutSpaces(itemUri, start);
+        appendWithoutSpaces(itemUri, stop);
+        return itemUri.toString();
+    }
+
+    private static void appendWithoutSpaces(StringBuilder builder, String value) {
+        if (value == null) {
+            builder.append("null");
+            return;
         }
-        return descriptionSet;
+        int from = 0;
+        int space;
+        while ((space = value.indexOf(' ', from)) >= 0) {
+            builder.append(value, from, space);
+            from = space + 1;
+        }
+        builder.append(value, from, value.length());
     }
 
-    private String getDescription(Programme programme) {
-        for (Desc desc : programme.getDesc()) {
-            if ("en".equals(desc.getLang())) {
-                return desc.getvalue();
+    /**
+     * Sets the description from the first English desc, and a localized
+     * description for every other, in a single pass over the descs.
+     */
+    private void setDescriptions(Item item, ProgrammeFields programme) {
+        List<String> descs = programme.descs;
+        Set<LocalizedDescription> descriptionSet = descs.isEmpty()
+                ? Collections.<LocalizedDescription>emptySet()
+                : new HashSet<LocalizedDescription>();
+        String description = null;
+        for (int i = 0; i < descs.size(); i++) {
+            if ("en".equals(programme.descLanguages.get(i))) {
+                if (description == null) {
+                    description = descs.get(i);
+                }
+            } else {
+                LocalizedDescription localizedDescription = new LocalizedDescription();
+                localizedDescription.setDescription(descs.get(i));
+                descriptionSet.add(localizedDescription);
             }
         }
-
-        return "";
+        item.setDescriptions(descriptionSet);
+        item.setDescription(description == null ? "" : description);
     }
 
-    private List<Person> getPeople(Programme programme, String itemUri) {
-        List<Person> personList = new ArrayList<>();
-        Credits credits = programme.getCredits();
-        if (credits == null) {
+    private List<Person> getPeople(ProgrammeFields programme, String itemUri, SymbolTable symbols,
+            TranslationScratch scratch) {
+        if (!programme.hasCredits) {
             return ImmutableList.of();
         }
-        for (Actor actor : credits.getActor()) {
-            Person person = new Person();
-            person.setName(actor.getvalue());
-            person.setRole(actor.getRole());
-            person.setUri(itemUri + "/" + actor.getvalue());
-            personList.add(person);
-        }
-        for (Adapter adapter : credits.getAdapter()) {
-            Person person = new Person();
-            person.setName(adapter.getvalue());
-            person.setUri(itemUri + "/" + adapter.getvalue());
-            personList.add(person);
-        }
-        for (Commentator commentator : credits.getCommentator()) {
-            Person person = new Person();
-            person.setName(commentator.getvalue());
-            person.setUri(itemUri + "/" + commentator.getvalue());
-            personList.add(person);
-        }
-        for (Composer composer : credits.getComposer()) {
-            Person person = new Person();
-            person.setName(composer.getvalue());
-            person.setUri(itemUri + "/" + composer.getvalue());
-            personList.add(person);
-        }
-        for (Director director : credits.getDirector()) {
-            Person person = new Person();
-            person.setName(director.getvalue());
-            person.setUri(itemUri + "/" + director.getvalue());
-            personList.add(person);
-        }
-        for (Editor editor : credits.getEditor()) {
-            Person person = new Person();
-            person.setName(editor.getvalue());
-            person.setUri(itemUri + "/" + editor.getvalue());
-            personList.add(person);
-        }
-        for (Guest guest : credits.getGuest()) {
-            Person person = new Person();
-            person.setName(guest.getvalue());
-            person.setUri(itemUri + "/" + guest.getvalue());
+        List<Person> personList = new ArrayList<>(programme.creditCount());
+        for (int i = 0; i < programme.actors.size(); i++) {
+            Person person = createPerson(itemUri, programme.actors.get(i), symbols, scratch);
+            person.setRole(programme.actorRoles.get(i));
             personList.add(person);
         }
-        for (Presenter presenter : credits.getPresenter()) {
-            Person person = new Person();
-            person.setName(presenter.getvalue());
-            person.setUri(itemUri + "/" + presenter.getvalue());
-            personList.add(person);
-        }
-        for (Producer producer : credits.getProducer()) {
-            Person person = new Person();
-            person.setName(producer.getvalue());
-            person.setUri(itemUri + "/" + producer.getvalue());
-            personList.add(person);
-        }
-        for (Writer writer : credits.getWriter()) {
-            Person person = new Person();
-            person.setName(writer.getvalue());
-            person.setUri(itemUri + "/" + writer.getvalue());
-            personList.add(person);
+        for (List<String> names : programme.credits.values()) {
+            for (String name : names) {
+                personList.add(createPerson(itemUri, name, symbols, scratch));
+            }
         }
         return personList;
     }
 
-    private int getYear(Programme programme) throws NumberFormatException {
-        return Integer.parseInt(programme.getDate());
+    private Person createPerson(String itemUri, String name, SymbolTable symbols, TranslationScratch scratch) {
+        Person person = new Person();
+        person.setName(symbols.intern(Symbol.PERSON_NAME, name));
+        person.setUri(scratch.builder().append(itemUri).append('/').append(name).toString());
+        return person;
     }
 
-    private List<String> getGenres(Programme programme) {
-        List<String> genreList = new ArrayList<>(programme.getCategory().size());
-        for (Category category : programme.getCategory()) {
-            genreList.add(URL_PREFIX + category.getvalue());
+    private List<String> getGenres(ProgrammeFields programme, SymbolTable symbols) {
+        List<String> categories = programme.categories;
+        List<String> genreList = new ArrayList<>(categories.size());
+        for (String category : categories) {
+            genreList.add(symbols.lookup(Symbol.GENRE_URI, category, GENRE_URI));
         }
         return genreList;
     }
 
-    private Set<String> getAliases(Programme programme) {
-        Set<String> aliasSet = new HashSet<>();
-        for (Url url : programme.getUrl()) {
-            aliasSet.add(url.getvalue());
+    private Set<String> getAliases(ProgrammeFields programme) {
+        if (programme.urls.isEmpty()) {
+            return Collections.emptySet();
         }
-        return aliasSet;
+        return new HashSet<>(programme.urls);
     }
 
-    private boolean hasSeriesAndEpisodeNumber(Programme programme) {
-        for (EpisodeNum episodeNum : programme.getEpisodeNum()) {
-            if (XMLTV_NS_EPISODE_NUM_SYSTEM.equals(episodeNum.getSystem())) {
-                Matcher matcher = XMLTV_NS_SEASON_AND_EPISODE_NUMBER.matcher(episodeNum.getvalue());
-                return matcher.matches();
-            }
+    private List<Rating> getRatings(ProgrammeFields programme, SymbolTable symbols, TranslationScratch scratch) {
+        List<String> starRatings = programme.starRatings;
+        if (starRatings.isEmpty()) {
+            return Collections.emptyList();
         }
-        return false;
-    }
-
-    private int getSeriesNumber(Programme programme) {
-        for (EpisodeNum episodeNum : programme.getEpisodeNum()) {
-            if (XMLTV_NS_EPISODE_NUM_SYSTEM.equals(episodeNum.getSystem())) {
-                Matcher matcher = XMLTV_NS_SEASON_AND_EPISODE_NUMBER.matcher(episodeNum.getvalue());
-                if (matcher.matches()) {
-                    return Integer.parseInt(matcher.group(1)) + 1;
-                } else {
-                    throw new IllegalArgumentException("episode-num system=\"xmltv_ns\" tag was present but contained a value in an unexpected format: " + episodeNum.getvalue());
-                }
-            }
-        }
-        throw new IllegalArgumentException("Unable to find episode-num system=\"xmltv_ns\" tag");
-    }
-
-    private int getEpisodeNumber(Programme programme) {
-        for (EpisodeNum episodeNum : programme.getEpisodeNum()) {
-            if (XMLTV_NS_EPISODE_NUM_SYSTEM.equals(episodeNum.getSystem())) {
-                Matcher matcher = XMLTV_NS_SEASON_AND_EPISODE_NUMBER.matcher(episodeNum.getvalue());
-                if (matcher.matches()) {
-                    return Integer.parseInt(matcher.group(2)) + 1;
-                } else {
-                    throw new IllegalArgumentException("episode-num system=\"xmltv_ns\" tag was present but contained a value in an unexpected format: " + episodeNum.getvalue());
-                }
-            }
-        }
-        throw new IllegalArgumentException("Unable to find episode-num system=\"xmltv_ns\" tag");
-    }
-
-    private List<Rating> getRatings(Programme programme) {
-        List<Rating> ratingList = new ArrayList<>();
-        for (StarRating starRating : programme.getStarRating()) {
-            Matcher matcher = XMLTV_STAR_RATING.matcher(starRating.getValue());
-            if (matcher.matches()) {
-                double numerator = Double.parseDouble(matcher.group(1));
-                double denominator = Double.parseDouble(matcher.group(2));
+        List<Rating> ratingList = new ArrayList<>(starRatings.size());
+        for (String value : starRatings) {
+            if (XmlTvValueParsers.matchStarRating(value, scratch)) {
+                double numerator = Double.parseDouble(value.substring(scratch.firstStart, scratch.firstEnd));
+                double denominator = Double.parseDouble(value.substring(scratch.secondStart, scratch.secondEnd));
                 Rating rating = new Rating();
                 rating.setValue((float) (numerator / denominator));
-                rating.setPublisherDetails(new PublisherDetails("nonametv"));
+                rating.setPublisherDetails(symbols.lookup(Symbol.PUBLISHER, PUBLISHER_KEY, PublisherDetails::new));
                 ratingList.add(rating);
             } else {
-                throw new IllegalArgumentException("star-rating tag was present but contained a value in an unexpected format: " + starRating.getValue());
+                throw new IllegalArgumentException("star-rating tag was present but contained a value in an unexpected format: " + value);
             }
         }
         return ratingList;
     }
 
-    private List<com.metabroadcast.common.intl.Country> getCountriesOfOrigin(Programme programme) {
-        List<com.metabroadcast.common.intl.Country> countryList = new ArrayList<>();
-        for (Country country : programme.getCountry()) {
-            com.metabroadcast.common.intl.Country countryListEntry = Countries.fromCode(country.getvalue());
+    private List<com.metabroadcast.common.intl.Country> getCountriesOfOrigin(ProgrammeFields programme,
+            SymbolTable symbols) {
+        List<String> countries = programme.countries;
+        if (countries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<com.metabroadcast.common.intl.Country> countryList = new ArrayList<>(countries.size());
+        for (String country : countries) {
+            com.metabroadcast.common.intl.Country countryListEntry = symbols.lookup(Symbol.COUNTRY,
+                country, Countries::fromCode);
             if (null != countryListEntry) {
                 countryList.add(countryListEntry);
             }
@@ -291,13 +274,12 @@ public class ProgrammeToItemTranslator {
         return countryList;
     }
 
-    private List<Broadcast> getBroadcasts(Programme programme) {
-        List<Broadcast> broadcastList = new ArrayList<>();
-        Broadcast broadcast = new Broadcast("http://" + programme.getChannel() + "/",
-            XMLTV_DATE_FORMAT.parseDateTime(programme.getStart()),
-            XMLTV_DATE_FORMAT.parseDateTime(programme.getStop()));
-        broadcastList.add(broadcast);
-        return broadcastList;
+    private List<Broadcast> getBroadcasts(ProgrammeFields programme) {
+        String channel = programme.channel;
+        Broadcast broadcast = new Broadcast(channelRegistry.broadcastUri(channel),
+            scheduleBoundaryCache.start(channel, programme.start),
+            scheduleBoundaryCache.stop(channel, programme.stop));
+        return Collections.singletonList(broadcast);
     }
 
 }
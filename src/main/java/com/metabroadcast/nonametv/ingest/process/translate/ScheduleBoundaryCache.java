@@ -0,0 +1,53 @@
+package com.metabroadcast.nonametv.ingest.process.translate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.joda.time.DateTime;
+
+/**
+ * Remembers the last stop time parsed for each channel. Feeds list a channel's
+ * programmes back to back, so a programme's start is usually the previous
+ * programme's stop and can be reused rather than parsed again. Entries are
+ * checked against the text they were parsed from, so programmes translated out
+ * of order only miss the cache. The number of channels remembered is bounded.
+ */
+class ScheduleBoundaryCache {
+
+    private final ConcurrentMap<String, Boundary> lastStops = new ConcurrentHashMap<>();
+    private final int maximumChannels;
+
+    ScheduleBoundaryCache(int maximumChannels) {
+        this.maximumChannels = maximumChannels;
+    }
+
+    DateTime start(String channel, String start) {
+        if (channel != null) {
+            Boundary lastStop = lastStops.get(channel);
+            if (lastStop != null && lastStop.text.equals(start)) {
+                return lastStop.time;
+            }
+        }
+        return XmlTvDateTimes.parse(start);
+    }
+
+    DateTime stop(String channel, String stop) {
+        DateTime time = XmlTvDateTimes.parse(stop);
+        if (channel != null && (lastStops.size() < maximumChannels || lastStops.containsKey(channel))) {
+            lastStops.put(channel, new Boundary(stop, time));
+        }
+        return time;
+    }
+
+    private static final class Boundary {
+
+        private final String text;
+        private final DateTime time;
+
+        private Boundary(String text, DateTime time) {
+            this.text = text;
+            this.time = time;
+        }
+    }
+
+}
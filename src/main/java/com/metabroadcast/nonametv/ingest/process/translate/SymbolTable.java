@@ -0,0 +1,128 @@
+package com.metabroadcast.nonametv.ingest.process.translate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.atlasapi.media.entity.simple.PublisherDetails;
+
+/**
+ * Shared instances of the values that repeat throughout a feed file: genre and
+ * broadcast channel URIs, person names, countries and the publisher. Translating
+ * through one table per file means programmes share a single instance of each
+ * rather than allocating their own, which both saves the allocation and shrinks
+ * the items waiting to be written. Each kind of value holds at most
+ * {@code maximumSize} entries; once full, further values are created as before.
+ * <p>
+ * Lookups, hits and an estimate of the heap not allocated are counted per kind
+ * of value. The estimate assumes the Java 8 layout of a {@link String}, two bytes
+ * per character plus 40 bytes of object and array headers, and counts nothing
+ * for countries, whose instances are already shared.
+ */
+public class SymbolTable {
+
+    private static final long STRING_OVERHEAD_BYTES = 40;
+    private static final long PUBLISHER_DETAILS_BYTES = 48;
+
+    public enum Symbol {
+        GENRE_URI("genre URIs"),
+        PERSON_NAME("person names"),
+        COUNTRY("countries"),
+        PUBLISHER("publishers");
+
+        private final String displayName;
+
+        Symbol(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String displayName() {
+            return displayName;
+        }
+    }
+
+    private final int maximumSize;
+    private final Map<Symbol, Table> tables = new EnumMap<>(Symbol.class);
+
+    public SymbolTable(int maximumSize) {
+        checkArgument(maximumSize >= 0, "maximumSize must not be negative");
+        this.maximumSize = maximumSize;
+        for (Symbol symbol : Symbol.values()) {
+            tables.put(symbol, new Table());
+        }
+    }
+
+    /**
+     * Returns the shared value for {@code key}, creating it with {@code factory}
+     * on first use. Values the factory returns as null are not kept.
+     */
+    <T> T lookup(Symbol symbol, String key, Function<String, T> factory) {
+        Table table = tables.get(symbol);
+        table.lookups.increment();
+        if (key == null) {
+            return factory.apply(null);
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) table.values.get(key);
+        if (value != null) {
+            table.hits.increment();
+            table.bytesSaved.add(estimatedBytes(value));
+            return value;
+        }
+        value = factory.apply(key);
+        if (value != null && table.values.size() < maximumSize) {
+            @SuppressWarnings("unchecked")
+            T existing = (T) table.values.putIfAbsent(key, value);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the shared instance of a string equal to {@code value}.
+     */
+    String intern(Symbol symbol, String value) {
+        return value == null ? null : lookup(symbol, value, Function.identity());
+    }
+
+    public long lookups(Symbol symbol) {
+        return tables.get(symbol).lookups.sum();
+    }
+
+    public long hits(Symbol symbol) {
+        return tables.get(symbol).hits.sum();
+    }
+
+    public long bytesSaved(Symbol symbol) {
+        return tables.get(symbol).bytesSaved.sum();
+    }
+
+    public int size(Symbol symbol) {
+        return tables.get(symbol).values.size();
+    }
+
+    private static long estimatedBytes(Object value) {
+        if (value instanceof String) {
+            return STRING_OVERHEAD_BYTES + 2L * ((String) value).length();
+        }
+        if (value instanceof PublisherDetails) {
+            return PUBLISHER_DETAILS_BYTES;
+        }
+        return 0;
+    }
+
+    private static final class Table {
+
+        private final ConcurrentHashMap<String, Object> values = new ConcurrentHashMap<>();
+        private final LongAdder lookups = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder bytesSaved = new LongAdder();
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.metabroadcast.nonametv.ingest.process.translate;
+
+/**
+ * Per-thread working state for translation, reused from one programme to the
+ * next so that building URIs and parsing values does not allocate. Parsers record
+ * where the parts they matched start and end in the input rather than copying
+ * them out. Unmarshalled programmes are copied into the same fields each time
+ * before they are translated.
+ */
+final class TranslationScratch {
+
+    private static final ThreadLocal<TranslationScratch> SCRATCH = new ThreadLocal<TranslationScratch>() {
+
+        @Override
+        protected TranslationScratch initialValue() {
+            return new TranslationScratch();
+        }
+    };
+
+    final StringBuilder builder = new StringBuilder(128);
+    final ProgrammeFields fields = new ProgrammeFields();
+
+    int firstStart;
+    int firstEnd;
+    int secondStart;
+    int secondEnd;
+
+    private TranslationScratch() {
+    }
+
+    static TranslationScratch get() {
+        return SCRATCH.get();
+    }
+
+    /**
+     * Returns the builder, emptied.
+     */
+    StringBuilder builder() {
+        builder.setLength(0);
+        return builder;
+    }
+
+}
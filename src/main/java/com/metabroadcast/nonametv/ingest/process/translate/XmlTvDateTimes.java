@@ -0,0 +1,172 @@
+package com.metabroadcast.nonametv.ingest.process.translate;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.chrono.ISOChronology;
+
+/**
+ * Parses XMLTV dates and times without a Joda formatter. The DTD allows
+ * {@code YYYYMMDDhhmmss} or any initial substring of it down to {@code YYYY},
+ * optionally followed by a timezone; with no timezone UTC is assumed. Timezones
+ * may be numeric ({@code +0100}, {@code +01:00}, {@code +01}) or one of the
+ * abbreviations European feeds use. Digits are read in place at their fixed
+ * offsets and the instant is computed arithmetically, so the only allocation is
+ * the returned {@link DateTime}, which is in the default zone as the formatter's
+ * results were.
+ */
+public final class XmlTvDateTimes {
+
+    private static final int[] FIELD_ENDS = { 4, 6, 8, 10, 12, 14 };
+
+    private XmlTvDateTimes() {
+    }
+
+    public static DateTime parse(String value) {
+        return new DateTime(parseMillis(value), ISOChronology.getInstance());
+    }
+
+    public static long parseMillis(String value) {
+        int length = value.length();
+        int digits = 0;
+        while (digits < length && digits < 14 && isDigit(value.charAt(digits))) {
+            digits++;
+        }
+        if (digits < 4 || (digits & 1) != 0) {
+            throw invalid(value);
+        }
+
+        int year = number(value, 0, 4);
+        int month = digits >= FIELD_ENDS[1] ? number(value, 4, 6) : 1;
+        int day = digits >= FIELD_ENDS[2] ? number(value, 6, 8) : 1;
+        int hour = digits >= FIELD_ENDS[3] ? number(value, 8, 10) : 0;
+        int minute = digits >= FIELD_ENDS[4] ? number(value, 10, 12) : 0;
+        int second = digits >= FIELD_ENDS[5] ? number(value, 12, 14) : 0;
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            throw invalid(value);
+        }
+
+        int position = digits;
+        while (position < length && value.charAt(position) == ' ') {
+            position++;
+        }
+        int offsetMillis = position == length ? 0 : offsetMillis(value, position, length);
+        if (offsetMillis == Integer.MIN_VALUE) {
+            throw invalid(value);
+        }
+
+        long epochDay = epochDay(year, month, day);
+        long secondOfDay = hour * 3600L + minute * 60L + second;
+        return (epochDay * 86400L + secondOfDay) * 1000L - offsetMillis;
+    }
+
+    /**
+     * Returns the offset the timezone starting at {@code position} denotes, or
+     * {@link Integer#MIN_VALUE} if it is not one this parser understands.
+     */
+    private static int offsetMillis(String value, int position, int length) {
+        char first = value.charAt(position);
+        if (!isSign(first)) {
+            return namedOffsetMillis(value, position, length);
+        }
+        int remaining = length - position - 1;
+        int hours;
+        int minutes;
+        if (remaining == 2) {
+            hours = numberOrMinusOne(value, position + 1, position + 3);
+            minutes = 0;
+        } else if (remaining == 4) {
+            hours = numberOrMinusOne(value, position + 1, position + 3);
+            minutes = numberOrMinusOne(value, position + 3, position + 5);
+        } else if (remaining == 5 && value.charAt(position + 3) == ':') {
+            hours = numberOrMinusOne(value, position + 1, position + 3);
+            minutes = numberOrMinusOne(value, position + 4, position + 6);
+        } else {
+            return Integer.MIN_VALUE;
+        }
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return Integer.MIN_VALUE;
+        }
+        int offset = (hours * 60 + minutes) * DateTimeConstants.MILLIS_PER_MINUTE;
+        return first == '-' ? -offset : offset;
+    }
+
+    private static int namedOffsetMillis(String value, int position, int length) {
+        switch (value.substring(position, length)) {
+        case "Z":
+        case "UTC":
+        case "GMT":
+        case "WET":
+            return 0;
+        case "BST":
+        case "CET":
+        case "WEST":
+            return DateTimeConstants.MILLIS_PER_HOUR;
+        case "CEST":
+        case "EET":
+            return 2 * DateTimeConstants.MILLIS_PER_HOUR;
+        case "EEST":
+            return 3 * DateTimeConstants.MILLIS_PER_HOUR;
+        default:
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date.
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        int shiftedMonth = month > 2 ? month - 3 : month + 9;
+        long dayOfYear = (153 * shiftedMonth + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+        case 2:
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    private static int number(String value, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    private static int numberOrMinusOne(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isDigit(value.charAt(i))) {
+                return -1;
+            }
+        }
+        return number(value, start, end);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSign(char c) {
+        return c == '+' || c == '-';
+    }
+
+    private static IllegalArgumentException invalid(String value) {
+        return new IllegalArgumentException("Invalid XMLTV date and time: \"" + value + "\"");
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.metabroadcast.nonametv.ingest.process.translate;
+
+/**
+ * Hand-written matchers for the XMLTV values the translator reads. Each accepts
+ * exactly what the regular expression named in its documentation would match
+ * with {@code Matcher.matches()}, and records the bounds of the two captured
+ * numbers in the scratch context instead of allocating groups.
+ */
+final class XmlTvValueParsers {
+
+    private static final int MAX_SAFE_INT_DIGITS = 9;
+
+    private XmlTvValueParsers() {
+    }
+
+    /**
+     * Matches {@code (\d+)\s+\.\s+(\d+)\s+\.}, the season and episode parts of an
+     * {@code xmltv_ns} episode-num with no part number.
+     */
+    static boolean matchXmltvNsSeasonAndEpisode(String value, TranslationScratch scratch) {
+        int length = value.length();
+        int position = 0;
+
+        scratch.firstStart = position;
+        position = skipDigits(value, position, length);
+        scratch.firstEnd = position;
+        if (scratch.firstEnd == scratch.firstStart) {
+            return false;
+        }
+        position = skipDotBetweenWhitespace(value, position, length);
+        if (position < 0) {
+            return false;
+        }
+
+        scratch.secondStart = position;
+        position = skipDigits(value, position, length);
+        scratch.secondEnd = position;
+        if (scratch.secondEnd == scratch.secondStart) {
+            return false;
+        }
+        int afterWhitespace = skipWhitespace(value, position, length);
+        if (afterWhitespace == position) {
+            return false;
+        }
+        return afterWhitespace == length - 1 && value.charAt(afterWhitespace) == '.';
+    }
+
+    /**
+     * Matches {@code ([\d\.]+)\s+/\s+([\d\.]+)}, a star-rating value.
+     */
+    static boolean matchStarRating(String value, TranslationScratch scratch) {
+        int length = value.length();
+        int position = 0;
+
+        scratch.firstStart = position;
+        position = skipDigitsAndDots(value, position, length);
+        scratch.firstEnd = position;
+        if (scratch.firstEnd == scratch.firstStart) {
+            return false;
+        }
+        int afterWhitespace = skipWhitespace(value, position, length);
+        if (afterWhitespace == position || afterWhitespace == length || value.charAt(afterWhitespace) != '/') {
+            return false;
+        }
+        position = afterWhitespace + 1;
+        afterWhitespace = skipWhitespace(value, position, length);
+        if (afterWhitespace == position) {
+            return false;
+        }
+
+        scratch.secondStart = afterWhitespace;
+        scratch.secondEnd = skipDigitsAndDots(value, afterWhitespace, length);
+        return scratch.secondEnd > scratch.secondStart && scratch.secondEnd == length;
+    }
+
+    /**
+     * Parses the ASCII digits between {@code start} and {@code end}. Values too long
+     * to be certain of fitting in an int go through {@link Integer#parseInt} so
+     * that overflow fails exactly as it always has.
+     */
+    static int parseDigits(String value, int start, int end) {
+        if (end - start > MAX_SAFE_INT_DIGITS) {
+            return Integer.parseInt(value.substring(start, end));
+        }
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    private static int skipDotBetweenWhitespace(String value, int position, int length) {
+        int afterWhitespace = skipWhitespace(value, position, length);
+        if (afterWhitespace == position || afterWhitespace == length || value.charAt(afterWhitespace) != '.') {
+            return -1;
+        }
+        position = afterWhitespace + 1;
+        afterWhitespace = skipWhitespace(value, position, length);
+        return afterWhitespace == position ? -1 : afterWhitespace;
+    }
+
+    private static int skipDigits(String value, int position, int length) {
+        while (position < length && isDigit(value.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int skipDigitsAndDots(String value, int position, int length) {
+        while (position < length && (isDigit(value.charAt(position)) || value.charAt(position) == '.')) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int skipWhitespace(String value, int position, int length) {
+        while (position < length && isWhitespace(value.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * The characters matched by {@code \s} without UNICODE_CHARACTER_CLASS.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+}
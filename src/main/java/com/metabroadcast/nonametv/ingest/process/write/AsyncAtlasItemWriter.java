@@ -0,0 +1,257 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+
+/**
+ * Writes items to Atlas's content endpoint without blocking a thread per
+ * request. Requests go through a non-blocking Jetty {@link HttpClient} whose
+ * pool keeps up to {@code maxConnections} keep-alive connections to Atlas, so a
+ * few selector threads can carry many writes at once. At most
+ * {@code maxInFlight} requests are outstanding; further writes wait in a queue
+ * and are sent, in order, as earlier ones complete.
+ * <p>
+ * Each item is serialised by Gson straight into the request body, which is sent
+ * in chunks as it is produced, rather than built up as a string first.
+ * <p>
+ * A write fails with an {@link IllegalArgumentException}, which is not retried,
+ * if Atlas rejects the item as invalid, and with an {@link IOException} if the
+ * request fails or Atlas returns any other error.
+ */
+public class AsyncAtlasItemWriter implements ItemWriter, Closeable {
+
+    private static final int CHUNK_BYTES = 8192;
+    private static final DateTimeFormatter DATE_TIME = ISODateTimeFormat.dateTimeNoMillis().withZone(DateTimeZone.UTC);
+
+    private final HttpClient httpClient;
+    private final String contentUri;
+    private final long timeoutMillis;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Queue<PendingWrite> waiting = new ConcurrentLinkedQueue<>();
+    private final Gson gson = new GsonBuilder()
+        .registerTypeAdapter(Date.class, new IsoDateSerializer())
+        .create();
+
+    /**
+     * @param contentUri the URI of Atlas's content endpoint, including the API key
+     */
+    public AsyncAtlasItemWriter(String contentUri, int maxConnections, int maxInFlight, long timeout, TimeUnit unit)
+            throws Exception {
+        checkArgument(maxConnections > 0, "maxConnections must be positive");
+        checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+        this.contentUri = checkNotNull(contentUri);
+        this.timeoutMillis = unit.toMillis(timeout);
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+
+        QueuedThreadPool threads = new QueuedThreadPool(Math.max(maxConnections / 4, 8), 2);
+        threads.setName("xmltv-atlas-http");
+        threads.setDaemon(true);
+        httpClient = new HttpClient();
+        httpClient.setExecutor(threads);
+        httpClient.setMaxConnectionsPerDestination(maxConnections);
+        httpClient.setMaxRequestsQueuedPerDestination(maxInFlight);
+        httpClient.setConnectTimeout(timeoutMillis);
+        httpClient.setIdleTimeout(TimeUnit.MINUTES.toMillis(1));
+        httpClient.setFollowRedirects(false);
+        httpClient.start();
+    }
+
+    @Override
+    public CompletableFuture<Void> write(Item item) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        waiting.add(new PendingWrite(item, written));
+        sendWaiting();
+        return written;
+    }
+
+    /**
+     * The number of requests sent to Atlas that have not yet completed.
+     */
+    public int inFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * The number of writes waiting for a request to complete before they are sent.
+     */
+    public int waitingCount() {
+        return waiting.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            httpClient.stop();
+        } catch (Exception e) {
+            throw new IOException("Unable to stop the Atlas HTTP client", e);
+        }
+    }
+
+    private void sendWaiting() {
+        while (!waiting.isEmpty() && inFlight.tryAcquire()) {
+            PendingWrite pending = waiting.poll();
+            if (pending == null) {
+                inFlight.release();
+                continue;
+            }
+            send(pending.item, pending.written);
+        }
+    }
+
+    /**
+     * Sends one write, holding a permit taken by the caller. The permit is given
+     * back exactly once: when the request completes or, should it fail to start,
+     * straight away, as the client may or may not also report that failure.
+     */
+    private void send(Item item, CompletableFuture<Void> written) {
+        AtomicBoolean finished = new AtomicBoolean();
+        DeferredContentProvider body = new DeferredContentProvider();
+        Request request;
+        try {
+            request = httpClient.newRequest(contentUri)
+                .method(HttpMethod.POST)
+                .content(body, "application/json; charset=utf-8")
+                .timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            request.send(result -> {
+                if (!finished.compareAndSet(false, true)) {
+                    return;
+                }
+                inFlight.release();
+                Response response = result.getResponse();
+                if (result.isFailed()) {
+                    written.completeExceptionally(new IOException("Unable to write " + item.getUri() + " to Atlas",
+                        result.getFailure()));
+                } else if (response.getStatus() / 100 == 2) {
+                    written.complete(null);
+                } else if (response.getStatus() / 100 == 4 && response.getStatus() != 408 && response.getStatus() != 429) {
+                    written.completeExceptionally(new IllegalArgumentException(String.format(
+                        "Atlas rejected %s: %d %s", item.getUri(), response.getStatus(), response.getReason())));
+                } else {
+                    written.completeExceptionally(new IOException(String.format(
+                        "Atlas failed to write %s: %d %s", item.getUri(), response.getStatus(), response.getReason())));
+                }
+                sendWaiting();
+            });
+        } catch (RuntimeException e) {
+            if (finished.compareAndSet(false, true)) {
+                inFlight.release();
+                written.completeExceptionally(new IOException("Unable to write " + item.getUri() + " to Atlas", e));
+            }
+            return;
+        }
+
+        try (Writer writer = new OutputStreamWriter(new ChunkedBodyStream(body), StandardCharsets.UTF_8)) {
+            gson.toJson(item, writer);
+        } catch (IOException | JsonIOException e) {
+            request.abort(e);
+        }
+    }
+
+    private static final class PendingWrite {
+
+        private final Item item;
+        private final CompletableFuture<Void> written;
+
+        private PendingWrite(Item item, CompletableFuture<Void> written) {
+            this.item = item;
+            this.written = written;
+        }
+    }
+
+    /**
+     * Passes the body to the request a chunk at a time. Each chunk is a new
+     * array, as the request holds on to it until it has been sent.
+     */
+    private static final class ChunkedBodyStream extends OutputStream {
+
+        private final DeferredContentProvider body;
+        private byte[] chunk = new byte[CHUNK_BYTES];
+        private int length;
+
+        private ChunkedBodyStream(DeferredContentProvider body) {
+            this.body = body;
+        }
+
+        @Override
+        public void write(int b) {
+            if (length == chunk.length) {
+                offerChunk();
+            }
+            chunk[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) {
+            while (count > 0) {
+                if (length == chunk.length) {
+                    offerChunk();
+                }
+                int copied = Math.min(count, chunk.length - length);
+                System.arraycopy(bytes, offset, chunk, length, copied);
+                length += copied;
+                offset += copied;
+                count -= copied;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (length > 0) {
+                offerChunk();
+            }
+            body.close();
+        }
+
+        private void offerChunk() {
+            body.offer(ByteBuffer.wrap(chunk, 0, length));
+            chunk = new byte[CHUNK_BYTES];
+            length = 0;
+        }
+    }
+
+    private static final class IsoDateSerializer implements JsonSerializer<Date> {
+
+        @Override
+        public JsonElement serialize(Date date, Type type, JsonSerializationContext context) {
+            return new JsonPrimitive(DATE_TIME.print(date.getTime()));
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.atlasapi.client.AtlasWriteClient;
+import org.atlasapi.media.entity.simple.Item;
+
+/**
+ * Runs blocking {@link AtlasWriteClient} writes on the given executor, whose size
+ * therefore sets the number of concurrent requests to Atlas.
+ * <p>
+ * The client does not say which HTTP status a failed write met, so an item
+ * Atlas rejects as invalid cannot be told apart from Atlas failing, and every
+ * failure is passed on as it was thrown, to be retried. The
+ * {@link AsyncAtlasItemWriter} sees the status, and fails rejected items with an
+ * {@link IllegalArgumentException} instead.
+ */
+public class AtlasItemWriter implements ItemWriter {
+
+    private final AtlasWriteClient atlasWriteClient;
+    private final Executor executor;
+
+    public AtlasItemWriter(AtlasWriteClient atlasWriteClient, Executor executor) {
+        this.atlasWriteClient = checkNotNull(atlasWriteClient);
+        this.executor = checkNotNull(executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> write(Item item) {
+        return CompletableFuture.runAsync(() -> atlasWriteClient.writeItem(item), executor);
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects writes into batches that are flushed once {@code batchSize} writes are
+ * waiting or the oldest has waited {@code maxDelay}. Atlas only accepts one item
+ * per request, so a batch is the unit of coalescing rather than a single request:
+ * when several writes in a batch share a URI only the last is sent, and every
+ * caller for that URI sees its outcome.
+ * <p>
+ * The queue of waiting writes is unbounded; callers are expected to limit how
+ * many writes they have outstanding.
+ */
+public class BatchingItemWriter implements ItemWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchingItemWriter.class);
+
+    private final ItemWriter delegate;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingWrite> pending = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean running = true;
+
+    public BatchingItemWriter(ItemWriter delegate, int batchSize, long maxDelay, TimeUnit maxDelayUnit) {
+        checkArgument(batchSize > 0, "batchSize must be positive");
+        this.delegate = checkNotNull(delegate);
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelayUnit.toNanos(maxDelay);
+
+        flusher = new Thread(this::flushUntilClosed, "xmltv-write-batcher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public CompletableFuture<Void> write(Item item) {
+        PendingWrite write = new PendingWrite(item);
+        closeLock.readLock().lock();
+        try {
+            if (running) {
+                pending.add(write);
+            } else {
+                write.result.completeExceptionally(new IllegalStateException("Writer has been closed"));
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return write.result;
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Flushes writes already queued and stops accepting new ones.
+     */
+    public void close() throws InterruptedException {
+        closeLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        flusher.interrupt();
+        flusher.join();
+    }
+
+    private void flushUntilClosed() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                fill(batch);
+            } catch (InterruptedException e) {
+                // closing: flush what has been collected, then drain the rest below
+            }
+            flush(batch);
+            batch.clear();
+        }
+        pending.drainTo(batch);
+        flush(batch);
+    }
+
+    private void fill(List<PendingWrite> batch) throws InterruptedException {
+        PendingWrite first = pending.take();
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < batchSize) {
+            if (pending.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingWrite next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        Map<String, List<PendingWrite>> byUri = new LinkedHashMap<>();
+        for (PendingWrite write : batch) {
+            List<PendingWrite> writes = byUri.get(write.item.getUri());
+            if (writes == null) {
+                writes = new ArrayList<>(1);
+                byUri.put(write.item.getUri(), writes);
+            }
+            writes.add(write);
+        }
+        if (byUri.size() < batch.size()) {
+            log.debug("Coalesced {} writes into {}", batch.size(), byUri.size());
+        }
+
+        for (List<PendingWrite> writes : byUri.values()) {
+            Item latest = writes.get(writes.size() - 1).item;
+            CompletableFuture<Void> written;
+            try {
+                written = delegate.write(latest);
+            } catch (RuntimeException e) {
+                written = new CompletableFuture<>();
+                written.completeExceptionally(e);
+            }
+            written.whenComplete((ignored, error) -> {
+                for (PendingWrite write : writes) {
+                    if (error == null) {
+                        write.result.complete(null);
+                    } else {
+                        write.result.completeExceptionally(RetryingItemWriter.unwrap(error));
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class PendingWrite {
+
+        private final Item item;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        PendingWrite(Item item) {
+            this.item = checkNotNull(item);
+        }
+
+    }
+
+}
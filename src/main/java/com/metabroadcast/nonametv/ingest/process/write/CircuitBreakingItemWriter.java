@@ -0,0 +1,152 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Stops sending writes to Atlas while it is failing. The breaker is closed
+ * while writes succeed; {@code failureThreshold} consecutive failures open it,
+ * and while it is open every write fails at once with a
+ * {@link CircuitOpenException} rather than waiting on Atlas to time out. Once it
+ * has been open for {@code openDuration} it is half-open: a single trial write
+ * is let through, and the breaker closes if that succeeds or opens again if it
+ * fails. Writes let through before the breaker opened may still complete while
+ * it is half-open; only the trial write's own outcome decides what happens
+ * next.
+ * <p>
+ * Only failures that suggest Atlas is in trouble count; a write rejected as
+ * invalid says nothing about Atlas's health.
+ */
+public class CircuitBreakingItemWriter implements ItemWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakingItemWriter.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private enum Admission {
+        REJECTED,
+        ADMITTED,
+        TRIAL
+    }
+
+    private final ItemWriter delegate;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Ticker ticker;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedNanos;
+    private boolean trialInFlight;
+    private long trips;
+
+    public CircuitBreakingItemWriter(ItemWriter delegate, int failureThreshold, long openDuration, TimeUnit unit) {
+        this(delegate, failureThreshold, openDuration, unit, Ticker.systemTicker());
+    }
+
+    CircuitBreakingItemWriter(ItemWriter delegate, int failureThreshold, long openDuration, TimeUnit unit,
+            Ticker ticker) {
+        checkArgument(failureThreshold > 0, "failureThreshold must be positive");
+        this.delegate = checkNotNull(delegate);
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+        this.ticker = checkNotNull(ticker);
+    }
+
+    @Override
+    public CompletableFuture<Void> write(Item item) {
+        Admission admission = admit();
+        if (admission == Admission.REJECTED) {
+            CompletableFuture<Void> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new CircuitOpenException("Atlas circuit breaker is open"));
+            return rejected;
+        }
+        CompletableFuture<Void> written;
+        try {
+            written = delegate.write(item);
+        } catch (RuntimeException e) {
+            failed(e, admission == Admission.TRIAL);
+            throw e;
+        }
+        return written.whenComplete((ignored, error) -> {
+            if (error == null) {
+                succeeded(admission == Admission.TRIAL);
+            } else {
+                failed(RetryingItemWriter.unwrap(error), admission == Admission.TRIAL);
+            }
+        });
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * The number of times the breaker has opened.
+     */
+    public synchronized long trips() {
+        return trips;
+    }
+
+    private synchronized Admission admit() {
+        switch (state) {
+        case OPEN:
+            if (ticker.read() - openedNanos < openNanos) {
+                return Admission.REJECTED;
+            }
+            log.info("Atlas circuit breaker is half-open, trying a write");
+            state = State.HALF_OPEN;
+            trialInFlight = true;
+            return Admission.TRIAL;
+        case HALF_OPEN:
+            if (trialInFlight) {
+                return Admission.REJECTED;
+            }
+            trialInFlight = true;
+            return Admission.TRIAL;
+        default:
+            return Admission.ADMITTED;
+        }
+    }
+
+    private synchronized void succeeded(boolean trial) {
+        consecutiveFailures = 0;
+        if (trial && state == State.HALF_OPEN) {
+            log.info("Atlas circuit breaker is closed");
+            state = State.CLOSED;
+            trialInFlight = false;
+        }
+    }
+
+    private synchronized void failed(Throwable error, boolean trial) {
+        if (error instanceof IllegalArgumentException || error instanceof NullPointerException) {
+            if (trial && state == State.HALF_OPEN) {
+                trialInFlight = false;
+            }
+            return;
+        }
+        consecutiveFailures++;
+        if ((trial && state == State.HALF_OPEN) || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            log.warn("Atlas circuit breaker is open after {} consecutive failed writes, the last: {}",
+                consecutiveFailures, error.toString());
+            state = State.OPEN;
+            openedNanos = ticker.read();
+            trialInFlight = false;
+            trips++;
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+/**
+ * Fails a write that was not attempted because Atlas has been failing and the
+ * {@link CircuitBreakingItemWriter} in front of it is open.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+
+}
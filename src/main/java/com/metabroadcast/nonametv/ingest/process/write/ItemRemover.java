@@ -0,0 +1,14 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Removes items whose slots have disappeared from the schedule. As with
+ * {@link ItemWriter}, a removal has only succeeded once the returned future
+ * completes normally, and implementations must not block the caller.
+ */
+public interface ItemRemover {
+
+    CompletableFuture<Void> remove(String itemUri);
+
+}
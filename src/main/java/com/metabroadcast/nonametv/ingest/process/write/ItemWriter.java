@@ -0,0 +1,16 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.atlasapi.media.entity.simple.Item;
+
+/**
+ * Writes items to Atlas. Implementations may queue, batch or retry writes, so a
+ * write has only succeeded once the returned future completes normally.
+ * Implementations must not block the caller for the duration of the write.
+ */
+public interface ItemWriter {
+
+    CompletableFuture<Void> write(Item item);
+
+}
@@ -0,0 +1,26 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reports removals in the log without changing Atlas, whose write client has no
+ * way to delete an item. Operators can act on the log until removals can be
+ * written. As the item is still in Atlas, every removal fails, so that nothing
+ * is forgotten as though it had been removed.
+ */
+public class LoggingItemRemover implements ItemRemover {
+
+    private static final Logger log = LoggerFactory.getLogger(LoggingItemRemover.class);
+
+    @Override
+    public CompletableFuture<Void> remove(String itemUri) {
+        log.info("Item {} has disappeared from the schedule", itemUri);
+        CompletableFuture<Void> removed = new CompletableFuture<>();
+        removed.completeExceptionally(new IllegalStateException("removals cannot be written to Atlas"));
+        return removed;
+    }
+
+}
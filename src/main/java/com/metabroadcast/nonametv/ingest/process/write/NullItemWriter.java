@@ -0,0 +1,26 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.atlasapi.media.entity.simple.Item;
+
+/**
+ * Discards every item, completing each write at once. Used for dry runs, which
+ * measure the pipeline up to the point of writing without touching Atlas.
+ */
+public class NullItemWriter implements ItemWriter {
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    @Override
+    public CompletableFuture<Void> write(Item item) {
+        discarded.incrementAndGet();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public long discardedCount() {
+        return discarded.get();
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.atlasapi.media.entity.simple.Item;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Caps the rate of writes passed to the delegate with a token bucket that holds
+ * up to a second's worth of permits, so short bursts go straight through while
+ * the sustained rate stays below the Atlas throttling threshold. A write that
+ * finds the bucket empty never blocks its caller: it joins a queue, which a
+ * single task on the scheduler drains in order as permits become due, so
+ * however many writes are waiting the scheduler wakes once per permit.
+ */
+public class RateLimitedItemWriter implements ItemWriter {
+
+    private final ItemWriter delegate;
+    private final RateLimiter rateLimiter;
+    private final ScheduledExecutorService scheduler;
+    private final long permitIntervalNanos;
+    private final Queue<PendingWrite> waiting = new ArrayDeque<>();
+    private boolean drainScheduled;
+
+    public RateLimitedItemWriter(ItemWriter delegate, double writesPerSecond, ScheduledExecutorService scheduler) {
+        checkArgument(writesPerSecond > 0, "writesPerSecond must be positive");
+        this.delegate = checkNotNull(delegate);
+        this.rateLimiter = RateLimiter.create(writesPerSecond);
+        this.scheduler = checkNotNull(scheduler);
+        this.permitIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / writesPerSecond));
+    }
+
+    @Override
+    public CompletableFuture<Void> write(Item item) {
+        PendingWrite pending;
+        List<PendingWrite> rejected;
+        synchronized (this) {
+            if (waiting.isEmpty() && rateLimiter.tryAcquire()) {
+                pending = null;
+                rejected = null;
+            } else {
+                pending = new PendingWrite(item);
+                waiting.add(pending);
+                rejected = scheduleDrain();
+            }
+        }
+        if (pending == null) {
+            return delegate.write(item);
+        }
+        fail(rejected);
+        return pending.written;
+    }
+
+    /**
+     * The number of writes waiting for a permit.
+     */
+    public synchronized int waitingCount() {
+        return waiting.size();
+    }
+
+    private void drain() {
+        List<PendingWrite> ready = new ArrayList<>();
+        List<PendingWrite> rejected;
+        synchronized (this) {
+            drainScheduled = false;
+            while (!waiting.isEmpty() && rateLimiter.tryAcquire()) {
+                ready.add(waiting.poll());
+            }
+            rejected = scheduleDrain();
+        }
+        for (PendingWrite pending : ready) {
+            send(pending);
+        }
+        fail(rejected);
+    }
+
+    /**
+     * Schedules the queue to be drained once the next permit is due, unless it is
+     * empty or a drain is already scheduled. Should the scheduler refuse, the
+     * writes waiting are taken off the queue and returned, to be failed once the
+     * lock is released.
+     */
+    private List<PendingWrite> scheduleDrain() {
+        if (drainScheduled || waiting.isEmpty()) {
+            return null;
+        }
+        try {
+            scheduler.schedule(this::drain, permitIntervalNanos, TimeUnit.NANOSECONDS);
+            drainScheduled = true;
+            return null;
+        } catch (RejectedExecutionException e) {
+            List<PendingWrite> rejected = new ArrayList<>(waiting);
+            waiting.clear();
+            return rejected;
+        }
+    }
+
+    private void send(PendingWrite pending) {
+        try {
+            delegate.write(pending.item).whenComplete((ignored, error) -> {
+                if (error == null) {
+                    pending.written.complete(null);
+                } else {
+                    pending.written.completeExceptionally(RetryingItemWriter.unwrap(error));
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.written.completeExceptionally(e);
+        }
+    }
+
+    private static void fail(List<PendingWrite> rejected) {
+        if (rejected != null) {
+            for (PendingWrite pending : rejected) {
+                pending.written.completeExceptionally(
+                    new RejectedExecutionException("Unable to schedule the write of " + pending.item.getUri()));
+            }
+        }
+    }
+
+    private static final class PendingWrite {
+
+        private final Item item;
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        private PendingWrite(Item item) {
+            this.item = item;
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries failed writes with exponential backoff and full jitter: the nth retry
+ * waits a random time between zero and {@code min(maxBackoff, initialBackoff * 2^(n-1))},
+ * which keeps many writers that failed together from retrying together.
+ * Failures that are not transient are passed straight back.
+ */
+public class RetryingItemWriter implements ItemWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryingItemWriter.class);
+
+    private final ItemWriter delegate;
+    private final ScheduledExecutorService scheduler;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    public RetryingItemWriter(ItemWriter delegate, ScheduledExecutorService scheduler,
+            int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        checkArgument(maxAttempts > 0, "maxAttempts must be positive");
+        this.delegate = checkNotNull(delegate);
+        this.scheduler = checkNotNull(scheduler);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    @Override
+    public CompletableFuture<Void> write(Item item) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        attempt(item, 1, result);
+        return result;
+    }
+
+    private void attempt(Item item, int attempt, CompletableFuture<Void> result) {
+        CompletableFuture<Void> write;
+        try {
+            write = delegate.write(item);
+        } catch (RuntimeException e) {
+            write = new CompletableFuture<>();
+            write.completeExceptionally(e);
+        }
+        write.whenComplete((ignored, error) -> {
+            if (error == null) {
+                result.complete(null);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (attempt >= maxAttempts || !isTransient(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            long backoff = backoffMillis(attempt);
+            log.debug("Write of {} failed on attempt {}, retrying in {}ms", item.getUri(), attempt, backoff, cause);
+            scheduler.schedule(() -> attempt(item, attempt + 1, result), backoff, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private long backoffMillis(int attempt) {
+        long ceiling = initialBackoffMillis << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffMillis) {
+            ceiling = maxBackoffMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Bad input will fail however often it is retried, and a write refused by an
+     * open circuit breaker should not be retried into it; everything else, such
+     * as timeouts and 5xx responses surfacing from the client, is worth another go.
+     */
+    private boolean isTransient(Throwable error) {
+        return !(error instanceof IllegalArgumentException || error instanceof NullPointerException
+            || error instanceof CircuitOpenException);
+    }
+
+    static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+}
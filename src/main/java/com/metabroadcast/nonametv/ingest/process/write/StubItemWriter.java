@@ -0,0 +1,50 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.atlasapi.media.entity.simple.Item;
+
+/**
+ * Stands in for Atlas in load tests. Each write completes after a fixed latency
+ * and fails with the given probability, without any network traffic.
+ */
+public class StubItemWriter implements ItemWriter {
+
+    private final ScheduledExecutorService scheduler;
+    private final long latencyMillis;
+    private final double failureRate;
+    private final AtomicLong written = new AtomicLong();
+
+    public StubItemWriter(ScheduledExecutorService scheduler, long latencyMillis, double failureRate) {
+        checkArgument(failureRate >= 0 && failureRate <= 1, "failureRate must be between 0 and 1");
+        this.scheduler = checkNotNull(scheduler);
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public CompletableFuture<Void> write(Item item) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        scheduler.schedule(() -> {
+            if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                result.completeExceptionally(new RuntimeException("Simulated Atlas failure writing " + item.getUri()));
+            } else {
+                written.incrementAndGet();
+                result.complete(null);
+            }
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    public long writtenCount() {
+        return written.get();
+    }
+
+}
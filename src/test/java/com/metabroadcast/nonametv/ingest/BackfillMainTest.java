@@ -0,0 +1,122 @@
+package com.metabroadcast.nonametv.ingest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.io.Files;
+import com.metabroadcast.nonametv.ingest.process.XmlTvFileProcessor;
+import com.metabroadcast.nonametv.ingest.process.parse.StreamingXmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvParsingContext;
+
+@RunWith(JUnit4.class)
+public class BackfillMainTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File january;
+    private File february;
+    private File notes;
+    private File march;
+
+    @Before
+    public void setUp() throws Exception {
+        february = temporaryFolder.newFile("2015-02-01.xml.gz");
+        january = temporaryFolder.newFile("2015-01-01.xml.gz");
+        notes = temporaryFolder.newFile("notes.txt");
+        File archived = temporaryFolder.newFolder("archived");
+        march = new File(archived, "2015-03-01.xml.gz");
+        march.createNewFile();
+    }
+
+    @Test
+    public void feedFiles_listsADirectoryInNameOrderWithoutDescending() throws Exception {
+        assertEquals(Arrays.asList(january, february, notes),
+            BackfillMain.feedFiles(temporaryFolder.getRoot().getPath()));
+    }
+
+    @Test
+    public void feedFiles_matchesAGlobAcrossDirectories() throws Exception {
+        assertEquals(Arrays.asList(january, february),
+            BackfillMain.feedFiles(new File(temporaryFolder.getRoot(), "*.xml.gz").getPath()));
+        assertEquals(Arrays.asList(january, february, march),
+            BackfillMain.feedFiles(new File(temporaryFolder.getRoot(), "**.xml.gz").getPath()));
+    }
+
+    @Test
+    public void processAll_letsTheNewerOfTwoOverlappingFilesWinWhicheverStartsFirst() throws Exception {
+        File older = feed("2015-01-05.xml", "Lie to Me");
+        File newer = feed("2015-01-06.xml", "Castle");
+        Map<String, Item> written = new ConcurrentHashMap<>();
+        XmlTvFileProcessor processor = XmlTvFileProcessor.builder(item -> {
+                    written.put(item.getUri(), item);
+                    return CompletableFuture.completedFuture(null);
+                }, new StreamingXmlTvParser(new XmlTvParsingContext()), temporaryFolder.getRoot())
+            .checkpointCommitInterval(1)
+            .translateConcurrency(2, 1)
+            .maxPendingWrites(2)
+            .writeBufferBytes(0)
+            .fileParallelism(2)
+            .build();
+        AtomicBoolean delayed = new AtomicBoolean();
+        ThreadPoolExecutor fileExecutor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()) {
+
+            @Override
+            public void execute(Runnable command) {
+                if (delayed.compareAndSet(false, true)) {
+                    super.execute(() -> {
+                        try {
+                            Thread.sleep(500);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        command.run();
+                    });
+                } else {
+                    super.execute(command);
+                }
+            }
+        };
+
+        BackfillMain.processAll(processor, Arrays.asList(older, newer), fileExecutor);
+
+        fileExecutor.shutdown();
+        processor.shutdown();
+        assertEquals("Castle",
+            written.get("http://nonametv.org/foxtv.no20150106023500+010020150106033000+0100").getTitle());
+    }
+
+    private File feed(String name, String title) throws Exception {
+        File feed = temporaryFolder.newFile(name);
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<tv>\n"
+            + "    <channel id=\"foxtv.no\">\n"
+            + "        <display-name lang=\"no\">FOX</display-name>\n"
+            + "    </channel>\n"
+            + "    <programme channel=\"foxtv.no\" start=\"20150106023500 +0100\" stop=\"20150106033000 +0100\">\n"
+            + "        <title lang=\"no\">" + title + "</title>\n"
+            + "    </programme>\n"
+            + "</tv>", feed, StandardCharsets.UTF_8);
+        return feed;
+    }
+
+}
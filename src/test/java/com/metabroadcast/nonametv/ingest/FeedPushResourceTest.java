@@ -0,0 +1,98 @@
+package com.metabroadcast.nonametv.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.io.ByteStreams;
+import com.metabroadcast.common.ingest.s3.process.ProcessingResult;
+import com.metabroadcast.nonametv.ingest.process.XmlTvFileProcessor;
+import com.metabroadcast.nonametv.ingest.process.parse.FeedInput;
+
+@RunWith(JUnit4.class)
+public class FeedPushResourceTest {
+
+    private final XmlTvFileProcessor processor = mock(XmlTvFileProcessor.class);
+    private final HttpHeaders headers = mock(HttpHeaders.class);
+
+    @Before
+    public void setUp() {
+        when(headers.getLength()).thenReturn(-1);
+        when(processor.process(anyString(), any(FeedInput.class))).thenAnswer(invocation -> {
+            try (FeedInput input = (FeedInput) invocation.getArguments()[1]) {
+                ByteStreams.toByteArray(input.stream());
+            } catch (IOException e) {
+                return ProcessingResult.builder().error(e.getMessage()).build();
+            }
+            return ProcessingResult.builder().build();
+        });
+    }
+
+    @Test
+    public void push_refusesFeedsLargerThanTheLimitsWhetherDeclaredReadOrInflated() throws Exception {
+        FeedPushResource resource = new FeedPushResource(processor, 1, 1000, 2000);
+
+        assertEquals(200, resource.push("small.xml", headers, new ByteArrayInputStream(new byte[1000])).getStatus());
+        assertEquals(200, resource.push(null, headers, new ByteArrayInputStream(gzipped(2000))).getStatus());
+        assertEquals(413, resource.push(null, headers, new ByteArrayInputStream(new byte[1001])).getStatus());
+        assertEquals(413, resource.push(null, headers, new ByteArrayInputStream(gzipped(2001))).getStatus());
+
+        when(headers.getLength()).thenReturn(1001);
+        assertEquals(413, resource.push(null, headers, new ByteArrayInputStream(new byte[0])).getStatus());
+    }
+
+    @Test
+    public void push_turnsAwayPushesBeyondTheConcurrencyLimit() throws Exception {
+        CountDownLatch processing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            processing.countDown();
+            release.await();
+            return ProcessingResult.builder().build();
+        }).when(processor).process(eq("slow.xml"), any(FeedInput.class));
+        FeedPushResource resource = new FeedPushResource(processor, 1, 1000, 1000);
+
+        CompletableFuture<Response> slow = CompletableFuture.supplyAsync(
+            () -> resource.push("slow.xml", headers, new ByteArrayInputStream(new byte[10])));
+        processing.await(10, TimeUnit.SECONDS);
+        assertEquals(1, resource.inProgress());
+
+        Response turnedAway = resource.push("next.xml", headers, new ByteArrayInputStream(new byte[10]));
+        assertEquals(503, turnedAway.getStatus());
+        assertEquals("30", turnedAway.getHeaderString(HttpHeaders.RETRY_AFTER));
+
+        release.countDown();
+        assertEquals(200, slow.get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(0, resource.inProgress());
+        assertEquals(200, resource.push("next.xml", headers, new ByteArrayInputStream(new byte[10])).getStatus());
+    }
+
+    private static byte[] gzipped(int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(new byte[length]);
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.metabroadcast.nonametv.ingest.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+
+@RunWith(JUnit4.class)
+public class SlotWriteSequencerTest {
+
+    private static final String URI = "http://nonametv.org/foxtv.no20150106014000+010020150106023500+0100";
+
+    private final SlotWriteSequencer sequencer = new SlotWriteSequencer();
+
+    @Test
+    public void write_dropsAWriteFromAnOlderFileOnceANewerOneHasWritten() {
+        long older = sequencer.fileStarted();
+        long newer = sequencer.fileStarted();
+
+        assertTrue(sequencer.write(URI, newer, () -> CompletableFuture.completedFuture(null)).join());
+        sequencer.fileFinished(newer);
+
+        assertFalse(sequencer.write(URI, older, () -> {
+            throw new AssertionError("The older file's write should not run");
+        }).join());
+    }
+
+    @Test
+    public void write_runsWritesToTheSameUriInTurn() {
+        long older = sequencer.fileStarted();
+        long newer = sequencer.fileStarted();
+        List<String> order = new ArrayList<>();
+        CompletableFuture<Void> olderWrite = new CompletableFuture<>();
+
+        CompletableFuture<Boolean> first = sequencer.write(URI, older, () -> {
+            order.add("older");
+            return olderWrite;
+        });
+        CompletableFuture<Boolean> second = sequencer.write(URI, newer, () -> {
+            order.add("newer");
+            return CompletableFuture.completedFuture(null);
+        });
+        assertEquals(ImmutableList.of("older"), order);
+
+        olderWrite.completeExceptionally(new RuntimeException("Atlas unavailable"));
+        assertTrue(second.join());
+        assertTrue(first.isCompletedExceptionally());
+        assertEquals(ImmutableList.of("older", "newer"), order);
+    }
+
+    @Test
+    public void fileFinished_forgetsSlotsOnceNoOlderFileIsInFlight() {
+        long older = sequencer.fileStarted();
+        long newer = sequencer.fileStarted();
+        sequencer.write(URI, newer, () -> CompletableFuture.completedFuture(null)).join();
+
+        sequencer.fileFinished(newer);
+        assertEquals(1, sequencer.size());
+
+        sequencer.fileFinished(older);
+        assertEquals(0, sequencer.size());
+    }
+
+}
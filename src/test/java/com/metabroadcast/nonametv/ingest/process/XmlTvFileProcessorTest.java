@@ -0,0 +1,401 @@
+package com.metabroadcast.nonametv.ingest.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.atlasapi.client.AtlasWriteClient;
+import org.atlasapi.media.entity.simple.Item;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.metabroadcast.nonametv.ingest.process.channel.ChannelRegistry;
+import com.metabroadcast.nonametv.ingest.process.dedup.BrandWriteCache;
+import com.metabroadcast.nonametv.ingest.process.dedup.ItemFingerprintStore;
+import com.metabroadcast.nonametv.ingest.process.dedup.ItemFingerprinter;
+import com.metabroadcast.nonametv.ingest.process.delta.ScheduleIndex;
+import com.metabroadcast.nonametv.ingest.process.metrics.IngestMetrics;
+import com.metabroadcast.nonametv.ingest.process.parse.FeedInput;
+import com.metabroadcast.nonametv.ingest.process.parse.StreamingXmlTvParser;
+import com.metabroadcast.nonametv.ingest.process.parse.XmlTvParsingContext;
+import com.metabroadcast.nonametv.ingest.process.write.AtlasItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.CircuitBreakingItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.ItemRemover;
+import com.metabroadcast.nonametv.ingest.process.write.ItemWriter;
+import com.metabroadcast.nonametv.ingest.process.write.LoggingItemRemover;
+
+@RunWith(JUnit4.class)
+public class XmlTvFileProcessorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private AtlasWriteClient atlasWriteClient;
+
+    private final List<XmlTvFileProcessor> processors = new ArrayList<>();
+
+    private IngestMetrics metrics;
+
+    private List<String> removedUris;
+
+    private ItemRemover itemRemover;
+
+    private XmlTvFileProcessor processor;
+
+    private File feed;
+
+    @Before
+    public void setUp() throws Exception {
+        atlasWriteClient = mock(AtlasWriteClient.class);
+
+        metrics = new IngestMetrics();
+        removedUris = new CopyOnWriteArrayList<>();
+        itemRemover = uri -> {
+            removedUris.add(uri);
+            return CompletableFuture.completedFuture(null);
+        };
+
+        processor = processor(new AtlasItemWriter(atlasWriteClient, Runnable::run));
+
+        feed = new File(Resources.getResource(StreamingXmlTvParser.class, "validFeed.xml").toURI());
+    }
+
+    private XmlTvFileProcessor processor(ItemWriter itemWriter) throws Exception {
+        File root = temporaryFolder.getRoot();
+        XmlTvFileProcessor processor = XmlTvFileProcessor.builder(itemWriter,
+                new StreamingXmlTvParser(new XmlTvParsingContext()), root)
+            .channelRegistry(new ChannelRegistry(new File(root, "channels.tsv")))
+            .brandWriteCache(new BrandWriteCache(new ItemFingerprinter(), 100, 1, TimeUnit.HOURS))
+            .itemFingerprintStore(new ItemFingerprintStore(new File(root, "item-fingerprints.tsv"), 36500,
+                TimeUnit.DAYS))
+            .scheduleIndex(new ScheduleIndex(new File(root, "schedule-index.tsv"), 36500, TimeUnit.DAYS))
+            .itemRemover(itemRemover)
+            .checkpointCommitInterval(1)
+            .translateConcurrency(2, 1)
+            .maxPendingWrites(2)
+            .writeBufferBytes(0)
+            .maximumSymbols(100)
+            .errorBudget(100)
+            .fileParallelism(2)
+            .metrics(metrics)
+            .build();
+        processors.add(processor);
+        return processor;
+    }
+
+    @After
+    public void tearDown() {
+        for (XmlTvFileProcessor processor : processors) {
+            processor.shutdown();
+        }
+    }
+
+    @Test
+    public void process_writesBrandAndItemForEveryProgrammeBeforeReturning() {
+        processor.process("validFeed.xml", feed);
+        verify(atlasWriteClient, times(6)).writeItem(any(Item.class));
+    }
+
+    @Test
+    public void process_skipsItemsUnchangedSinceTheLastFile() {
+        processor.process("validFeed.xml", feed);
+        processor.process("validFeed.xml", feed);
+        verify(atlasWriteClient, times(6)).writeItem(any(Item.class));
+    }
+
+    @Test
+    public void process_rewritesItemsWhoseWriteFailed() {
+        doThrow(new RuntimeException("Atlas unavailable")).when(atlasWriteClient).writeItem(any(Item.class));
+        processor.process("validFeed.xml", feed);
+        processor.process("validFeed.xml", feed);
+        verify(atlasWriteClient, times(6)).writeItem(any(Item.class));
+    }
+
+    @Test
+    public void process_resumesAFileFromItsCheckpointRetryingOnlyFailedProgrammes() {
+        doThrow(new RuntimeException("Atlas unavailable")).doNothing().when(atlasWriteClient).writeItem(any(Item.class));
+        processor.process("validFeed.xml", feed);
+        assertEquals(3, metrics.lastFile().getProgrammes());
+
+        processor.process("validFeed.xml", feed);
+        assertTrue(processor.failedFiles().isEmpty());
+        assertEquals(1, metrics.lastFile().getProgrammes());
+        assertEquals(0, new File(temporaryFolder.getRoot(), "checkpoints").list().length);
+
+        processor.process("validFeed.xml", feed);
+        assertEquals(3, metrics.lastFile().getProgrammes());
+    }
+
+    @Test
+    public void process_completesWhenEveryWriteFails() {
+        doThrow(new RuntimeException("Atlas unavailable")).when(atlasWriteClient).writeItem(any(Item.class));
+        processor.process("validFeed.xml", feed);
+        verify(atlasWriteClient, times(3)).writeItem(any(Item.class));
+    }
+
+    @Test
+    public void process_reportsAFileAsFailedUntilARunOfItHasNoFailedWrites() throws Exception {
+        doThrow(new RuntimeException("Atlas unavailable")).doNothing().when(atlasWriteClient).writeItem(any(Item.class));
+        processor.process("validFeed.xml", feed);
+        assertEquals(ImmutableSet.of("validFeed.xml"), processor.failedFiles());
+
+        File other = temporaryFolder.newFile("other.xml");
+        Files.write("<tv></tv>", other, StandardCharsets.UTF_8);
+        processor.process("other.xml", other);
+        assertEquals(ImmutableSet.of("validFeed.xml"), processor.failedFiles());
+
+        processor.process("validFeed.xml", feed);
+        assertTrue(processor.failedFiles().isEmpty());
+    }
+
+    @Test
+    public void process_stopsEarlyAndMarksTheFileForRetryOnceTheCircuitBreakerOpens() throws Exception {
+        doThrow(new RuntimeException("Atlas unavailable")).when(atlasWriteClient).writeItem(any(Item.class));
+        processor = processor(new CircuitBreakingItemWriter(new AtlasItemWriter(atlasWriteClient, Runnable::run),
+            1, 1, TimeUnit.HOURS));
+
+        processor.process("validFeed.xml", feed);
+
+        verify(atlasWriteClient, atMost(2)).writeItem(any(Item.class));
+        assertEquals(ImmutableSet.of("validFeed.xml"), processor.failedFiles());
+        assertEquals(ImmutableSet.of("validFeed.xml"), processor.filesAwaitingRetry());
+    }
+
+    @Test
+    public void process_buffersMoreProgrammesThanAPhaserCouldTrackWhileWritesStall() throws Exception {
+        int programmes = 70000;
+        File large = feedOf(programmes);
+
+        List<CompletableFuture<Void>> stalled = new CopyOnWriteArrayList<>();
+        AtomicBoolean released = new AtomicBoolean();
+        processor = processor(item -> {
+            if (released.get()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> write = new CompletableFuture<>();
+            stalled.add(write);
+            return write;
+        });
+        XmlTvFileProcessor stallingProcessor = processor;
+        Thread releaser = new Thread(() -> {
+            while (stallingProcessor.bufferedWrites() < 65536) {
+                Thread.yield();
+            }
+            released.set(true);
+            for (CompletableFuture<Void> write : stalled) {
+                write.complete(null);
+            }
+        });
+        releaser.start();
+
+        processor.process("large.xml", large);
+
+        releaser.join();
+        assertTrue(processor.failedFiles().isEmpty());
+        assertEquals(0, processor.bufferedWrites());
+        assertEquals(programmes, metrics.lastFile().getProgrammes());
+    }
+
+    @Test
+    public void process_stopsAPushedFeedThatPassesItsSizeLimitHalfwayWithoutWritingWhatWasBuffered()
+            throws Exception {
+        File large = feedOf(2000);
+        FeedInput input = FeedInput.open(new FileInputStream(large), "large.xml", large.length() / 2,
+            Long.MAX_VALUE);
+
+        List<CompletableFuture<Void>> stalled = new CopyOnWriteArrayList<>();
+        AtomicBoolean released = new AtomicBoolean();
+        AtomicInteger writes = new AtomicInteger();
+        processor = processor(item -> {
+            writes.incrementAndGet();
+            if (released.get()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> write = new CompletableFuture<>();
+            stalled.add(write);
+            return write;
+        });
+        Thread releaser = new Thread(() -> {
+            while (!input.exceededLimit()) {
+                Thread.yield();
+            }
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            released.set(true);
+            for (CompletableFuture<Void> write : stalled) {
+                write.complete(null);
+            }
+        });
+        releaser.start();
+
+        processor.process("large.xml", input);
+
+        releaser.join();
+        assertTrue(input.exceededLimit());
+        assertTrue(metrics.lastFile().getProgrammes() > 500);
+        assertTrue(writes.get() < 100);
+        assertEquals(ImmutableSet.of("large.xml"), processor.failedFiles());
+        assertEquals(0, processor.bufferedWrites());
+    }
+
+    @Test
+    public void process_recordsStageLatenciesAndWriteOutcomes() {
+        doThrow(new RuntimeException("Atlas unavailable")).when(atlasWriteClient).writeItem(any(Item.class));
+        processor.process("validFeed.xml", feed);
+
+        IngestMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(ImmutableSet.of("validFeed.xml"), processor.failedFiles());
+        assertEquals(1, snapshot.getFiles());
+        assertEquals(1, snapshot.getFailedFiles());
+        assertEquals(3, snapshot.getProgrammes());
+        assertEquals(feed.length(), snapshot.getBytesRead());
+        assertEquals(feed.length(), snapshot.getUncompressedBytes());
+        assertEquals(3, snapshot.getStageLatencies().get("parse").getCount());
+        assertEquals(3, snapshot.getStageLatencies().get("translate").getCount());
+        assertEquals(3, snapshot.getAtlasWrites().get("brand write").getFailed());
+        assertEquals(0, snapshot.getAtlasWrites().get("item write").getAttempted());
+        assertEquals(1.0, snapshot.getAtlasWrites().get("brand write").getErrorRate(), 0.0);
+    }
+
+    @Test
+    public void process_decompressesAGzippedFeedWithoutWritingItToDisk() throws Exception {
+        File gzipped = temporaryFolder.newFile("validFeed.xml.gz");
+        try (OutputStream output = new GZIPOutputStream(new FileOutputStream(gzipped))) {
+            Files.copy(feed, output);
+        }
+
+        processor.process("validFeed.xml.gz", gzipped);
+
+        verify(atlasWriteClient, times(6)).writeItem(any(Item.class));
+        assertEquals(6, temporaryFolder.getRoot().list().length);
+        IngestMetrics.FileSummary lastFile = metrics.lastFile();
+        assertEquals(gzipped.length(), lastFile.getBytesRead());
+        assertEquals(feed.length(), lastFile.getUncompressedBytes());
+    }
+
+    @Test
+    public void process_readsAPushedFeedFromAStreamWithoutCheckpointingIt() throws Exception {
+        processor.process("pushed.xml", FeedInput.open(new FileInputStream(feed), "pushed.xml"));
+
+        verify(atlasWriteClient, times(6)).writeItem(any(Item.class));
+        String[] checkpoints = new File(temporaryFolder.getRoot(), "checkpoints").list();
+        assertTrue(checkpoints == null || checkpoints.length == 0);
+        assertEquals(feed.length(), metrics.lastFile().getBytesRead());
+    }
+
+    @Test
+    public void process_removesSlotsThatDisappearFromTheScheduleWithinTheFilesWindow() throws Exception {
+        processor.process("validFeed.xml", feed);
+
+        File rescheduled = temporaryFolder.newFile("rescheduled.xml");
+        Files.write(Files.toString(feed, StandardCharsets.UTF_8).replace(
+            "<programme channel=\"foxtv.no\" start=\"20150106023500 +0100\" stop=\"20150106033000 +0100\">\n"
+                + "        <title lang=\"no\">Lie to Me</title>\n"
+                + "    </programme>",
+            "<programme channel=\"foxtv.no\" start=\"20150106023500 +0100\" stop=\"20150106030000 +0100\">\n"
+                + "        <title lang=\"no\">Bones</title>\n"
+                + "    </programme>\n"
+                + "    <programme channel=\"foxtv.no\" start=\"20150106030000 +0100\" stop=\"20150106033000 +0100\">\n"
+                + "        <title lang=\"no\">Castle</title>\n"
+                + "    </programme>"), rescheduled, StandardCharsets.UTF_8);
+        processor.process("rescheduled.xml", rescheduled);
+
+        assertEquals(ImmutableList.of("http://nonametv.org/foxtv.no20150106023500+010020150106033000+0100"),
+            removedUris);
+        verify(atlasWriteClient, times(10)).writeItem(any(Item.class));
+
+        processor.process("rescheduled.xml", rescheduled);
+        assertEquals(1, removedUris.size());
+    }
+
+    @Test
+    public void process_forgetsNothingWhenARemovalCannotBeWritten() throws Exception {
+        itemRemover = new LoggingItemRemover();
+        processor = processor(new AtlasItemWriter(atlasWriteClient, Runnable::run));
+        processor.process("validFeed.xml", feed);
+
+        File rescheduled = temporaryFolder.newFile("rescheduled.xml");
+        Files.write(Files.toString(feed, StandardCharsets.UTF_8).replace(
+            "<programme channel=\"foxtv.no\" start=\"20150106023500 +0100\" stop=\"20150106033000 +0100\">\n"
+                + "        <title lang=\"no\">Lie to Me</title>\n"
+                + "    </programme>",
+            "<programme channel=\"foxtv.no\" start=\"20150106024000 +0100\" stop=\"20150106033000 +0100\">\n"
+                + "        <title lang=\"no\">Bones</title>\n"
+                + "    </programme>"), rescheduled, StandardCharsets.UTF_8);
+        processor.process("rescheduled.xml", rescheduled);
+        assertEquals(ImmutableSet.of("rescheduled.xml"), processor.failedFiles());
+
+        processor.process("rescheduled.xml", rescheduled);
+        assertEquals(ImmutableSet.of("rescheduled.xml"), processor.failedFiles());
+        assertEquals(ImmutableSet.of("brand write", "item write"), metrics.snapshot().getAtlasWrites().keySet());
+    }
+
+    @Test
+    public void process_skipsASlotListedTwiceOnAChannelHoweverItsTimesAreWritten() throws Exception {
+        File duplicated = temporaryFolder.newFile("duplicated.xml");
+        Files.write(Files.toString(feed, StandardCharsets.UTF_8).replace(
+            "</tv>",
+            "    <programme channel=\"foxtv.no\" start=\"20150106004000 +0000\" stop=\"20150106013500 +0000\">\n"
+                + "        <title lang=\"no\">Medium</title>\n"
+                + "    </programme>\n"
+                + "</tv>"), duplicated, StandardCharsets.UTF_8);
+        processor.process("duplicated.xml", duplicated);
+
+        verify(atlasWriteClient, times(6)).writeItem(any(Item.class));
+        assertEquals(Long.valueOf(1), metrics.snapshot().getScheduleAnomalies().get("duplicate slots"));
+    }
+
+    private File feedOf(int programmes) throws Exception {
+        File large = temporaryFolder.newFile("large.xml");
+        try (Writer writer = Files.newWriter(large, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<tv>\n");
+            DateTimeFormatter format = DateTimeFormat.forPattern("yyyyMMddHHmmss Z").withZoneUTC();
+            DateTime start = new DateTime(2015, 1, 6, 0, 0, DateTimeZone.UTC);
+            for (int i = 0; i < programmes; i++) {
+                writer.write(String.format("<programme channel=\"foxtv.no\" start=\"%s\" stop=\"%s\">"
+                    + "<title lang=\"no\">Medium</title></programme>\n",
+                    format.print(start.plusMinutes(i)), format.print(start.plusMinutes(i + 1))));
+            }
+            writer.write("</tv>\n");
+        }
+        return large;
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.metabroadcast.nonametv.ingest.process.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableSet;
+import com.metabroadcast.nonametv.xml.Channel;
+import com.metabroadcast.nonametv.xml.DisplayName;
+import com.metabroadcast.nonametv.xml.Icon;
+
+@RunWith(JUnit4.class)
+public class ChannelRegistryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(temporaryFolder.getRoot(), "channels.tsv");
+    }
+
+    @Test
+    public void broadcastUri_sharesOneUriPerChannelAndReportsUndeclaredChannels() throws Exception {
+        ChannelRegistry registry = new ChannelRegistry(file);
+        registry.register(channel("foxtv.no", "FOX"));
+
+        assertEquals("http://foxtv.no/", registry.broadcastUri("foxtv.no"));
+        assertSame(registry.broadcastUri("foxtv.no"), registry.broadcastUri(new String("foxtv.no")));
+        assertEquals("http://tv2.no/", registry.broadcastUri("tv2.no"));
+        assertSame(registry.broadcastUri("tv2.no"), registry.broadcastUri(new String("tv2.no")));
+        assertEquals(ImmutableSet.of("tv2.no"), registry.unknownChannels());
+
+        registry.register(channel("tv2.no", "TV 2"));
+        assertTrue(registry.unknownChannels().isEmpty());
+    }
+
+    @Test
+    public void flush_persistsChannelsForTheNextInstance() throws Exception {
+        ChannelRegistry registry = new ChannelRegistry(file);
+        Channel fox = channel("foxtv.no", "FOX\tNorge");
+        Icon icon = new Icon();
+        icon.setSrc("http://example.com/fox.png");
+        fox.getIcon().add(icon);
+        registry.register(fox);
+        registry.flush();
+
+        ChannelRegistry reloaded = new ChannelRegistry(file);
+        ChannelRegistry.RegisteredChannel channel = reloaded.channel("foxtv.no");
+        assertEquals("FOX Norge", channel.getDisplayName());
+        assertEquals("http://example.com/fox.png", channel.getIconUri());
+        assertNull(channel.getUrl());
+        assertEquals("http://foxtv.no/", reloaded.broadcastUri("foxtv.no"));
+        assertTrue(reloaded.unknownChannels().isEmpty());
+    }
+
+    private Channel channel(String id, String displayName) {
+        Channel channel = new Channel();
+        channel.setId(id);
+        DisplayName name = new DisplayName();
+        name.setvalue(displayName);
+        channel.getDisplayName().add(name);
+        return channel;
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.metabroadcast.nonametv.ingest.process.checkpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+@RunWith(JUnit4.class)
+public class FileCheckpointTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CheckpointStore store;
+    private File feed;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new CheckpointStore(temporaryFolder.newFolder("checkpoints"), 2);
+        feed = temporaryFolder.newFile("feed.xml");
+        Files.write("<tv/>", feed, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void open_resumesOnlyCommittedProgrammesOtherThanFailedOnes() throws Exception {
+        FileCheckpoint checkpoint = store.open("feed.xml", feed);
+        checkpoint.record(1, Outcome.WRITTEN, ImmutableList.<String>of());
+        checkpoint.record(0, Outcome.FAILED, ImmutableList.<String>of());
+        checkpoint.record(2, Outcome.WRITTEN, ImmutableList.<String>of());
+
+        FileCheckpoint resumed = store.open("feed.xml", feed);
+        assertTrue(resumed.isResumed());
+        assertFalse(resumed.isCompleted(0));
+        assertTrue(resumed.isCompleted(1));
+        assertFalse(resumed.isCompleted(2));
+        assertEquals(0, resumed.offset());
+    }
+
+    @Test
+    public void open_keepsTheMessagesReportedForResumedProgrammes() throws Exception {
+        FileCheckpoint checkpoint = store.open("feed.xml", feed);
+        checkpoint.record(0, Outcome.WARNED, ImmutableList.of("Programme ID: a. Warning: tab\\there", "line\nbreak"));
+        checkpoint.record(1, Outcome.REJECTED, ImmutableList.of("Programme ID: b. Error: bad"));
+        checkpoint.close();
+
+        FileCheckpoint resumed = store.open("feed.xml", feed);
+        assertEquals(2, resumed.offset());
+        assertEquals(2, resumed.resumedEntries().size());
+        FileCheckpoint.Entry warned = resumed.resumedEntries().get(0);
+        assertEquals(Outcome.WARNED, warned.getOutcome());
+        assertEquals(ImmutableList.of("Programme ID: a. Warning: tab\\there", "line\nbreak"), warned.getMessages());
+        assertEquals(Outcome.REJECTED, resumed.resumedEntries().get(1).getOutcome());
+    }
+
+    @Test
+    public void open_discardsACheckpointMadeForDifferentContent() throws Exception {
+        FileCheckpoint checkpoint = store.open("feed.xml", feed);
+        checkpoint.record(0, Outcome.WRITTEN, ImmutableList.<String>of());
+        checkpoint.close();
+
+        Files.write("<tv></tv>", feed, StandardCharsets.UTF_8);
+        assertFalse(store.open("feed.xml", feed).isResumed());
+    }
+
+    @Test
+    public void discard_deletesTheCheckpoint() throws Exception {
+        FileCheckpoint checkpoint = store.open("feed.xml", feed);
+        checkpoint.record(0, Outcome.WRITTEN, ImmutableList.<String>of());
+        checkpoint.discard();
+
+        assertFalse(store.open("feed.xml", feed).isResumed());
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.metabroadcast.nonametv.ingest.process.dedup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BrandWriteCacheTest {
+
+    private static final String BRAND_URI = "http://nonametv.org/Medium";
+
+    private BrandWriteCache cache;
+
+    private List<Item> written;
+
+    @Before
+    public void setUp() {
+        cache = new BrandWriteCache(new ItemFingerprinter(), 10, 1, TimeUnit.HOURS);
+        written = new ArrayList<>();
+    }
+
+    @Test
+    public void write_skipsBrandWithUnchangedContent() {
+        cache.write(brand("brand"), this::record);
+        cache.write(brand("brand"), this::record);
+        assertEquals(1, written.size());
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    public void write_rewritesBrandWhoseContentChanged() {
+        cache.write(brand("brand"), this::record);
+        cache.write(brand("series"), this::record);
+        assertEquals(2, written.size());
+    }
+
+    @Test
+    public void write_doesNotRememberFailedWrites() {
+        CompletableFuture<Void> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new IllegalStateException("Atlas unavailable"));
+
+        assertTrue(cache.write(brand("brand"), item -> failure).isCompletedExceptionally());
+        cache.write(brand("brand"), this::record);
+        assertEquals(1, written.size());
+    }
+
+    @Test
+    public void write_sharesAnInFlightWriteBetweenCallers() {
+        CompletableFuture<Void> inFlight = new CompletableFuture<>();
+        cache.write(brand("brand"), item -> inFlight);
+        CompletableFuture<Void> second = cache.write(brand("brand"), this::record);
+
+        assertFalse(second.isDone());
+        inFlight.complete(null);
+        assertTrue(second.isDone());
+        assertEquals(0, written.size());
+    }
+
+    private CompletableFuture<Void> record(Item item) {
+        written.add(item);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private Item brand(String type) {
+        Item brand = new Item(BRAND_URI);
+        brand.setType(type);
+        return brand;
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.metabroadcast.nonametv.ingest.process.dedup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.hash.HashCode;
+import com.google.common.io.Files;
+
+@RunWith(JUnit4.class)
+public class ItemFingerprintStoreTest {
+
+    private static final String URI = "http://nonametv.org/foxtv.no20150106014000+010020150106023500+0100";
+    private static final HashCode FINGERPRINT = HashCode.fromLong(42L);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(temporaryFolder.getRoot(), "item-fingerprints.tsv");
+    }
+
+    @Test
+    public void isUnchanged_onlyForTheFingerprintLastWritten() throws Exception {
+        ItemFingerprintStore store = new ItemFingerprintStore(file, 7, TimeUnit.DAYS);
+        assertFalse(store.isUnchanged(URI, FINGERPRINT));
+
+        store.recordWritten(URI, FINGERPRINT, Long.MAX_VALUE);
+        assertTrue(store.isUnchanged(URI, FINGERPRINT));
+        assertFalse(store.isUnchanged(URI, HashCode.fromLong(43L)));
+    }
+
+    @Test
+    public void flush_persistsFingerprintsForTheNextInstance() throws Exception {
+        ItemFingerprintStore store = new ItemFingerprintStore(file, 7, TimeUnit.DAYS);
+        store.recordWritten(URI, FINGERPRINT, Long.MAX_VALUE);
+        store.flush();
+
+        assertTrue(new ItemFingerprintStore(file, 7, TimeUnit.DAYS).isUnchanged(URI, FINGERPRINT));
+    }
+
+    @Test
+    public void flush_dropsFingerprintsOfSlotsThatEndedBeforeTheRetentionPeriod() throws Exception {
+        ItemFingerprintStore store = new ItemFingerprintStore(file, 7, TimeUnit.DAYS);
+        long now = System.currentTimeMillis();
+        store.recordWritten(URI, FINGERPRINT, now - TimeUnit.DAYS.toMillis(8));
+        store.recordWritten("http://nonametv.org/recent", FINGERPRINT, now - TimeUnit.DAYS.toMillis(6));
+        store.flush();
+
+        assertEquals(1, store.size());
+        ItemFingerprintStore reloaded = new ItemFingerprintStore(file, 7, TimeUnit.DAYS);
+        assertFalse(reloaded.isUnchanged(URI, FINGERPRINT));
+        assertTrue(reloaded.isUnchanged("http://nonametv.org/recent", FINGERPRINT));
+    }
+
+    @Test
+    public void load_ignoresLinesWithoutTheEndOfTheirSlot() throws Exception {
+        Files.write(URI + "\t" + FINGERPRINT + "\n", file, StandardCharsets.UTF_8);
+
+        ItemFingerprintStore store = new ItemFingerprintStore(file, 7, TimeUnit.DAYS);
+        assertEquals(0, store.size());
+        assertFalse(store.isUnchanged(URI, FINGERPRINT));
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.metabroadcast.nonametv.ingest.process.delta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.metabroadcast.nonametv.ingest.process.delta.ChannelIntervalIndex.ChannelAnomalies;
+
+@RunWith(JUnit4.class)
+public class ChannelIntervalIndexTest {
+
+    @Test
+    public void add_rejectsASlotAlreadyListedOnItsChannel() {
+        ChannelIntervalIndex index = new ChannelIntervalIndex(TimeUnit.MINUTES.toMillis(5));
+
+        assertTrue(index.add("foxtv.no", millis("01:00"), millis("02:00")));
+        assertTrue(index.add("tv2.no", millis("01:00"), millis("02:00")));
+        assertTrue(index.add("foxtv.no", millis("01:00"), millis("01:30")));
+        assertFalse(index.add("foxtv.no", millis("01:00"), millis("02:00")));
+
+        List<ChannelAnomalies> anomalies = index.anomalies();
+        assertEquals(1, anomalies.size());
+        assertEquals("foxtv.no", anomalies.get(0).getChannel());
+        assertEquals(1, anomalies.get(0).getDuplicates());
+        assertEquals(1, anomalies.get(0).getOverlaps());
+    }
+
+    @Test
+    public void anomalies_findsOverlapsAndGapsWhateverOrderSlotsAreListedIn() {
+        ChannelIntervalIndex index = new ChannelIntervalIndex(TimeUnit.MINUTES.toMillis(5));
+        index.add("foxtv.no", millis("04:00"), millis("05:00"));
+        index.add("foxtv.no", millis("01:00"), millis("03:00"));
+        index.add("foxtv.no", millis("02:00"), millis("02:30"));
+        index.add("foxtv.no", millis("02:45"), millis("03:02"));
+        index.add("foxtv.no", millis("05:02"), millis("06:00"));
+        index.add("tv2.no", millis("01:00"), millis("02:00"));
+        index.add("tv2.no", millis("02:00"), millis("03:00"));
+
+        List<ChannelAnomalies> anomalies = index.anomalies();
+        assertEquals(1, anomalies.size());
+        ChannelAnomalies foxtv = anomalies.get(0);
+        assertEquals(0, foxtv.getDuplicates());
+        assertEquals(2, foxtv.getOverlaps());
+        assertEquals(1, foxtv.getGaps());
+        assertEquals("foxtv.no: 2 overlapping slots (first at 2015-01-06T02:00:00Z);"
+            + " 1 gap (first from 2015-01-06T03:02:00Z to 2015-01-06T04:00:00Z)", foxtv.toString());
+    }
+
+    private static long millis(String time) {
+        return new DateTime("2015-01-06T" + time + ":00Z").getMillis();
+    }
+
+}
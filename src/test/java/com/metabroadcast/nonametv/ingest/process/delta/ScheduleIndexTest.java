@@ -0,0 +1,99 @@
+package com.metabroadcast.nonametv.ingest.process.delta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+
+@RunWith(JUnit4.class)
+public class ScheduleIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void reconcile_returnsIndexedSlotsMissingFromTheFilesWindow() throws Exception {
+        ScheduleIndex index = index();
+        index.reconcile(schedule("0100", "0200", "0300", "0400"), 0);
+
+        FileSchedule rescheduled = schedule("0100", "0200", "0230", "0300");
+        assertEquals(ImmutableList.of(slot("0200", "0300")), index.reconcile(rescheduled, 1));
+    }
+
+    @Test
+    public void reconcile_leavesSlotsOutsideTheFilesWindow() throws Exception {
+        ScheduleIndex index = index();
+        index.reconcile(schedule("0100", "0200", "0300", "0400"), 0);
+
+        assertTrue(index.reconcile(schedule("0200", "0300"), 1).isEmpty());
+    }
+
+    @Test
+    public void reconcile_ignoresAChannelReconciledByANewerFile() throws Exception {
+        ScheduleIndex index = index();
+        index.reconcile(schedule("0100", "0200", "0300"), 1);
+
+        assertTrue(index.reconcile(schedule("0100", "0300"), 0).isEmpty());
+        assertEquals(ImmutableList.of(slot("0200", "0300")), index.reconcile(schedule("0100", "0200", "0230", "0300"), 2));
+    }
+
+    @Test
+    public void flush_persistsSlotsUntilTheyAreRemoved() throws Exception {
+        ScheduleIndex index = index();
+        index.reconcile(schedule("0100", "0200", "0300"), 0);
+        index.removed(slot("0100", "0200"));
+        index.flush();
+
+        ScheduleIndex reloaded = index();
+        assertEquals(1, reloaded.size());
+        assertEquals(ImmutableList.of(slot("0200", "0300")), reloaded.reconcile(schedule("0100", "0230", "0300"), 0));
+    }
+
+    @Test
+    public void disabled_neverReportsSlotsAsVanished() {
+        ScheduleIndex index = ScheduleIndex.disabled();
+        index.reconcile(schedule("0100", "0200", "0300"), 0);
+
+        assertTrue(index.reconcile(schedule("0100", "0300"), 1).isEmpty());
+    }
+
+    private ScheduleIndex index() throws Exception {
+        return new ScheduleIndex(new File(temporaryFolder.getRoot(), "schedule-index.tsv"), 36500, TimeUnit.DAYS);
+    }
+
+    /**
+     * A schedule of back-to-back slots on one channel, bounded by the given times
+     * of day on 6 January 2015.
+     */
+    private static FileSchedule schedule(String... times) {
+        FileSchedule schedule = new FileSchedule();
+        for (int i = 1; i < times.length; i++) {
+            schedule.add("foxtv.no", uri(times[i - 1], times[i]), 1420502400000L + millis(times[i - 1]),
+                1420502400000L + millis(times[i]));
+        }
+        return schedule;
+    }
+
+    private static Slot slot(String start, String stop) {
+        return new Slot("foxtv.no", uri(start, stop), 1420502400000L + millis(start), 1420502400000L + millis(stop));
+    }
+
+    private static String uri(String start, String stop) {
+        return "http://nonametv.org/foxtv.no" + start + stop;
+    }
+
+    private static long millis(String time) {
+        return TimeUnit.HOURS.toMillis(Integer.parseInt(time.substring(0, 2)))
+            + TimeUnit.MINUTES.toMillis(Integer.parseInt(time.substring(2)));
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.metabroadcast.nonametv.ingest.process.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketOf_placesEveryValueAtOrBelowItsBucketsUpperBound() {
+        long[] values = { 0, 1, 3, 4, 7, 8, 9, 10, 100, 1000, 123456, TimeUnit.HOURS.toMicros(1) };
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.upperBoundOf(bucket));
+            assertTrue(value + " below its bucket",
+                bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void snapshot_reportsPercentilesWithinAQuarterOfTheTrueValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(50.5, snapshot.getMeanMillis(), 0.001);
+        assertEquals(100.0, snapshot.getMaxMillis(), 0.001);
+        assertEquals(50, snapshot.getP50Millis(), 50 * 0.25);
+        assertEquals(90, snapshot.getP90Millis(), 90 * 0.25);
+        assertEquals(99, snapshot.getP99Millis(), 99 * 0.25);
+        assertTrue(snapshot.getP99Millis() <= snapshot.getMaxMillis());
+    }
+
+    @Test
+    public void snapshot_isZeroWhenNothingHasBeenRecorded() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0.0, snapshot.getP99Millis(), 0.0);
+    }
+
+}
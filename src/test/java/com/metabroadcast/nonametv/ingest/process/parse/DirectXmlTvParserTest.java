@@ -0,0 +1,214 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.atlasapi.media.entity.simple.Broadcast;
+import org.atlasapi.media.entity.simple.Item;
+import org.atlasapi.media.entity.simple.Rating;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.metabroadcast.nonametv.ingest.process.dedup.ItemFingerprinter;
+import com.metabroadcast.nonametv.ingest.process.translate.BrandUriGenerator;
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeFields;
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeToItemTranslator;
+import com.metabroadcast.nonametv.ingest.process.translate.SymbolTable;
+import com.metabroadcast.nonametv.ingest.process.translate.TranslationResult;
+import com.metabroadcast.nonametv.xml.Channel;
+import com.metabroadcast.nonametv.xml.Programme;
+
+/**
+ * Checks that programmes read by {@link DirectXmlTvParser} translate to exactly
+ * the items that unmarshalled programmes do.
+ */
+@RunWith(JUnit4.class)
+public class DirectXmlTvParserTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private XmlTvParsingContext parsingContext;
+
+    @Before
+    public void setUp() throws Exception {
+        parsingContext = new XmlTvParsingContext();
+    }
+
+    @Test
+    public void parse_translatesTheFeedAsUnmarshalledProgrammesDo() throws Exception {
+        assertConforms(resource("validFeed.xml"));
+    }
+
+    @Test
+    public void parse_translatesEveryFieldAsUnmarshalledProgrammesDo() throws Exception {
+        assertConforms(new File(Resources.getResource(ProgrammeToItemTranslator.class, "validProgramme.xml").toURI()),
+            "<tv>", "</tv>");
+    }
+
+    @Test
+    public void parse_readsTextAndAttributesAsJaxbBindsThem() throws Exception {
+        assertConforms(write("<tv>"
+            + "<programme channel=\"foxtv.no\" start=\"20150106014000 +0100\" stop=\"20150106023500&#10;+0100\">"
+            + "<title lang=\"no\">Tom &amp; Jerry <![CDATA[<i>classic</i>]]> &#198;rlig</title>"
+            + "<sub-title>Ignored <b>entirely</b></sub-title>"
+            + "<desc lang=\"no\">Norsk</desc><desc lang=\"en\"></desc><desc lang=\"en\">Second English</desc><desc>None</desc>"
+            + "<credits/><date>19xx</date>"
+            + "<category>Drama</category><category>Drama</category>"
+            + "<url>http://example.com/a</url><url>http://example.com/a</url>"
+            + "<country>NO</country><country>ZZ</country>"
+            + "<episode-num>1</episode-num><episode-num system=\"xmltv_ns\">x . 1 .</episode-num>"
+            + "<episode-num system=\"xmltv_ns\">2 . 3 .</episode-num>"
+            + "<star-rating system=\"imdb\"><icon src=\"star.png\"/><value>3.5 / 5</value></star-rating>"
+            + "</programme>"
+            + "<unknown><programme channel=\"nested\" start=\"1\"><title>Skipped</title></programme></unknown>"
+            + "<programme channel=\"foxtv.no\" start=\"20150106023500 +0100\">stray text<title>  </title>"
+            + "<credits><actor>Unnamed role</actor><writer>W</writer><actor role=\"Lead\">A</actor>"
+            + "<unknown>U</unknown><director>D</director></credits>"
+            + "<credits><presenter>Only these credits count</presenter><guest>G</guest></credits>"
+            + "<star-rating><value>2/4</value></star-rating><star-rating><value>1/2</value></star-rating>"
+            + "</programme>"
+            + "<programme channel=\"tv2.no\" start=\"20150106180000 +0100\" stop=\"20150106183000 +0100\">"
+            + "<title>One</title><title>Two</title></programme>"
+            + "<programme channel=\"tv2.no\" start=\"20150106183000 +0100\" stop=\"20150106190000 +0100\">"
+            + "<title>Rated</title><star-rating><value>five</value></star-rating></programme>"
+            + "<programme channel=\"tv2.no\" start=\"20150106190000 +0100\" stop=\"20150106193000 +0100\"/>"
+            + "</tv>"));
+    }
+
+    @Test
+    public void parse_passesChannelsToTheHandler() throws Exception {
+        List<Channel> channels = new ArrayList<>();
+        new DirectXmlTvParser(parsingContext).parse(resource("validFeed.xml"), new XmlTvHandler() {
+
+            @Override
+            public void handleChannel(Channel channel) {
+                channels.add(channel);
+            }
+
+            @Override
+            public void handleProgramme(Programme programme) {
+                throw new AssertionError("Programmes should not be unmarshalled");
+            }
+
+            @Override
+            public void handleProgrammeFields(ProgrammeFields programme) {
+            }
+        });
+        assertEquals(2, channels.size());
+        assertEquals("tv2.no", channels.get(1).getId());
+    }
+
+    @Test(expected = XmlTvParseException.class)
+    public void parse_throwsWhenRootElementIsNotTv() throws Exception {
+        new DirectXmlTvParser(parsingContext).parse(write("<schedule><programme channel=\"a\" start=\"1\"/></schedule>"),
+            new Translating(new ProgrammeToItemTranslator(new BrandUriGenerator())));
+    }
+
+    private void assertConforms(File feed) throws Exception {
+        List<String> unmarshalled = translate(new StreamingXmlTvParser(parsingContext), feed);
+        List<String> direct = translate(new DirectXmlTvParser(parsingContext), feed);
+        assertTrue(unmarshalled.size() > 0);
+        assertEquals(unmarshalled, direct);
+    }
+
+    private void assertConforms(File programme, String prefix, String suffix) throws Exception {
+        assertConforms(write(prefix + Files.toString(programme, StandardCharsets.UTF_8)
+            .replaceFirst("<\\?xml[^>]*>", "").replaceFirst("<!DOCTYPE[^>]*>", "") + suffix));
+    }
+
+    /**
+     * Translates every programme in the feed with a translator of its own, as
+     * translators remember the previous programme on each channel.
+     */
+    private List<String> translate(XmlTvParser parser, File feed) throws XmlTvParseException {
+        Translating handler = new Translating(new ProgrammeToItemTranslator(new BrandUriGenerator()));
+        parser.parse(feed, handler);
+        return handler.outcomes;
+    }
+
+    private File resource(String name) throws URISyntaxException {
+        return new File(Resources.getResource(getClass(), name).toURI());
+    }
+
+    private File write(String content) throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(content, file, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static class Translating implements XmlTvHandler {
+
+        private final ProgrammeToItemTranslator translator;
+        private final SymbolTable symbols = new SymbolTable(64);
+        private final ItemFingerprinter fingerprinter = new ItemFingerprinter();
+        private final List<String> outcomes = new ArrayList<>();
+
+        private Translating(ProgrammeToItemTranslator translator) {
+            this.translator = translator;
+        }
+
+        @Override
+        public void handleChannel(Channel channel) {
+        }
+
+        @Override
+        public void handleProgramme(Programme programme) {
+            try {
+                record(translator.translate(programme, symbols));
+            } catch (RuntimeException e) {
+                outcomes.add(e.getClass().getName() + ": " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void handleProgrammeFields(ProgrammeFields programme) {
+            try {
+                record(translator.translate(programme, symbols));
+            } catch (RuntimeException e) {
+                outcomes.add(e.getClass().getName() + ": " + e.getMessage());
+            }
+        }
+
+        private void record(TranslationResult result) {
+            Item item = result.getItem();
+            StringBuilder outcome = new StringBuilder()
+                .append(result.getStatus()).append(Arrays.toString(result.getErrors().toArray()))
+                .append(' ').append(fingerprinter.fingerprint(item))
+                .append(' ').append(item.getUri())
+                .append(' ').append(item.getTitle())
+                .append(' ').append(item.getDescription())
+                .append(' ').append(item.getYear())
+                .append(' ').append(item.getSeriesNumber()).append('x').append(item.getEpisodeNumber())
+                .append(' ').append(item.getGenres())
+                .append(' ').append(item.getCountriesOfOrigin());
+            item.getPeople().forEach(person -> outcome.append(' ').append(person.getUri())
+                .append('|').append(person.getName()).append('|').append(person.getRole()));
+            for (Rating rating : item.getRatings()) {
+                outcome.append(' ').append(rating.getValue());
+            }
+            for (Broadcast broadcast : item.getBroadcasts()) {
+                outcome.append(' ').append(broadcast.getBroadcastOn())
+                    .append(' ').append(broadcast.getTransmissionTime().getTime())
+                    .append(' ').append(broadcast.getTransmissionEndTime() == null
+                        ? null : broadcast.getTransmissionEndTime().getTime());
+            }
+            outcomes.add(outcome.toString());
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import io.airlift.compress.zstd.ZstdOutputStream;
+
+@RunWith(JUnit4.class)
+public class FeedInputTest {
+
+    private static final byte[] FEED = ("<tv>" + Strings.repeat("<programme channel=\"foxtv.no\"/>", 100) + "</tv>")
+        .getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void open_readsAnUncompressedFeed() throws Exception {
+        assertDecompresses(Compression.NONE, FEED, "feed.xml");
+    }
+
+    @Test
+    public void open_detectsGzipFromItsMagicBytes() throws Exception {
+        assertDecompresses(Compression.GZIP, gzip(FEED), "feed.xml");
+    }
+
+    @Test
+    public void open_detectsBzip2FromItsMagicBytes() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream output = new BZip2CompressorOutputStream(bytes)) {
+            output.write(FEED);
+        }
+        assertDecompresses(Compression.BZIP2, bytes.toByteArray(), "feed");
+    }
+
+    @Test
+    public void open_detectsZstdFromItsMagicBytes() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream output = new ZstdOutputStream(bytes)) {
+            output.write(FEED);
+        }
+        assertDecompresses(Compression.ZSTD, bytes.toByteArray(), "feed.xml");
+    }
+
+    @Test
+    public void detect_fallsBackToTheOriginalFilenameExtension() {
+        byte[] header = "<?xm".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Compression.GZIP, Compression.detect(header, 4, "feed.xml.GZ"));
+        assertEquals(Compression.ZSTD, Compression.detect(header, 4, "feed.xml.zstd"));
+        assertEquals(Compression.NONE, Compression.detect(header, 0, null));
+    }
+
+    @Test
+    public void open_countsCompressedAndUncompressedBytesOfAFile() throws Exception {
+        byte[] compressed = gzip(FEED);
+        File file = temporaryFolder.newFile();
+        Files.write(compressed, file);
+
+        try (FeedInput input = FeedInput.open(file, "feed.xml.gz")) {
+            ByteStreams.toByteArray(input.stream());
+            assertEquals(compressed.length, input.compressedBytes());
+            assertEquals(FEED.length, input.uncompressedBytes());
+        }
+    }
+
+    private void assertDecompresses(Compression expected, byte[] content, String originalFilename)
+            throws IOException {
+        try (FeedInput input = FeedInput.open(new ByteArrayInputStream(content), originalFilename)) {
+            assertEquals(expected, input.compression());
+            assertArrayEquals(FEED, ByteStreams.toByteArray(input.stream()));
+            assertEquals(content.length, input.compressedBytes());
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(bytes)) {
+            output.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+@RunWith(JUnit4.class)
+public class MappedFileInputStreamTest {
+
+    private static final byte[] CONTENT = "<tv><programme channel=\"foxtv.no\"/></tv>".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void read_returnsEveryByteAcrossWindowBoundaries() throws Exception {
+        try (InputStream input = new MappedFileInputStream(file(CONTENT), 7)) {
+            assertArrayEquals(CONTENT, ByteStreams.toByteArray(input));
+            assertEquals(-1, input.read());
+        }
+    }
+
+    @Test
+    public void reset_returnsToTheMarkedPositionInAnEarlierWindow() throws Exception {
+        try (InputStream input = new MappedFileInputStream(file(CONTENT), 4)) {
+            assertEquals(2, input.skip(2));
+            input.mark(0);
+            byte[] read = new byte[10];
+            ByteStreams.readFully(input, read);
+
+            input.reset();
+            assertEquals(CONTENT[2], (byte) input.read());
+            assertEquals(CONTENT.length - 3, input.available());
+        }
+    }
+
+    @Test
+    public void read_handlesAnEmptyFile() throws Exception {
+        try (InputStream input = new MappedFileInputStream(file(new byte[0]), 4)) {
+            assertEquals(-1, input.read());
+            assertEquals(-1, input.read(new byte[4], 0, 4));
+        }
+    }
+
+    private File file(byte[] content) throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(content, file);
+        return file;
+    }
+
+}
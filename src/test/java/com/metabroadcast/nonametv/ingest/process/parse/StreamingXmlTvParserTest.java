@@ -0,0 +1,132 @@
+package com.metabroadcast.nonametv.ingest.process.parse;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeFields;
+import com.metabroadcast.nonametv.xml.Channel;
+import com.metabroadcast.nonametv.xml.Programme;
+
+@RunWith(JUnit4.class)
+public class StreamingXmlTvParserTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StreamingXmlTvParser parser;
+
+    private RecordingHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        parser = new StreamingXmlTvParser(new XmlTvParsingContext());
+        handler = new RecordingHandler();
+    }
+
+    @Test
+    public void parse_passesEachChannelToHandler() throws Exception {
+        parser.parse(validFeed(), handler);
+        assertEquals(2, handler.channels.size());
+        assertEquals("tv2.no", handler.channels.get(1).getId());
+    }
+
+    @Test
+    public void parse_passesEachProgrammeToHandlerInDocumentOrder() throws Exception {
+        parser.parse(validFeed(), handler);
+        assertEquals(3, handler.programmes.size());
+        assertEquals("Medium", handler.programmes.get(0).getTitle().get(0).getvalue());
+        assertEquals("20150106023500 +0100", handler.programmes.get(1).getStart());
+        assertEquals("tv2.no", handler.programmes.get(2).getChannel());
+    }
+
+    @Test(expected = XmlTvParseException.class)
+    public void parse_throwsWhenRootElementIsNotTv() throws Exception {
+        parser.parse(write("<schedule><programme channel=\"a\" start=\"1\"/></schedule>"), handler);
+    }
+
+    @Test
+    public void parse_handsOverProgrammesReadBeforeMalformedContent() throws Exception {
+        File file = write("<tv><programme channel=\"a\" start=\"1\"><title>A</title></programme><programme>");
+        try {
+            parser.parse(file, handler);
+        } catch (XmlTvParseException e) {
+            assertEquals(1, handler.programmes.size());
+            return;
+        }
+        throw new AssertionError("Expected an XmlTvParseException");
+    }
+
+    @Test
+    public void parse_detectsTheEncodingFromTheXmlDeclaration() throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+                + "<tv><programme channel=\"a\" start=\"1\"><title>V\u00e6ret p\u00e5 TV 2</title></programme></tv>")
+                .getBytes(StandardCharsets.ISO_8859_1), file);
+
+        parser.parse(file, handler);
+        assertEquals("V\u00e6ret p\u00e5 TV 2", handler.programmes.get(0).getTitle().get(0).getvalue());
+    }
+
+    @Test
+    public void parse_readsFeedsLargeEnoughToBeMemoryMapped() throws Exception {
+        StringBuilder feed = new StringBuilder("<tv>");
+        int programmes = 0;
+        while (feed.length() < FeedInput.MAPPING_THRESHOLD * 2) {
+            feed.append("<programme channel=\"a\" start=\"").append(programmes++)
+                .append("\"><title>\u00c6rlig talt</title></programme>");
+        }
+        feed.append("</tv>");
+
+        parser.parse(write(feed.toString()), handler);
+        assertEquals(programmes, handler.programmes.size());
+        assertEquals("\u00c6rlig talt", handler.programmes.get(programmes - 1).getTitle().get(0).getvalue());
+    }
+
+    private File validFeed() throws URISyntaxException {
+        return new File(Resources.getResource(getClass(), "validFeed.xml").toURI());
+    }
+
+    private File write(String content) throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(content, file, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static class RecordingHandler implements XmlTvHandler {
+
+        private final List<Channel> channels = new ArrayList<>();
+        private final List<Programme> programmes = new ArrayList<>();
+
+        @Override
+        public void handleChannel(Channel channel) {
+            channels.add(channel);
+        }
+
+        @Override
+        public void handleProgramme(Programme programme) {
+            programmes.add(programme);
+        }
+
+        @Override
+        public void handleProgrammeFields(ProgrammeFields programme) {
+            throw new AssertionError("The streaming parser unmarshals every programme");
+        }
+
+    }
+
+}
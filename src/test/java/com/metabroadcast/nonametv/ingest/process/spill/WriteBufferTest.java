@@ -0,0 +1,148 @@
+package com.metabroadcast.nonametv.ingest.process.spill;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+import org.atlasapi.media.entity.simple.Broadcast;
+import org.atlasapi.media.entity.simple.Item;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import com.metabroadcast.nonametv.ingest.process.dedup.ItemFingerprinter;
+import com.metabroadcast.nonametv.ingest.process.translate.BrandUriGenerator;
+import com.metabroadcast.nonametv.ingest.process.translate.ProgrammeToItemTranslator;
+import com.metabroadcast.nonametv.xml.Programme;
+
+@RunWith(JUnit4.class)
+public class WriteBufferTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void spillFile_readsRecordsBackInAnyOrderAcrossSegments() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "test.spill");
+        try (SpillFile spillFile = new SpillFile(file, 16)) {
+            long first = spillFile.append(new byte[] { 1, 2, 3 });
+            long second = spillFile.append(new byte[] { 4, 5, 6, 7, 8, 9, 10, 11 });
+            long third = spillFile.append(new byte[40]);
+
+            assertEquals(3, spillFile.size());
+            assertEquals(4 * 3 + 51, spillFile.pendingBytes());
+            assertEquals(40, spillFile.read(third).length);
+            assertArrayEquals(new byte[] { 1, 2, 3 }, spillFile.read(first));
+            assertArrayEquals(new byte[] { 4, 5, 6, 7, 8, 9, 10, 11 }, spillFile.read(second));
+            assertEquals(0, spillFile.size());
+            assertEquals(0, file.length());
+        }
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void poll_givesOutTheSoonestBandFirstWithChannelsTakingTurns() throws Exception {
+        Clock clock = Clock.fixed(Instant.parse("2015-01-06T12:00:00Z"), ZoneOffset.UTC);
+        WritePriority priority = new WritePriority(new long[] { 24, 48 }, TimeUnit.HOURS, clock);
+        assertEquals("within 24h", priority.bandName(0));
+        assertEquals("24h to 48h", priority.bandName(1));
+        assertEquals("after 48h", priority.bandName(2));
+
+        try (SpillFile spillFile = new SpillFile(new File(temporaryFolder.getRoot(), "test.spill"))) {
+            WriteBuffer<String> buffer = new WriteBuffer<>(spillFile, 1024, priority);
+            buffer.add(item("fox", "2015-01-16T20:00:00Z"), "fox next week");
+            buffer.add(item("fox", "2015-01-07T20:00:00Z"), "fox tomorrow");
+            buffer.add(item("fox", "2015-01-06T20:00:00Z"), "fox tonight");
+            buffer.add(item("fox", "2015-01-06T21:00:00Z"), "fox later tonight");
+            buffer.add(item("fox", "2015-01-06T22:00:00Z"), "fox latest tonight");
+            buffer.add(item("tv2", "2015-01-06T11:30:00Z"), "tv2 on air");
+            buffer.add(item("tv2", "2015-01-06T20:00:00Z"), "tv2 tonight");
+            buffer.add(new Item("http://nonametv.org/unscheduled"), "unscheduled");
+
+            assertTrue(buffer.spilledCount() > 0);
+            assertEquals(5, buffer.size(0));
+            assertEquals(1, buffer.size(1));
+            assertEquals(2, buffer.size(2));
+
+            List<String> order = new ArrayList<>();
+            WriteBuffer.Entry<String> entry;
+            while ((entry = buffer.poll()) != null) {
+                assertNotNull(entry.getItem());
+                order.add(entry.getContext());
+            }
+            assertEquals(ImmutableList.of("fox tonight", "tv2 on air", "fox later tonight", "tv2 tonight",
+                "fox latest tonight", "fox tomorrow", "fox next week", "unscheduled"), order);
+        }
+    }
+
+    @Test
+    public void add_spillsItemsBeyondTheThresholdAndReadsThemBackUnchanged() throws Exception {
+        Item item = new ProgrammeToItemTranslator(new BrandUriGenerator()).translate(validProgramme()).getItem();
+        long itemBytes = WriteBuffer.estimateBytes(item);
+        ItemFingerprinter fingerprinter = new ItemFingerprinter();
+
+        try (SpillFile spillFile = new SpillFile(new File(temporaryFolder.getRoot(), "test.spill"))) {
+            WriteBuffer<String> buffer = new WriteBuffer<>(spillFile, itemBytes);
+            buffer.add(item, "first");
+            buffer.add(item, "second");
+            buffer.add(item, "third");
+
+            assertEquals(3, buffer.size());
+            assertEquals(2, buffer.spilledCount());
+            assertEquals(itemBytes, buffer.memoryBytes());
+            assertTrue(buffer.spilledBytes() > 0);
+
+            WriteBuffer.Entry<String> first = buffer.poll();
+            assertEquals("first", first.getContext());
+            assertSame(item, first.getItem());
+
+            WriteBuffer.Entry<String> second = buffer.poll();
+            assertEquals("second", second.getContext());
+            assertEquals(fingerprinter.fingerprint(item), fingerprinter.fingerprint(second.getItem()));
+            assertEquals(item.getBroadcasts().first().getTransmissionTime(),
+                second.getItem().getBroadcasts().first().getTransmissionTime());
+
+            assertEquals("third", buffer.poll().getContext());
+            assertNull(buffer.poll());
+            assertEquals(0, buffer.memoryBytes());
+            assertEquals(0, buffer.spilledBytes());
+        }
+    }
+
+    private Item item(String channel, String start) {
+        Item item = new Item("http://nonametv.org/" + channel + start);
+        DateTime startTime = new DateTime(start);
+        item.setBroadcasts(Collections.singletonList(new Broadcast("http://" + channel + "/", startTime,
+            startTime.plusHours(1))));
+        return item;
+    }
+
+    private Programme validProgramme() throws JAXBException {
+        Unmarshaller unmarshaller = JAXBContext.newInstance(Programme.class).createUnmarshaller();
+        return (Programme) unmarshaller.unmarshal(
+            Resources.getResource(ProgrammeToItemTranslator.class, "validProgramme.xml"));
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.metabroadcast.nonametv.ingest.process.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.io.Resources;
+import com.metabroadcast.nonametv.ingest.process.translate.SymbolTable.Symbol;
+import com.metabroadcast.nonametv.xml.Programme;
+
+@RunWith(JUnit4.class)
+public class SymbolTableTest {
+
+    @Test
+    public void lookup_sharesOneInstanceAndCountsHits() {
+        SymbolTable symbols = new SymbolTable(10);
+        String first = symbols.intern(Symbol.PERSON_NAME, new String("Kiefer Sutherland"));
+        String second = symbols.intern(Symbol.PERSON_NAME, new String("Kiefer Sutherland"));
+
+        assertSame(first, second);
+        assertEquals(2, symbols.lookups(Symbol.PERSON_NAME));
+        assertEquals(1, symbols.hits(Symbol.PERSON_NAME));
+        assertEquals(40 + 2 * "Kiefer Sutherland".length(), symbols.bytesSaved(Symbol.PERSON_NAME));
+    }
+
+    @Test
+    public void lookup_stopsAddingValuesOnceFull() {
+        SymbolTable symbols = new SymbolTable(1);
+        symbols.intern(Symbol.PERSON_NAME, "Jack Bauer");
+        String overflow = new String("Chloe O'Brian");
+
+        assertSame(overflow, symbols.intern(Symbol.PERSON_NAME, overflow));
+        assertNotSame(overflow, symbols.intern(Symbol.PERSON_NAME, new String("Chloe O'Brian")));
+        assertEquals(1, symbols.size(Symbol.PERSON_NAME));
+        assertEquals(0, symbols.hits(Symbol.PERSON_NAME));
+    }
+
+    @Test
+    public void translate_sharesRepeatedValuesAcrossProgrammes() throws Exception {
+        ProgrammeToItemTranslator translator = new ProgrammeToItemTranslator(new BrandUriGenerator());
+        SymbolTable symbols = new SymbolTable(10);
+
+        Item first = translator.translate(validProgramme(), symbols).getItem();
+        Item second = translator.translate(validProgramme(), symbols).getItem();
+
+        assertSame(first.getGenres().iterator().next(), second.getGenres().iterator().next());
+        assertSame(first.getPublisher(), second.getPublisher());
+        assertSame(first.getPublisher(), second.getRatings().iterator().next().getPublisherDetails());
+        assertSame(first.getPeople().get(0).getName(), second.getPeople().get(0).getName());
+        assertSame(first.getBroadcasts().iterator().next().getBroadcastOn(),
+            second.getBroadcasts().iterator().next().getBroadcastOn());
+        assertEquals(2, symbols.hits(Symbol.GENRE_URI));
+        assertEquals(3, symbols.hits(Symbol.PUBLISHER));
+    }
+
+    private Programme validProgramme() throws JAXBException {
+        Unmarshaller unmarshaller = JAXBContext.newInstance(Programme.class).createUnmarshaller();
+        return (Programme) unmarshaller.unmarshal(Resources.getResource(getClass(), "validProgramme.xml"));
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.metabroadcast.nonametv.ingest.process.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class XmlTvDateTimesTest {
+
+    private static final DateTimeFormatter XMLTV_DATE_FORMAT = DateTimeFormat.forPattern("yyyyMMddHHmmss Z");
+
+    @Test
+    public void parse_agreesWithTheJodaFormatterOnTheFullForm() {
+        String[] values = {
+                "20150106014000 +0100", "20150106023500 -0530", "20000229235959 +0000",
+                "19991231230000 +1400", "20151025020000 +0200", "19700101000000 +0000"
+        };
+        for (String value : values) {
+            assertEquals(value, XMLTV_DATE_FORMAT.parseDateTime(value), XmlTvDateTimes.parse(value));
+        }
+    }
+
+    @Test
+    public void parse_assumesUtcWithoutATimezone() {
+        assertEquals(utc(2015, 1, 6, 1, 40, 0), XmlTvDateTimes.parse("20150106014000"));
+    }
+
+    @Test
+    public void parse_defaultsTheFieldsOfATruncatedValue() {
+        assertEquals(utc(2002, 9, 1, 0, 0, 0), XmlTvDateTimes.parse("200209"));
+        assertEquals(utc(2002, 1, 1, 0, 0, 0), XmlTvDateTimes.parse("2002"));
+        assertEquals(utc(2000, 7, 28, 16, 33, 0), XmlTvDateTimes.parse("200007281733 BST"));
+        assertEquals(utc(1988, 5, 23, 5, 30, 0), XmlTvDateTimes.parse("19880523083000 +0300"));
+    }
+
+    @Test
+    public void parse_acceptsOtherOffsetForms() {
+        DateTime expected = utc(2015, 1, 6, 0, 40, 0);
+        assertEquals(expected, XmlTvDateTimes.parse("20150106014000 +01:00"));
+        assertEquals(expected, XmlTvDateTimes.parse("20150106014000 +01"));
+        assertEquals(expected, XmlTvDateTimes.parse("20150106014000+0100"));
+        assertEquals(expected, XmlTvDateTimes.parse("20150106014000 CET"));
+        assertEquals(utc(2015, 1, 6, 1, 40, 0), XmlTvDateTimes.parse("20150106014000 Z"));
+    }
+
+    @Test
+    public void parse_rejectsMalformedValues() {
+        String[] values = {
+                "", "201", "20150", "201501061", "20151306014000 +0100", "20150230014000 +0100",
+                "20150106244000 +0100", "20150106016000 +0100", "20150106014000 +010",
+                "20150106014000 +2400", "20150106014000 XYZ", "2015010601400000", "20150106014000 +01x0"
+        };
+        for (String value : values) {
+            try {
+                XmlTvDateTimes.parse(value);
+                fail("Expected " + value + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void scheduleBoundaryCache_reusesTheStopTimeAsTheNextStart() {
+        ScheduleBoundaryCache cache = new ScheduleBoundaryCache(1);
+        DateTime stop = cache.stop("foxtv.no", "20150106023500 +0100");
+
+        assertEquals(stop, cache.start("foxtv.no", "20150106023500 +0100"));
+        assertEquals(XmlTvDateTimes.parse("20150106030000 +0100"), cache.start("foxtv.no", "20150106030000 +0100"));
+        assertEquals(XmlTvDateTimes.parse("20150106023500 +0100"), cache.start("tv2.no", "20150106023500 +0100"));
+    }
+
+    private static DateTime utc(int year, int month, int day, int hour, int minute, int second) {
+        return new DateTime(year, month, day, hour, minute, second, DateTimeZone.UTC).withZone(DateTimeZone.getDefault());
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.metabroadcast.nonametv.ingest.process.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class XmlTvValueParsersTest {
+
+    private static final Pattern XMLTV_NS_SEASON_AND_EPISODE_NUMBER = Pattern.compile("(\\d+)\\s+\\.\\s+(\\d+)\\s+\\.");
+    private static final Pattern XMLTV_STAR_RATING = Pattern.compile("([\\d\\.]+)\\s+/\\s+([\\d\\.]+)");
+
+    private static final String[] EPISODE_NUMS = {
+            "0 . 4 .", "12 . 103 .", "0\t.\n4\r.", "0  .  4  .", "0 . 4 . 0/1", "0 . 4", "0 . 4 ",
+            "0 . 4 . ", "0.4.", "0 .4 .", " 0 . 4 .", ". 4 .", "0 . .", "a . 4 .", "0 . 4 ..",
+            "", ".", "0 . 4 .x", "1/2 . 3 .", "2147483648 . 0 ."
+    };
+
+    private static final String[] STAR_RATINGS = {
+            "6.9 / 10", "7 / 10", "3 \t/\n5", "... / 1", "6.9/10", "6.9 /10", "6.9/ 10", "6.9 / ",
+            " 6.9 / 10", "6.9 / 10 ", "6,9 / 10", "", "/", "1 / 2 / 3"
+    };
+
+    private final TranslationScratch scratch = TranslationScratch.get();
+
+    @Test
+    public void matchXmltvNsSeasonAndEpisode_agreesWithTheRegularExpression() {
+        for (String value : EPISODE_NUMS) {
+            Matcher matcher = XMLTV_NS_SEASON_AND_EPISODE_NUMBER.matcher(value);
+            boolean matches = matcher.matches();
+            assertEquals(value, matches, XmlTvValueParsers.matchXmltvNsSeasonAndEpisode(value, scratch));
+            if (matches) {
+                assertEquals(value, matcher.group(1), value.substring(scratch.firstStart, scratch.firstEnd));
+                assertEquals(value, matcher.group(2), value.substring(scratch.secondStart, scratch.secondEnd));
+            }
+        }
+    }
+
+    @Test
+    public void matchStarRating_agreesWithTheRegularExpression() {
+        for (String value : STAR_RATINGS) {
+            Matcher matcher = XMLTV_STAR_RATING.matcher(value);
+            boolean matches = matcher.matches();
+            assertEquals(value, matches, XmlTvValueParsers.matchStarRating(value, scratch));
+            if (matches) {
+                assertEquals(value, matcher.group(1), value.substring(scratch.firstStart, scratch.firstEnd));
+                assertEquals(value, matcher.group(2), value.substring(scratch.secondStart, scratch.secondEnd));
+            }
+        }
+    }
+
+    @Test
+    public void parseDigits_parsesShortAndLongValues() {
+        assertEquals(0, XmlTvValueParsers.parseDigits("0", 0, 1));
+        assertEquals(103, XmlTvValueParsers.parseDigits("12 . 103 .", 5, 8));
+        assertEquals(1, XmlTvValueParsers.parseDigits("0000000001", 0, 10));
+        assertEquals(Integer.MAX_VALUE, XmlTvValueParsers.parseDigits("2147483647", 0, 10));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseDigits_failsLikeParseIntOnOverflow() {
+        XmlTvValueParsers.parseDigits("2147483648", 0, 10);
+    }
+
+    @Test
+    public void matchXmltvNsSeasonAndEpisode_rejectsAPartNumber() {
+        assertTrue(XmlTvValueParsers.matchXmltvNsSeasonAndEpisode("1 . 2 .", scratch));
+        assertFalse(XmlTvValueParsers.matchXmltvNsSeasonAndEpisode("1 . 2 . 0", scratch));
+    }
+
+}
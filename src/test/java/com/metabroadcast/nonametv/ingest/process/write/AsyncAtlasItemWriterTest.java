@@ -0,0 +1,131 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+@RunWith(JUnit4.class)
+public class AsyncAtlasItemWriterTest {
+
+    private HttpServer server;
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile int status = 200;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/3.0/content.json", this::handle);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void write_streamsEachItemAndCapsRequestsInFlight() throws Exception {
+        try (AsyncAtlasItemWriter writer = writer(2)) {
+            List<CompletableFuture<Void>> written = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Item item = new Item("http://nonametv.org/item" + i);
+                item.setTitle("24");
+                written.add(writer.write(item));
+            }
+            while (inFlight.get() < 2) {
+                Thread.sleep(5);
+            }
+            assertEquals(3, writer.waitingCount());
+
+            release.countDown();
+            CompletableFuture.allOf(written.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+            assertEquals(2, maxInFlight.get());
+            assertEquals(5, bodies.size());
+            assertTrue(bodies.get(0).contains("\"uri\":\"http://nonametv.org/item"));
+            assertTrue(bodies.get(0).contains("\"title\":\"24\""));
+        }
+    }
+
+    @Test
+    public void write_failsWithoutRetryWhenAtlasRejectsTheItem() throws Exception {
+        release.countDown();
+        try (AsyncAtlasItemWriter writer = writer(2)) {
+            status = 400;
+            assertFailsWith(IllegalArgumentException.class, writer.write(new Item("http://nonametv.org/item")));
+            status = 503;
+            assertFailsWith(IOException.class, writer.write(new Item("http://nonametv.org/item")));
+        }
+    }
+
+    @Test
+    public void write_givesBackItsPermitWhenTheRequestCannotBeMade() throws Exception {
+        try (AsyncAtlasItemWriter writer = new AsyncAtlasItemWriter("http://localhost:not-a-port/3.0/content.json",
+                4, 1, 10, TimeUnit.SECONDS)) {
+            assertFailsWith(IOException.class, writer.write(new Item("http://nonametv.org/item1")));
+            assertFailsWith(IOException.class, writer.write(new Item("http://nonametv.org/item2")));
+            assertEquals(0, writer.inFlightCount());
+            assertEquals(0, writer.waitingCount());
+        }
+    }
+
+    private AsyncAtlasItemWriter writer(int maxInFlight) throws Exception {
+        return new AsyncAtlasItemWriter(String.format("http://localhost:%d/3.0/content.json?apiKey=key",
+            server.getAddress().getPort()), 4, maxInFlight, 10, TimeUnit.SECONDS);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            bodies.add(new String(ByteStreams.toByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8));
+            release.await();
+            exchange.sendResponseHeaders(status, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private static void assertFailsWith(Class<? extends Throwable> expected, CompletableFuture<Void> future)
+            throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue("Expected " + expected.getSimpleName() + " but was " + e.getCause(),
+                expected.isInstance(e.getCause()));
+            return;
+        }
+        throw new AssertionError("Expected " + expected.getSimpleName());
+    }
+
+}
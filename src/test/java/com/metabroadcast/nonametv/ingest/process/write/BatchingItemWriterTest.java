@@ -0,0 +1,60 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BatchingItemWriterTest {
+
+    private List<Item> written;
+
+    private BatchingItemWriter writer;
+
+    @Before
+    public void setUp() {
+        written = new CopyOnWriteArrayList<>();
+        writer = new BatchingItemWriter(item -> {
+            written.add(item);
+            return CompletableFuture.completedFuture(null);
+        }, 10, 1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void write_coalescesWritesForTheSameUriWithinABatch() throws Exception {
+        Item first = new Item("http://nonametv.org/a");
+        Item second = new Item("http://nonametv.org/a");
+        CompletableFuture<Void> firstWrite = writer.write(first);
+        CompletableFuture<Void> secondWrite = writer.write(second);
+        writer.write(new Item("http://nonametv.org/b"));
+        writer.close();
+
+        firstWrite.get(1, TimeUnit.SECONDS);
+        secondWrite.get(1, TimeUnit.SECONDS);
+        assertEquals(2, written.size());
+        assertSame(second, written.get(0));
+    }
+
+    @Test
+    public void write_flushesOnceTheBatchIsFull() throws Exception {
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < 10; i++) {
+            last = writer.write(new Item("http://nonametv.org/" + i));
+        }
+
+        last.get(500, TimeUnit.MILLISECONDS);
+        assertEquals(10, written.size());
+        writer.close();
+    }
+
+}
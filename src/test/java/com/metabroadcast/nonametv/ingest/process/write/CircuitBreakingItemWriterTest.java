@@ -0,0 +1,133 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.base.Ticker;
+
+@RunWith(JUnit4.class)
+public class CircuitBreakingItemWriterTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final AtomicBoolean atlasDown = new AtomicBoolean(true);
+
+    private final CircuitBreakingItemWriter writer = new CircuitBreakingItemWriter(item -> {
+        attempts.incrementAndGet();
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (atlasDown.get()) {
+            result.completeExceptionally(new RuntimeException("timeout"));
+        } else {
+            result.complete(null);
+        }
+        return result;
+    }, 2, 30, TimeUnit.SECONDS, new Ticker() {
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    });
+
+    @Test
+    public void write_failsFastOnceConsecutiveFailuresOpenTheBreaker() throws Exception {
+        assertFailsWith(RuntimeException.class, writer.write(item()));
+        assertFailsWith(RuntimeException.class, writer.write(item()));
+        assertEquals(CircuitBreakingItemWriter.State.OPEN, writer.state());
+
+        assertFailsWith(CircuitOpenException.class, writer.write(item()));
+        assertEquals(2, attempts.get());
+        assertEquals(1, writer.trips());
+    }
+
+    @Test
+    public void write_closesTheBreakerWhenTheHalfOpenTrialSucceeds() throws Exception {
+        writer.write(item());
+        writer.write(item());
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        atlasDown.set(false);
+
+        writer.write(item()).get();
+        assertEquals(CircuitBreakingItemWriter.State.CLOSED, writer.state());
+        writer.write(item()).get();
+        assertEquals(4, attempts.get());
+    }
+
+    @Test
+    public void write_reopensTheBreakerWhenTheHalfOpenTrialFails() throws Exception {
+        writer.write(item());
+        writer.write(item());
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        assertFailsWith(RuntimeException.class, writer.write(item()));
+        assertEquals(CircuitBreakingItemWriter.State.OPEN, writer.state());
+        assertFailsWith(CircuitOpenException.class, writer.write(item()));
+        assertEquals(3, attempts.get());
+        assertEquals(2, writer.trips());
+    }
+
+    @Test
+    public void write_leavesTheHalfOpenStateToTheTrialWhenAnEarlierWriteCompletesDuringIt() throws Exception {
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        CircuitBreakingItemWriter breaker = new CircuitBreakingItemWriter(item -> {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            pending.add(result);
+            return result;
+        }, 2, 30, TimeUnit.SECONDS, new Ticker() {
+
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+
+        CompletableFuture<Void> slow = breaker.write(item());
+        breaker.write(item());
+        breaker.write(item());
+        pending.get(1).completeExceptionally(new RuntimeException("timeout"));
+        pending.get(2).completeExceptionally(new RuntimeException("timeout"));
+        assertEquals(CircuitBreakingItemWriter.State.OPEN, breaker.state());
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        CompletableFuture<Void> trial = breaker.write(item());
+        pending.get(0).complete(null);
+        slow.get();
+        assertEquals(CircuitBreakingItemWriter.State.HALF_OPEN, breaker.state());
+        assertFailsWith(CircuitOpenException.class, breaker.write(item()));
+
+        pending.get(3).completeExceptionally(new RuntimeException("timeout"));
+        assertFailsWith(RuntimeException.class, trial);
+        assertEquals(CircuitBreakingItemWriter.State.OPEN, breaker.state());
+        assertEquals(2, breaker.trips());
+    }
+
+    private static Item item() {
+        return new Item("http://nonametv.org/a");
+    }
+
+    private static void assertFailsWith(Class<? extends Throwable> expected, CompletableFuture<Void> write)
+            throws InterruptedException {
+        try {
+            write.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), expected.isInstance(e.getCause()));
+            return;
+        }
+        throw new AssertionError("Expected the write to fail");
+    }
+
+}
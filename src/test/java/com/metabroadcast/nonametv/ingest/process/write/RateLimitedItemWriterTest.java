@@ -0,0 +1,85 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RateLimitedItemWriterTest {
+
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1) {
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            scheduled.incrementAndGet();
+            return super.schedule(command, delay, unit);
+        }
+    };
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void write_defersWritesBeyondTheRateWithoutBlockingTheCaller() throws Exception {
+        AtomicInteger written = new AtomicInteger();
+        RateLimitedItemWriter writer = new RateLimitedItemWriter(item -> {
+            written.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }, 20, scheduler);
+
+        long startedNanos = System.nanoTime();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            writes.add(writer.write(new Item("http://nonametv.org/" + i)));
+        }
+        assertTrue(System.nanoTime() - startedNanos < TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(writes.get(0).isDone());
+        assertFalse(writes.get(4).isDone());
+
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(5, written.get());
+        assertTrue(System.nanoTime() - startedNanos >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void write_sendsDeferredWritesInOrderFromOneScheduledDrain() throws Exception {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        RateLimitedItemWriter writer = new RateLimitedItemWriter(item -> {
+            sent.add(item.getUri());
+            return CompletableFuture.completedFuture(null);
+        }, 100, scheduler);
+
+        List<String> uris = new ArrayList<>();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            uris.add("http://nonametv.org/" + i);
+            writes.add(writer.write(new Item(uris.get(i))));
+        }
+        assertTrue(writer.waitingCount() > 40);
+
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(uris, sent);
+        assertEquals(0, writer.waitingCount());
+        assertTrue(String.valueOf(scheduled.get()), scheduled.get() <= 50);
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.metabroadcast.nonametv.ingest.process.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.atlasapi.media.entity.simple.Item;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RetryingItemWriterTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void write_retriesTransientFailuresUntilOneSucceeds() throws Exception {
+        RetryingItemWriter writer = new RetryingItemWriter(failing(2, new RuntimeException("timeout")),
+            scheduler, 3, 1, 5);
+
+        writer.write(new Item("http://nonametv.org/a")).get(1, TimeUnit.SECONDS);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void write_givesUpAfterMaxAttempts() throws Exception {
+        RetryingItemWriter writer = new RetryingItemWriter(failing(5, new RuntimeException("timeout")),
+            scheduler, 3, 1, 5);
+
+        assertFailsWith(RuntimeException.class, writer.write(new Item("http://nonametv.org/a")));
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void write_doesNotRetryInvalidItems() throws Exception {
+        RetryingItemWriter writer = new RetryingItemWriter(failing(5, new IllegalArgumentException("bad item")),
+            scheduler, 3, 1, 5);
+
+        assertFailsWith(IllegalArgumentException.class, writer.write(new Item("http://nonametv.org/a")));
+        assertEquals(1, attempts.get());
+    }
+
+    private ItemWriter failing(int failures, RuntimeException error) {
+        return item -> {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            if (attempts.incrementAndGet() <= failures) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(null);
+            }
+            return result;
+        };
+    }
+
+    private void assertFailsWith(Class<? extends Throwable> type, CompletableFuture<Void> write) throws Exception {
+        try {
+            write.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(type.isInstance(e.getCause()));
+            return;
+        }
+        throw new AssertionError("Expected the write to fail");
+    }
+
+}